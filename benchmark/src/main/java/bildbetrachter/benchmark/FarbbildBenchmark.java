@@ -0,0 +1,53 @@
+package bildbetrachter.benchmark;
+
+import bildbetrachter.bild.Farbbild;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Misst das Kopieren und Vergleichen ganzer Bilder, wie es die Vorschau und
+ * der Verlauf bei jeder Änderung tun. Verglichen wird mit einer inhaltlich
+ * gleichen Kopie, also der ungünstigste Fall, in dem jeder Bildpunkt geprüft
+ * werden muss.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms6g", "-Xmx6g", "-Djava.awt.headless=true"})
+public class FarbbildBenchmark {
+
+    @Param({Testbild.VGA, Testbild.FULL_HD, Testbild.MP12, Testbild.MP24, Testbild.MP50})
+    public String groesse;
+
+    private Farbbild bild;
+    private Farbbild kopie;
+
+    @Setup(Level.Trial)
+    public void vorbereiten() {
+        bild = Testbild.erzeugen(groesse);
+        kopie = Testbild.erzeugen(groesse);
+    }
+
+    @Benchmark
+    public Object klonen() {
+        return bild.clone();
+    }
+
+    @Benchmark
+    public boolean vergleichen() {
+        return bild.equals(kopie);
+    }
+}
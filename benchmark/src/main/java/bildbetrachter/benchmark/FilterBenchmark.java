@@ -0,0 +1,106 @@
+package bildbetrachter.benchmark;
+
+import bildbetrachter.bild.Farbbild;
+import bildbetrachter.bild.Filterkette;
+import bildbetrachter.bild.HelligkeitsFilter;
+import bildbetrachter.bild.RGBFilter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Misst die Punktfilter auf Bildern von VGA bis 50 Megapixel. Die Filter
+ * verändern das Bild bei jedem Aufruf. Damit sich die Werte nicht nach
+ * wenigen Aufrufen alle am Rand der Farbskala sammeln, wird abwechselnd der
+ * Versatz und sein Gegenteil angewendet. Durch das Begrenzen auf 0 bis 255
+ * ist das keine genaue Umkehrung: Kanalwerte, die näher als der Versatz am
+ * Rand liegen, rücken beim ersten Paar um den abgeschnittenen Rest nach
+ * innen, bei der Helligkeit +20 z. B. Werte über 235 auf 235. Danach bleibt
+ * das Bild nach jedem Paar gleich. Ein Kopieren vor jedem Aufruf würde bei
+ * 50 Megapixeln die Messung verfälschen, das Bild wird daher nur vor jeder
+ * Messiteration aus der Vorlage kopiert.
+ *
+ * nacheinander und kette wenden dieselben zwei Filter an, einmal mit je
+ * einem Durchlauf über das Bild und einmal als Filterkette, deren
+ * Farbtabellen zu einer verkettet sind.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms6g", "-Xmx6g", "-Djava.awt.headless=true"})
+public class FilterBenchmark {
+
+    @Param({Testbild.VGA, Testbild.FULL_HD, Testbild.MP12, Testbild.MP24, Testbild.MP50})
+    public String groesse;
+
+    private Farbbild vorlage;
+    private Farbbild bild;
+    private HelligkeitsFilter helligkeit;
+    private RGBFilter farbe;
+    private RGBFilter farbeZurueck;
+    private Filterkette kette;
+    private Filterkette ketteZurueck;
+    // wahr, wenn als Nächstes das Gegenteil des Versatzes angewendet wird
+    private boolean zurueck;
+
+    @Setup(Level.Trial)
+    public void vorbereiten() {
+        vorlage = Testbild.erzeugen(groesse);
+        helligkeit = new HelligkeitsFilter("Helligkeit");
+        farbe = new RGBFilter("Farbfilter");
+        farbe.setzeVersatz(0, 20, -10, 5);
+        farbeZurueck = new RGBFilter("Farbfilter");
+        farbeZurueck.setzeVersatz(0, -20, 10, -5);
+        kette = new Filterkette("Farbe und Helligkeit")
+                .hinzufuegen(farbe, 0).hinzufuegen(helligkeit, 20);
+        ketteZurueck = new Filterkette("Farbe und Helligkeit")
+                .hinzufuegen(farbeZurueck, 0).hinzufuegen(helligkeit, -20);
+    }
+
+    @Setup(Level.Iteration)
+    public void bildKopieren() {
+        bild = (Farbbild) vorlage.clone();
+        zurueck = false;
+    }
+
+    @Benchmark
+    public Farbbild helligkeit() {
+        helligkeit.ausfuehren(bild, zurueck ? -20 : 20);
+        zurueck = !zurueck;
+        return bild;
+    }
+
+    @Benchmark
+    public Farbbild farbe() {
+        (zurueck ? farbeZurueck : farbe).ausfuehren(bild, 0);
+        zurueck = !zurueck;
+        return bild;
+    }
+
+    @Benchmark
+    public Farbbild nacheinander() {
+        (zurueck ? farbeZurueck : farbe).ausfuehren(bild, 0);
+        helligkeit.ausfuehren(bild, zurueck ? -20 : 20);
+        zurueck = !zurueck;
+        return bild;
+    }
+
+    @Benchmark
+    public Farbbild kette() {
+        (zurueck ? ketteZurueck : kette).ausfuehren(bild, 0);
+        zurueck = !zurueck;
+        return bild;
+    }
+}
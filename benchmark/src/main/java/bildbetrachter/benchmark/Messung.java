@@ -0,0 +1,50 @@
+package bildbetrachter.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Startet die Benchmarks wie org.openjdk.jmh.Main, schaltet aber immer den
+ * GC-Profiler zu. So enthält jedes Ergebnis neben den Aufrufen je Sekunde
+ * auch die Allokationsrate und die Anzahl der Garbage Collections.
+ *
+ * Alle Optionen von JMH werden unverändert durchgereicht, z. B.
+ * {@code java -jar benchmarks.jar FilterBenchmark -p groesse=VGA -rf json}.
+ */
+public final class Messung {
+
+    private Messung() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions kommandozeile;
+        try {
+            kommandozeile = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Fehler in der Kommandozeile: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Options optionen = new OptionsBuilder()
+                .parent(kommandozeile)
+                .addProfiler(GCProfiler.class)
+                .build();
+        Runner runner = new Runner(optionen);
+        if (kommandozeile.shouldHelp()) {
+            try {
+                kommandozeile.showHelp();
+            } catch (java.io.IOException e) {
+                System.err.println(e.getMessage());
+            }
+        } else if (kommandozeile.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
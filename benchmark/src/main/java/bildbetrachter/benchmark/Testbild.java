@@ -0,0 +1,76 @@
+package bildbetrachter.benchmark;
+
+import bildbetrachter.bild.Farbbild;
+import java.util.Random;
+
+/**
+ * Erzeugt künstliche Bilder in den Größen, die in den Benchmarks gemessen
+ * werden. Der Inhalt besteht aus weichen Verläufen mit etwas Rauschen, damit
+ * sich JPEG und PNG ähnlich wie bei Fotos verhalten, und ist für jede Größe
+ * immer gleich.
+ */
+public final class Testbild {
+
+    /**
+     * die gemessenen Größen, von VGA bis 50 Megapixel
+     */
+    public static final String VGA = "VGA";
+    public static final String FULL_HD = "FullHD";
+    public static final String MP12 = "12MP";
+    public static final String MP24 = "24MP";
+    public static final String MP50 = "50MP";
+
+    private Testbild() {
+    }
+
+    /**
+     * @param groesse eine der Größenangaben dieser Klasse
+     * @return Breite und Höhe in Bildpunkten
+     */
+    public static int[] gibMasse(String groesse) {
+        switch (groesse) {
+            case VGA:
+                return new int[]{640, 480};
+            case FULL_HD:
+                return new int[]{1920, 1080};
+            case MP12:
+                return new int[]{4000, 3000};
+            case MP24:
+                return new int[]{6000, 4000};
+            case MP50:
+                return new int[]{8660, 5774};
+            default:
+                throw new IllegalArgumentException("Unbekannte Bildgröße: " + groesse);
+        }
+    }
+
+    /**
+     * erzeugt ein Bild der angegebenen Größe
+     *
+     * @param groesse eine der Größenangaben dieser Klasse
+     * @return das Bild vom Typ TYPE_INT_RGB
+     */
+    public static Farbbild erzeugen(String groesse) {
+        int[] masse = gibMasse(groesse);
+        int breite = masse[0];
+        int hoehe = masse[1];
+        Farbbild bild = new Farbbild(breite, hoehe);
+        Random zufall = new Random(breite * 31L + hoehe);
+        int[] zeile = new int[breite];
+        for (int y = 0; y < hoehe; y++) {
+            for (int x = 0; x < breite; x++) {
+                int rauschen = zufall.nextInt(16) - 8;
+                int r = begrenzen(255 * x / breite + rauschen);
+                int g = begrenzen(255 * y / hoehe + rauschen);
+                int b = begrenzen(128 + (int) (100 * Math.sin((x + y) / 97.0)) + rauschen);
+                zeile[x] = r << 16 | g << 8 | b;
+            }
+            bild.schreibeZeile(y, zeile);
+        }
+        return bild;
+    }
+
+    private static int begrenzen(int wert) {
+        return wert < 0 ? 0 : (wert > 255 ? 255 : wert);
+    }
+}
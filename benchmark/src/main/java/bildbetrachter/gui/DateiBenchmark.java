@@ -0,0 +1,100 @@
+package bildbetrachter.gui;
+
+import bildbetrachter.benchmark.Testbild;
+import bildbetrachter.bild.Farbbild;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Misst Laden und Speichern über den BilddateiManager in allen drei
+ * Formaten. Die Klasse liegt im Paket gui, weil die Methoden zum Speichern
+ * ohne Dateidialog nur dort sichtbar sind. Gelesen und geschrieben wird in
+ * einem temporären Verzeichnis, das nach dem Lauf gelöscht wird.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g", "-Djava.awt.headless=true"})
+public class DateiBenchmark {
+
+    @Param({Testbild.VGA, Testbild.FULL_HD, Testbild.MP12, Testbild.MP24, Testbild.MP50})
+    public String groesse;
+
+    private File verzeichnis;
+    private Farbbild bild;
+    private File jpg;
+    private File png;
+    private File bmp;
+
+    @Setup(Level.Trial)
+    public void vorbereiten() throws IOException {
+        verzeichnis = Files.createTempDirectory("bildbetrachter-benchmark").toFile();
+        bild = Testbild.erzeugen(groesse);
+        jpg = new File(verzeichnis, "vorlage.jpg");
+        png = new File(verzeichnis, "vorlage.png");
+        bmp = new File(verzeichnis, "vorlage.bmp");
+        if (BilddateiManager.speichereJPG(jpg, bild) != 0
+                || BilddateiManager.speicherePNG(png, bild) != 0
+                || BilddateiManager.speichereBMP(bmp, bild) != 0) {
+            throw new IOException("Vorlagen konnten nicht geschrieben werden.");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void aufraeumen() {
+        File[] dateien = verzeichnis.listFiles();
+        if (dateien != null) {
+            for (File datei : dateien) {
+                datei.delete();
+            }
+        }
+        verzeichnis.delete();
+    }
+
+    @Benchmark
+    public Farbbild ladeJPG() {
+        return BilddateiManager.ladeBild(jpg);
+    }
+
+    @Benchmark
+    public Farbbild ladePNG() {
+        return BilddateiManager.ladeBild(png);
+    }
+
+    @Benchmark
+    public Farbbild ladeBMP() {
+        return BilddateiManager.ladeBild(bmp);
+    }
+
+    @Benchmark
+    public int speichereJPG() {
+        return BilddateiManager.speichereJPG(new File(verzeichnis, "ziel.jpg"), bild);
+    }
+
+    @Benchmark
+    public int speicherePNG() {
+        return BilddateiManager.speicherePNG(new File(verzeichnis, "ziel.png"), bild);
+    }
+
+    @Benchmark
+    public int speichereBMP() {
+        return BilddateiManager.speichereBMP(new File(verzeichnis, "ziel.bmp"), bild);
+    }
+}
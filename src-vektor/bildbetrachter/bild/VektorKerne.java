@@ -0,0 +1,127 @@
+package bildbetrachter.bild;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Umsetzung der Pixelkerne mit der Vector API. Je Befehl werden so viele
+ * Bildpunkte verarbeitet, wie die bevorzugte Vektorbreite der CPU zulässt
+ * (8 bei AVX2, 16 bei AVX-512). Der Rest am Ende eines Abschnitts wird
+ * skalar berechnet.
+ *
+ * Diese Klasse liegt in einem eigenen Quellverzeichnis, weil sie mindestens
+ * Java 16 braucht, und wird nur mit -Dvektor.kerne=true gebaut.
+ */
+class VektorKerne extends Pixelkerne {
+
+    private static final VectorSpecies<Integer> ART = IntVector.SPECIES_PREFERRED;
+    private final SkalareKerne rest = new SkalareKerne();
+
+    @Override
+    public String gibName() {
+        return "vektor (" + ART.length() + " x int)";
+    }
+
+    private static IntVector kanal(IntVector v, int bits) {
+        return v.lanewise(VectorOperators.LSHR, bits).and(0xff);
+    }
+
+    private static IntVector helligkeit(IntVector v) {
+        return kanal(v, 16).mul(GEWICHT_ROT)
+                .add(kanal(v, 8).mul(GEWICHT_GRUEN))
+                .add(kanal(v, 0).mul(GEWICHT_BLAU))
+                .lanewise(VectorOperators.ASHR, 8);
+    }
+
+    @Override
+    public void addieren(int[] pixel, int von, int anzahl,
+            int da, int dr, int dg, int db) {
+        int grenze = von + ART.loopBound(anzahl);
+        int i = von;
+        for (; i < grenze; i += ART.length()) {
+            IntVector v = IntVector.fromArray(ART, pixel, i);
+            IntVector a = kanal(v, 24).add(da).max(0).min(255);
+            IntVector r = kanal(v, 16).add(dr).max(0).min(255);
+            IntVector g = kanal(v, 8).add(dg).max(0).min(255);
+            IntVector b = kanal(v, 0).add(db).max(0).min(255);
+            a.lanewise(VectorOperators.LSHL, 24)
+                    .or(r.lanewise(VectorOperators.LSHL, 16))
+                    .or(g.lanewise(VectorOperators.LSHL, 8))
+                    .or(b)
+                    .intoArray(pixel, i);
+        }
+        rest.addieren(pixel, i, von + anzahl - i, da, dr, dg, db);
+    }
+
+    @Override
+    public void multiplizieren(int[] pixel, int von, int anzahl,
+            int fa, int fr, int fg, int fb) {
+        int grenze = von + ART.loopBound(anzahl);
+        int i = von;
+        for (; i < grenze; i += ART.length()) {
+            IntVector v = IntVector.fromArray(ART, pixel, i);
+            IntVector a = kanal(v, 24).mul(fa).lanewise(VectorOperators.ASHR, 8).max(0).min(255);
+            IntVector r = kanal(v, 16).mul(fr).lanewise(VectorOperators.ASHR, 8).max(0).min(255);
+            IntVector g = kanal(v, 8).mul(fg).lanewise(VectorOperators.ASHR, 8).max(0).min(255);
+            IntVector b = kanal(v, 0).mul(fb).lanewise(VectorOperators.ASHR, 8).max(0).min(255);
+            a.lanewise(VectorOperators.LSHL, 24)
+                    .or(r.lanewise(VectorOperators.LSHL, 16))
+                    .or(g.lanewise(VectorOperators.LSHL, 8))
+                    .or(b)
+                    .intoArray(pixel, i);
+        }
+        rest.multiplizieren(pixel, i, von + anzahl - i, fa, fr, fg, fb);
+    }
+
+    @Override
+    public void mischen(int[] a, int[] b, int[] ziel, int von, int anzahl,
+            int gewicht) {
+        int grenze = von + ART.loopBound(anzahl);
+        int i = von;
+        for (; i < grenze; i += ART.length()) {
+            IntVector p = IntVector.fromArray(ART, a, i);
+            IntVector q = IntVector.fromArray(ART, b, i);
+            IntVector ergebnis = IntVector.zero(ART);
+            for (int bits = 0; bits < 32; bits += 8) {
+                IntVector x = kanal(p, bits);
+                IntVector y = kanal(q, bits);
+                IntVector m = x.add(y.sub(x).mul(gewicht).lanewise(VectorOperators.ASHR, 8));
+                ergebnis = ergebnis.or(m.lanewise(VectorOperators.LSHL, bits));
+            }
+            ergebnis.intoArray(ziel, i);
+        }
+        rest.mischen(a, b, ziel, i, von + anzahl - i, gewicht);
+    }
+
+    @Override
+    public void graustufen(int[] pixel, int von, int anzahl) {
+        int grenze = von + ART.loopBound(anzahl);
+        int i = von;
+        for (; i < grenze; i += ART.length()) {
+            IntVector v = IntVector.fromArray(ART, pixel, i);
+            IntVector y = helligkeit(v);
+            v.and(0xff000000)
+                    .or(y.lanewise(VectorOperators.LSHL, 16))
+                    .or(y.lanewise(VectorOperators.LSHL, 8))
+                    .or(y)
+                    .intoArray(pixel, i);
+        }
+        rest.graustufen(pixel, i, von + anzahl - i);
+    }
+
+    @Override
+    public void schwelle(int[] pixel, int von, int anzahl, int schwellenwert) {
+        int grenze = von + ART.loopBound(anzahl);
+        int i = von;
+        for (; i < grenze; i += ART.length()) {
+            IntVector v = IntVector.fromArray(ART, pixel, i);
+            VectorMask<Integer> hell = helligkeit(v).compare(VectorOperators.GE, schwellenwert);
+            v.and(0xff000000)
+                    .or(IntVector.zero(ART).blend(0x00ffffff, hell))
+                    .intoArray(pixel, i);
+        }
+        rest.schwelle(pixel, i, von + anzahl - i, schwellenwert);
+    }
+}
@@ -0,0 +1,144 @@
+package bildbetrachter.bild;
+
+/**
+ * Eine Abbildungskarte hält für jeden Bildpunkt des Ergebnisses fest, von
+ * welcher Stelle des Quellbildes seine Farbe stammt. Die Koordinaten sind
+ * Festkommazahlen mit 8 Nachkommabits, aus denen sich die Gewichte der
+ * bilinearen Interpolation ergeben. Eine Karte belegt 8 Byte je Bildpunkt
+ * und wird von {@link Verzerrung} zwischengespeichert, so dass sie nur bei
+ * geänderter Geometrie neu berechnet werden muss.
+ *
+ * Für Bilder, deren Karte den Zwischenspeicher sprengen würde, gibt es
+ * Karten ohne Koordinatenfeld, die jede Zeile beim Anwenden aus der
+ * Verzerrung berechnen. Ausgelagerte Bilder werden zudem aus einem
+ * ausgelagerten Klon statt aus einem int-Feld abgetastet.
+ */
+public class Abbildungskarte {
+
+    /**
+     * Markiert Bildpunkte, deren Quelle außerhalb des Bildes liegt. Sie werden
+     * transparent schwarz.
+     */
+    public static final int AUSSERHALB = Integer.MIN_VALUE;
+
+    private final int breite;
+    private final int hoehe;
+    // je Bildpunkt x und y der Quelle im Format 24.8, oder null, wenn die
+    // Koordinaten zeilenweise aus der Verzerrung berechnet werden
+    private final int[] koordinaten;
+    private final Verzerrung verzerrung;
+
+    Abbildungskarte(int breite, int hoehe, int[] koordinaten) {
+        this.breite = breite;
+        this.hoehe = hoehe;
+        this.koordinaten = koordinaten;
+        this.verzerrung = null;
+    }
+
+    /**
+     * Erzeugt eine Karte, die ihre Koordinaten erst beim Anwenden berechnet.
+     */
+    Abbildungskarte(int breite, int hoehe, Verzerrung verzerrung) {
+        this.breite = breite;
+        this.hoehe = hoehe;
+        this.koordinaten = null;
+        this.verzerrung = verzerrung;
+    }
+
+    /**
+     * @return die Breite der Bilder, für die die Karte berechnet wurde
+     */
+    public int gibBreite() {
+        return breite;
+    }
+
+    /**
+     * @return die Höhe der Bilder, für die die Karte berechnet wurde
+     */
+    public int gibHoehe() {
+        return hoehe;
+    }
+
+    /**
+     * @return der Speicherbedarf der Karte in Byte
+     */
+    public long gibGroesse() {
+        return koordinaten != null ? 4L * koordinaten.length : 0;
+    }
+
+    /**
+     * Wendet die Karte parallel auf ein Bild passender Größe an.
+     *
+     * @param bild das zu verändernde Bild
+     */
+    public void anwenden(final Farbbild bild) {
+        if (bild.getWidth() != breite || bild.getHeight() != hoehe) {
+            throw new IllegalArgumentException("Die Karte passt nicht zur Bildgröße.");
+        }
+        final int[] quelle;
+        final Farbbild kopie;
+        if (bild.istAusgelagert()) {
+            quelle = null;
+            kopie = (Farbbild) bild.clone();
+        } else {
+            quelle = new int[breite * hoehe];
+            kopie = null;
+            bild.leseBereich(0, 0, breite, hoehe, quelle, 0, breite);
+        }
+        Kachelausfuehrer.ausfuehren(breite, hoehe, Parallelitaet.ZEILE,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                int[] zeile = new int[b];
+                int[] punkte = koordinaten != null ? koordinaten : new int[2 * b];
+                double[] punkt = new double[2];
+                for (int j = y; j < y + h; j++) {
+                    int basis = 2 * (j * breite + x);
+                    if (koordinaten == null) {
+                        verzerrung.zeileBerechnen(j, x, b, breite, hoehe, punkte, 0, punkt);
+                        basis = 0;
+                    }
+                    for (int i = 0; i < b; i++) {
+                        int k = basis + 2 * i;
+                        zeile[i] = abtasten(quelle, kopie, punkte[k], punkte[k + 1]);
+                    }
+                    bild.schreibeBereich(x, j, b, 1, zeile, 0, b);
+                }
+            }
+        });
+    }
+
+    /**
+     * bestimmt die Farbe an einer Festkommaposition durch bilineare
+     * Interpolation der vier umliegenden Bildpunkte
+     */
+    private int abtasten(int[] quelle, Farbbild kopie, int xf, int yf) {
+        if (xf == AUSSERHALB) {
+            return 0;
+        }
+        int x0 = xf >> 8;
+        int y0 = yf >> 8;
+        int fx = xf & 0xff;
+        int fy = yf & 0xff;
+        int p00 = punkt(quelle, kopie, x0, y0);
+        if (fx == 0 && fy == 0) {
+            return p00;
+        }
+        int x1 = Math.min(x0 + 1, breite - 1);
+        int y1 = Math.min(y0 + 1, hoehe - 1);
+        int p10 = punkt(quelle, kopie, x1, y0);
+        int p01 = punkt(quelle, kopie, x0, y1);
+        int p11 = punkt(quelle, kopie, x1, y1);
+        int ergebnis = 0;
+        for (int bits = 0; bits < 32; bits += 8) {
+            int oben = ((p00 >>> bits) & 0xff) * (256 - fx) + ((p10 >>> bits) & 0xff) * fx;
+            int unten = ((p01 >>> bits) & 0xff) * (256 - fx) + ((p11 >>> bits) & 0xff) * fx;
+            ergebnis |= ((oben * (256 - fy) + unten * fy + 32768) >>> 16) << bits;
+        }
+        return ergebnis;
+    }
+
+    private int punkt(int[] quelle, Farbbild kopie, int x, int y) {
+        return quelle != null ? quelle[y * breite + x] : kopie.leseARGB(x, y);
+    }
+}
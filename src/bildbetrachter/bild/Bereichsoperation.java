@@ -0,0 +1,19 @@
+package bildbetrachter.bild;
+
+/**
+ * Eine Operation, die einen rechteckigen Ausschnitt eines Bildes bearbeitet.
+ * Sie wird vom Kachelausfuehrer für jede Kachel bzw. jeden Streifen
+ * aufgerufen, unter Umständen gleichzeitig von mehreren Threads.
+ */
+public interface Bereichsoperation {
+
+    /**
+     * bearbeitet einen Ausschnitt des Bildes
+     *
+     * @param x linke Kante des Ausschnitts
+     * @param y obere Kante des Ausschnitts
+     * @param breite Breite des Ausschnitts
+     * @param hoehe Höhe des Ausschnitts
+     */
+    void bearbeiten(int x, int y, int breite, int hoehe);
+}
@@ -0,0 +1,195 @@
+package bildbetrachter.bild;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Ein Dateispeicher hält die Bildpunkte außerhalb des Java-Heaps in einer
+ * temporären Datei, die in den Adressraum eingeblendet wird
+ * (memory-mapped). Das Betriebssystem lädt und verdrängt die Seiten nach
+ * Bedarf, der Heap belegt dafür nur einige Verwaltungsobjekte. So lassen
+ * sich Bilder bearbeiten, die größer als der Heap oder sogar als der
+ * Hauptspeicher sind, ohne dass die Speicherbereinigung die Bildpunkte je
+ * sieht.
+ *
+ * Die Bildpunkte liegen wie im Kachelspeicher in Kacheln von
+ * GROESSE x GROESSE Werten, Kachel für Kachel hintereinander. Bei
+ * kachelweiser Bearbeitung liegt eine Kachel so in wenigen
+ * zusammenhängenden Seiten. Die Datei wird in Abschnitten von höchstens
+ * ABSCHNITT Kacheln eingeblendet, weil ein MappedByteBuffer auf 2 GB
+ * beschränkt ist. Noch nie beschriebene Kacheln belegen auf Dateisystemen
+ * mit Lücken (sparse files) keinen Platz und enthalten 0.
+ *
+ * Die Datei wird gleich nach dem Einblenden geschlossen und dabei zum
+ * Löschen vorgemerkt. Solange die Abschnitte eingeblendet sind, belegt sie
+ * weiter Platz auf der Platte; unter Windows verschwindet sie erst dann aus
+ * dem Verzeichnis. Frei wird der Platz also erst, wenn die
+ * Speicherbereinigung die Abschnitte eingesammelt hat, nicht schon, wenn das
+ * Bild nicht mehr gebraucht wird. Das Verzeichnis legt die Systemeigenschaft
+ * bildbetrachter.auslagerung fest, sonst das temporäre Verzeichnis.
+ */
+class Dateispeicher extends Pixelspeicher {
+
+    static final int GROESSE = Kachelausfuehrer.KACHELGROESSE;
+    private static final int BITS = Integer.numberOfTrailingZeros(GROESSE);
+    private static final int MASKE = GROESSE - 1;
+    // Werte je Kachel
+    private static final int KACHEL = GROESSE * GROESSE;
+    // Kacheln je eingeblendetem Abschnitt; 2048 Kacheln sind 512 MB
+    private static final int ABSCHNITT = 2048;
+    private static final String VERZEICHNIS
+            = System.getProperty("bildbetrachter.auslagerung",
+                    System.getProperty("java.io.tmpdir"));
+
+    private final int breite;
+    private final int hoehe;
+    private final int spalten;
+    private final IntBuffer[] abschnitte;
+
+    /**
+     * Legt einen leeren Dateispeicher an.
+     *
+     * @param breite Breite des Bildes
+     * @param hoehe Höhe des Bildes
+     * @throws IOException wenn die Datei nicht angelegt oder eingeblendet
+     * werden kann
+     */
+    Dateispeicher(int breite, int hoehe) throws IOException {
+        super(breite * hoehe);
+        this.breite = breite;
+        this.hoehe = hoehe;
+        this.spalten = (breite + MASKE) >> BITS;
+        int kacheln = spalten * ((hoehe + MASKE) >> BITS);
+        abschnitte = new IntBuffer[(kacheln + ABSCHNITT - 1) / ABSCHNITT];
+        Path datei = Files.createTempFile(new File(VERZEICHNIS).toPath(),
+                "farbbild", ".pixel");
+        try (FileChannel kanal = FileChannel.open(datei, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+            for (int a = 0; a < abschnitte.length; a++) {
+                int anzahl = Math.min(ABSCHNITT, kacheln - a * ABSCHNITT);
+                abschnitte[a] = kanal.map(FileChannel.MapMode.READ_WRITE,
+                        4L * KACHEL * ABSCHNITT * a, 4L * KACHEL * anzahl)
+                        .order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+        } catch (IOException | RuntimeException e) {
+            // eingeblendete Dateien lassen sich unter Windows nicht löschen,
+            // daher nur hier, wo DELETE_ON_CLOSE womöglich nicht gegriffen hat
+            try {
+                Files.deleteIfExists(datei);
+            } catch (IOException f) {
+                e.addSuppressed(f);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    Dateispeicher kopieren() {
+        try {
+            Dateispeicher kopie = new Dateispeicher(breite, hoehe);
+            for (int a = 0; a < abschnitte.length; a++) {
+                IntBuffer quelle = abschnitte[a].duplicate();
+                quelle.clear();
+                IntBuffer ziel = kopie.abschnitte[a].duplicate();
+                ziel.clear();
+                ziel.put(quelle);
+            }
+            return kopie;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Index des Wertes (x, y) im Abschnitt; der Abschnitt selbst ist
+     * index / (KACHEL * ABSCHNITT)
+     */
+    private long position(int x, int y) {
+        long kachel = (long) (y >> BITS) * spalten + (x >> BITS);
+        return kachel * KACHEL + ((y & MASKE) << BITS) + (x & MASKE);
+    }
+
+    private IntBuffer abschnitt(long position) {
+        return abschnitte[(int) (position / ((long) KACHEL * ABSCHNITT))];
+    }
+
+    private static int index(long position) {
+        return (int) (position % ((long) KACHEL * ABSCHNITT));
+    }
+
+    @Override
+    void lesen(int x, int y, int b, int h, int[] ziel, int offset, int zeilenlaenge,
+            int oder) {
+        for (int ky = y & ~MASKE; ky < y + h; ky += GROESSE) {
+            int j0 = Math.max(y, ky);
+            int j1 = Math.min(y + h, ky + GROESSE);
+            for (int kx = x & ~MASKE; kx < x + b; kx += GROESSE) {
+                int i0 = Math.max(x, kx);
+                int i1 = Math.min(x + b, kx + GROESSE);
+                long p = position(i0, j0);
+                // eigene Sicht, damit parallele Zugriffe sich die Position
+                // nicht gegenseitig verstellen
+                IntBuffer puffer = abschnitt(p).duplicate();
+                int index = index(p);
+                for (int j = j0; j < j1; j++, index += GROESSE) {
+                    int nach = offset + (j - y) * zeilenlaenge + (i0 - x);
+                    puffer.position(index);
+                    puffer.get(ziel, nach, i1 - i0);
+                    if (oder != 0) {
+                        for (int i = nach; i < nach + i1 - i0; i++) {
+                            ziel[i] |= oder;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    void schreiben(int x, int y, int b, int h, int[] quelle, int offset, int zeilenlaenge,
+            int und) {
+        for (int ky = y & ~MASKE; ky < y + h; ky += GROESSE) {
+            int j0 = Math.max(y, ky);
+            int j1 = Math.min(y + h, ky + GROESSE);
+            for (int kx = x & ~MASKE; kx < x + b; kx += GROESSE) {
+                int i0 = Math.max(x, kx);
+                int i1 = Math.min(x + b, kx + GROESSE);
+                long p = position(i0, j0);
+                IntBuffer puffer = abschnitt(p).duplicate();
+                int index = index(p);
+                for (int j = j0; j < j1; j++, index += GROESSE) {
+                    int von = offset + (j - y) * zeilenlaenge + (i0 - x);
+                    if (und == -1) {
+                        puffer.position(index);
+                        puffer.put(quelle, von, i1 - i0);
+                    } else {
+                        for (int i = 0; i < i1 - i0; i++) {
+                            puffer.put(index + i, quelle[von + i] & und);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+        int y = i / breite;
+        long p = position(i - y * breite, y);
+        return abschnitt(p).get(index(p));
+    }
+
+    @Override
+    public void setElem(int bank, int i, int wert) {
+        int y = i / breite;
+        long p = position(i - y * breite, y);
+        abschnitt(p).put(index(p), wert);
+    }
+}
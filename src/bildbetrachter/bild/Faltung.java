@@ -0,0 +1,244 @@
+package bildbetrachter.bild;
+
+import java.util.Arrays;
+
+/**
+ * Die Faltung berechnet jeden Bildpunkt als gewichtete Summe seiner Nachbarn.
+ * Beim Erzeugen wird eine Momentaufnahme des Quellbildes angelegt, so dass
+ * das Ergebnis anschließend in dasselbe Bild geschrieben werden kann, während
+ * andere Kacheln noch lesen.
+ *
+ * Gefaltet wird kachelweise: Zu jeder Kachel wird ein Rand in der Größe des
+ * Kernradius mitgelesen, die Werte außerhalb des Bildes bestimmt der
+ * Randmodus. Separierbare Kerne werden als waagerechter und senkrechter
+ * Durchgang gerechnet, was bei einem Kern der Größe n x n statt n * n nur
+ * 2 * n Multiplikationen je Kanal kostet.
+ *
+ * Bei ausgelagerten Bildern ist die Momentaufnahme selbst ein ausgelagerter
+ * Klon, aus dem die Zeilen beim Falten gelesen werden; der Heap belegt dann
+ * nur Puffer in Kachelgröße.
+ */
+public class Faltung {
+
+    // Momentaufnahme als int-Feld oder, bei ausgelagerten Bildern, als Klon
+    private final int[] quelle;
+    private final Farbbild kopie;
+    private final int breite;
+    private final int hoehe;
+    private final Randmodus rand;
+
+    /**
+     * Legt eine Momentaufnahme des Bildes für die Faltung an.
+     *
+     * @param bild das Quellbild
+     * @param rand Behandlung der Bildpunkte außerhalb des Bildes
+     */
+    public Faltung(Farbbild bild, Randmodus rand) {
+        this.breite = bild.getWidth();
+        this.hoehe = bild.getHeight();
+        this.rand = rand;
+        if (bild.istAusgelagert()) {
+            this.quelle = null;
+            this.kopie = (Farbbild) bild.clone();
+        } else {
+            this.quelle = new int[breite * hoehe];
+            this.kopie = null;
+            bild.leseBereich(0, 0, breite, hoehe, quelle, 0, breite);
+        }
+    }
+
+    /**
+     * Faltet das ganze Bild mit dem Kern und schreibt das Ergebnis in das
+     * Zielbild, parallel in Kacheln.
+     *
+     * @param ziel Bild in der Größe des Quellbildes, darf das Quellbild sein
+     * @param kern der Faltungskern
+     */
+    public void anwenden(final Farbbild ziel, final Faltungskern kern) {
+        Kachelausfuehrer.ausfuehren(breite, hoehe, Parallelitaet.KACHEL,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                float[][] kanaele = new float[4][b * h];
+                falten(kern, x, y, b, h, kanaele);
+                int[] ergebnis = new int[b * h];
+                packen(kanaele, ergebnis);
+                ziel.schreibeBereich(x, y, b, h, ergebnis, 0, b);
+            }
+        });
+    }
+
+    /**
+     * Faltet einen Ausschnitt und liefert die ungerundeten Ergebnisse je
+     * Kanal. So können Filter wie die Kantenerkennung mehrere Faltungen
+     * kombinieren, bevor sie das Ergebnis begrenzen.
+     *
+     * @param kern der Faltungskern
+     * @param x linke Kante des Ausschnitts
+     * @param y obere Kante des Ausschnitts
+     * @param b Breite des Ausschnitts
+     * @param h Höhe des Ausschnitts
+     * @param kanaele vier Felder mit je b * h Einträgen für Alpha, Rot, Grün
+     * und Blau
+     */
+    public void falten(Faltungskern kern, int x, int y, int b, int h,
+            float[][] kanaele) {
+        if (kern.istSeparierbar()) {
+            separiertFalten(kern, x, y, b, h, kanaele);
+        } else {
+            direktFalten(kern, x, y, b, h, kanaele);
+        }
+    }
+
+    /**
+     * liest die Zeile yy des Bildes von x - rx bis x + b + rx, mit
+     * Randbehandlung, aufgeteilt in die vier Kanäle; puffer nimmt bei
+     * ausgelagerten Bildern den Teil der Zeile im Bild auf
+     */
+    private void zeileEntpacken(int yy, int links, int[] spalten, float[][] ziel,
+            int offset, int[] puffer) {
+        int zeile = rand.abbilden(yy, hoehe);
+        // Spalten im Bild, die am Stück aus der Kopie gelesen werden
+        int von = 0;
+        int bis = 0;
+        if (kopie != null && zeile >= 0) {
+            von = Math.max(0, links);
+            bis = Math.min(breite, links + spalten.length);
+            kopie.leseBereich(von, zeile, bis - von, 1, puffer, 0, bis - von);
+        }
+        for (int i = 0; i < spalten.length; i++) {
+            int argb = 0;
+            int s = spalten[i];
+            if (zeile < 0 || s < 0) {
+                // transparent
+            } else if (kopie == null) {
+                argb = quelle[zeile * breite + s];
+            } else if (s >= von && s < bis) {
+                argb = puffer[s - von];
+            } else {
+                // Randpunkt, der beim Spiegeln oder Umbrechen woanders liegt
+                argb = kopie.leseARGB(s, zeile);
+            }
+            ziel[0][offset + i] = argb >>> 24;
+            ziel[1][offset + i] = (argb >> 16) & 0xff;
+            ziel[2][offset + i] = (argb >> 8) & 0xff;
+            ziel[3][offset + i] = argb & 0xff;
+        }
+    }
+
+    private int[] spaltenAbbilden(int x, int b, int rx) {
+        int[] spalten = new int[b + 2 * rx];
+        for (int i = 0; i < spalten.length; i++) {
+            spalten[i] = rand.abbilden(x - rx + i, breite);
+        }
+        return spalten;
+    }
+
+    private void separiertFalten(Faltungskern kern, int x, int y, int b, int h,
+            float[][] kanaele) {
+        float[] zeile = kern.zeile();
+        float[] spalte = kern.spalte();
+        int rx = zeile.length / 2;
+        int ry = spalte.length / 2;
+        int[] spalten = spaltenAbbilden(x, b, rx);
+        float[][] erweitert = new float[4][spalten.length];
+        int[] puffer = new int[spalten.length];
+        // waagerechter Durchgang über die Kachel samt oberem und unterem Rand
+        float[][] zwischen = new float[4][(h + 2 * ry) * b];
+        for (int j = 0; j < h + 2 * ry; j++) {
+            zeileEntpacken(y - ry + j, x - rx, spalten, erweitert, 0, puffer);
+            for (int c = 0; c < 4; c++) {
+                float[] ein = erweitert[c];
+                float[] aus = zwischen[c];
+                int basis = j * b;
+                for (int i = 0; i < b; i++) {
+                    float summe = 0;
+                    for (int k = 0; k < zeile.length; k++) {
+                        summe += ein[i + k] * zeile[k];
+                    }
+                    aus[basis + i] = summe;
+                }
+            }
+        }
+        // senkrechter Durchgang, zeilenweise für zusammenhängende Zugriffe
+        for (int c = 0; c < 4; c++) {
+            float[] ein = zwischen[c];
+            float[] aus = kanaele[c];
+            Arrays.fill(aus, 0, b * h, 0f);
+            for (int j = 0; j < h; j++) {
+                int ziel = j * b;
+                for (int k = 0; k < spalte.length; k++) {
+                    float gewicht = spalte[k];
+                    int von = (j + k) * b;
+                    for (int i = 0; i < b; i++) {
+                        aus[ziel + i] += ein[von + i] * gewicht;
+                    }
+                }
+            }
+        }
+    }
+
+    private void direktFalten(Faltungskern kern, int x, int y, int b, int h,
+            float[][] kanaele) {
+        float[] werte = kern.werte();
+        int kb = kern.gibBreite();
+        int kh = kern.gibHoehe();
+        int rx = kb / 2;
+        int ry = kh / 2;
+        int[] spalten = spaltenAbbilden(x, b, rx);
+        int eb = spalten.length;
+        float[][] erweitert = new float[4][(h + 2 * ry) * eb];
+        int[] puffer = new int[eb];
+        for (int j = 0; j < h + 2 * ry; j++) {
+            zeileEntpacken(y - ry + j, x - rx, spalten, erweitert, j * eb, puffer);
+        }
+        for (int c = 0; c < 4; c++) {
+            float[] ein = erweitert[c];
+            float[] aus = kanaele[c];
+            for (int j = 0; j < h; j++) {
+                for (int i = 0; i < b; i++) {
+                    float summe = 0;
+                    for (int kj = 0; kj < kh; kj++) {
+                        int basis = (j + kj) * eb + i;
+                        for (int ki = 0; ki < kb; ki++) {
+                            summe += ein[basis + ki] * werte[kj * kb + ki];
+                        }
+                    }
+                    aus[j * b + i] = summe;
+                }
+            }
+        }
+    }
+
+    /**
+     * rundet die Kanalwerte, begrenzt sie auf 0 bis 255 und packt sie zu
+     * ARGB-Werten
+     *
+     * @param kanaele vier Felder für Alpha, Rot, Grün und Blau
+     * @param ziel das Feld für die gepackten Werte
+     */
+    public static void packen(float[][] kanaele, int[] ziel) {
+        float[] a = kanaele[0];
+        float[] r = kanaele[1];
+        float[] g = kanaele[2];
+        float[] b = kanaele[3];
+        for (int i = 0; i < ziel.length; i++) {
+            ziel[i] = runden(a[i]) << 24 | runden(r[i]) << 16
+                    | runden(g[i]) << 8 | runden(b[i]);
+        }
+    }
+
+    private static int runden(float wert) {
+        if (wert <= 0) {
+            return 0;
+        }
+        return wert >= 255 ? 255 : (int) (wert + 0.5f);
+    }
+
+    /**
+     * @return der Alphawert des Quellbildes an der angegebenen Stelle
+     */
+    int gibAlpha(int x, int y) {
+        return (kopie != null ? kopie.leseARGB(x, y) : quelle[y * breite + x]) >>> 24;
+    }
+}
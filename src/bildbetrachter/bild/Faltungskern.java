@@ -0,0 +1,169 @@
+package bildbetrachter.bild;
+
+/**
+ * Ein Faltungskern ist eine Matrix aus Gewichten ungerader Breite und Höhe,
+ * deren Mitte über dem jeweils berechneten Bildpunkt liegt. Beim Erzeugen
+ * wird geprüft, ob sich der Kern als Produkt aus einer Spalte und einer Zeile
+ * schreiben lässt. Solche separierbaren Kerne faltet die {@link Faltung} in
+ * zwei eindimensionalen Durchgängen.
+ */
+public class Faltungskern {
+
+    // relative Toleranz bei der Prüfung auf Separierbarkeit
+    private static final float TOLERANZ = 1e-5f;
+
+    private final int breite;
+    private final int hoehe;
+    private final float[] werte;
+    private float[] spalte;
+    private float[] zeile;
+
+    /**
+     * Erzeugt einen Kern aus zeilenweise abgelegten Gewichten.
+     *
+     * @param breite ungerade Breite des Kerns
+     * @param hoehe ungerade Höhe des Kerns
+     * @param werte die Gewichte, breite * hoehe Einträge
+     */
+    public Faltungskern(int breite, int hoehe, float[] werte) {
+        if (breite % 2 == 0 || hoehe % 2 == 0 || werte.length != breite * hoehe) {
+            throw new IllegalArgumentException("Faltungskerne brauchen ungerade Maße.");
+        }
+        this.breite = breite;
+        this.hoehe = hoehe;
+        this.werte = werte.clone();
+        zerlegen();
+    }
+
+    /**
+     * Erzeugt einen separierbaren Kern aus einer Spalte und einer Zeile.
+     *
+     * @param spalte die senkrechten Gewichte
+     * @param zeile die waagerechten Gewichte
+     */
+    public Faltungskern(float[] spalte, float[] zeile) {
+        this(zeile.length, spalte.length, produkt(spalte, zeile));
+    }
+
+    private static float[] produkt(float[] spalte, float[] zeile) {
+        float[] werte = new float[spalte.length * zeile.length];
+        for (int j = 0; j < spalte.length; j++) {
+            for (int i = 0; i < zeile.length; i++) {
+                werte[j * zeile.length + i] = spalte[j] * zeile[i];
+            }
+        }
+        return werte;
+    }
+
+    /**
+     * Erzeugt einen normierten Gaußkern.
+     *
+     * @param radius Anzahl der Bildpunkte zu jeder Seite der Mitte
+     * @param sigma Standardabweichung der Gaußglocke
+     * @return der Kern
+     */
+    public static Faltungskern gauss(int radius, double sigma) {
+        float[] g = new float[2 * radius + 1];
+        float summe = 0;
+        for (int i = -radius; i <= radius; i++) {
+            g[i + radius] = (float) Math.exp(-(i * i) / (2 * sigma * sigma));
+            summe += g[i + radius];
+        }
+        for (int i = 0; i < g.length; i++) {
+            g[i] /= summe;
+        }
+        return new Faltungskern(g, g);
+    }
+
+    /**
+     * @return der Sobelkern für waagerechte Helligkeitsänderungen
+     */
+    public static Faltungskern sobelX() {
+        return new Faltungskern(new float[]{1, 2, 1}, new float[]{-1, 0, 1});
+    }
+
+    /**
+     * @return der Sobelkern für senkrechte Helligkeitsänderungen
+     */
+    public static Faltungskern sobelY() {
+        return new Faltungskern(new float[]{-1, 0, 1}, new float[]{1, 2, 1});
+    }
+
+    /**
+     * prüft, ob der Kern den Rang 1 hat, und bestimmt dann Spalte und Zeile
+     */
+    private void zerlegen() {
+        int maxIndex = 0;
+        float max = 0;
+        for (int i = 0; i < werte.length; i++) {
+            if (Math.abs(werte[i]) > max) {
+                max = Math.abs(werte[i]);
+                maxIndex = i;
+            }
+        }
+        if (max == 0) {
+            return;
+        }
+        int p = maxIndex / breite;
+        int q = maxIndex % breite;
+        float pivot = werte[maxIndex];
+        float[] s = new float[hoehe];
+        float[] z = new float[breite];
+        for (int j = 0; j < hoehe; j++) {
+            s[j] = werte[j * breite + q];
+        }
+        for (int i = 0; i < breite; i++) {
+            z[i] = werte[p * breite + i] / pivot;
+        }
+        for (int j = 0; j < hoehe; j++) {
+            for (int i = 0; i < breite; i++) {
+                if (Math.abs(werte[j * breite + i] - s[j] * z[i]) > TOLERANZ * max) {
+                    return;
+                }
+            }
+        }
+        spalte = s;
+        zeile = z;
+    }
+
+    /**
+     * @return wahr, wenn der Kern in zwei eindimensionalen Durchgängen
+     * gefaltet werden kann
+     */
+    public boolean istSeparierbar() {
+        return spalte != null;
+    }
+
+    /**
+     * @return die Breite des Kerns
+     */
+    public int gibBreite() {
+        return breite;
+    }
+
+    /**
+     * @return die Höhe des Kerns
+     */
+    public int gibHoehe() {
+        return hoehe;
+    }
+
+    /**
+     * @return Kopie der zeilenweise abgelegten Gewichte
+     */
+    public float[] gibWerte() {
+        return werte.clone();
+    }
+
+    float[] werte() {
+        return werte;
+    }
+
+    float[] spalte() {
+        return spalte;
+    }
+
+    float[] zeile() {
+        return zeile;
+    }
+}
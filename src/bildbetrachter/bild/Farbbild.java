@@ -1,9 +1,11 @@
 package bildbetrachter.bild;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.datatransfer.*;
 import java.awt.image.*;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Farbbild ist eine Klasse, die Farbbilder mit einer bequemen
@@ -16,16 +18,196 @@ public class Farbbild extends BufferedImage implements Transferable {
     
     private String dateiname;
     private String dateityp;
+    // Faktor, mit dem das Bild beim Laden unterabgetastet wurde; 1 bei voller
+    // Auflösung
+    private int unterabtastung = 1;
+    // Rasterdaten als int-Feld, falls die Bildpunkte gepackt (ARGB oder RGB)
+    // vorliegen, sonst null
+    private final int[] pixel;
+    private final boolean alpha;
+    // eigener Speicher, falls das Bild gekachelt (copy-on-write) oder
+    // ausgelagert gespeichert ist, sonst null
+    private final Pixelspeicher speicher;
+    // zwischengespeicherter Inhaltshash, gültig bis zum nächsten Schreibzugriff
+    private int hash;
+    private boolean hashBekannt;
 
     /**
      * Erzeuge ein Farbbild als Kopie von einem BufferedImage.
+     * Das Farbmodell des Originals wird beibehalten.
      * @param image das zu kopierende BufferedImage.
      */
     public Farbbild(BufferedImage image) {
-        super(image.getColorModel(), image.copyData(null),
-                image.isAlphaPremultiplied(), null);
+        this(image.getColorModel(), rasterKopieren(image), image.isAlphaPremultiplied());
+    }
+
+    /**
+     * Erzeugt ein Farbbild auf dem angegebenen Raster, ohne es zu kopieren.
+     */
+    private Farbbild(ColorModel modell, WritableRaster raster, boolean vormultipliziert) {
+        super(modell, raster, vormultipliziert, null);
         dateiname = "";
         dateityp = "";
+        pixel = pixelpufferErmitteln();
+        alpha = getColorModel().hasAlpha();
+        speicher = null;
+    }
+
+    /**
+     * Erzeuge ein Farbbild, das Raster und Farbmodell eines BufferedImage
+     * übernimmt, ohne die Bildpunkte zu kopieren. Das spart beim Laden die
+     * Kopie und die Hälfte des Spitzenspeichers. Beide Bilder teilen sich
+     * danach die Bildpunkte, das Original sollte also nicht weiter verwendet
+     * werden.
+     * @param image das zu übernehmende BufferedImage, z. B. frisch von einem
+     *        ImageReader.
+     * @return das Farbbild auf demselben Raster, oder image selbst, wenn es
+     *         bereits ein Farbbild ist.
+     */
+    public static Farbbild uebernehmen(BufferedImage image) {
+        if (image instanceof Farbbild) {
+            return (Farbbild) image;
+        }
+        WritableRaster raster = image.getRaster();
+        if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+            // Ausschnitt eines größeren Rasters, z. B. von getSubimage; nicht
+            // übernehmen, sonst bliebe das ganze Raster im Speicher
+            return new Farbbild(image);
+        }
+        return new Farbbild(image.getColorModel(), raster, image.isAlphaPremultiplied());
+    }
+
+    /**
+     * Erzeuge ein gepacktes Farbbild (TYPE_INT_ARGB, wenn das Original einen
+     * Alphakanal hat, sonst TYPE_INT_RGB) aus einem beliebigen BufferedImage.
+     * Liegt das Original schon gepackt vor, wird sein Raster wie bei
+     * {@link #uebernehmen(BufferedImage)} übernommen; sonst werden die
+     * Bildpunkte einmal in Streifen parallel umgerechnet. Danach laufen alle
+     * Zugriffe über das int-Feld statt über das Farbmodell des Dekoders
+     * (z. B. 3-Byte-BGR, indiziert oder 16 Bit je Kanal).
+     * @param image das umzuwandelnde BufferedImage, z. B. frisch von einem
+     *        ImageReader.
+     * @return das gepackte Farbbild, oder image selbst, wenn es bereits ein
+     *         gepacktes Farbbild ist.
+     */
+    public static Farbbild gepackt(BufferedImage image) {
+        if (image instanceof Farbbild) {
+            Farbbild farbbild = (Farbbild) image;
+            if (farbbild.pixel != null || farbbild.speicher != null) {
+                return farbbild;
+            }
+        } else if (image.getType() == TYPE_INT_RGB || image.getType() == TYPE_INT_ARGB) {
+            Farbbild farbbild = uebernehmen(image);
+            if (farbbild.pixel != null) {
+                return farbbild;
+            }
+        }
+        final BufferedImage quelle = image;
+        final int breite = image.getWidth();
+        final int hoehe = image.getHeight();
+        final boolean mitAlpha = image.getColorModel().hasAlpha();
+        final Farbbild bild = mitAlpha
+                ? uebernehmen(new BufferedImage(breite, hoehe, TYPE_INT_ARGB))
+                : new Farbbild(breite, hoehe);
+        final int typ = image.getType();
+        final byte[] bytes = bytepufferErmitteln(image);
+        Kachelausfuehrer.ausfuehren(breite, hoehe, Parallelitaet.ZEILE,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                if (bytes == null) {
+                    // allgemeiner Weg über das Farbmodell, z. B. für
+                    // Graustufen, indizierte oder 16-Bit-Bilder
+                    quelle.getRGB(x, y, b, h, bild.pixel, y * breite + x, breite);
+                    if (!mitAlpha) {
+                        // getRGB liefert Alpha 255, ohne Alphakanal bleibt
+                        // das oberste Byte wie überall sonst 0
+                        for (int i = y * breite, ende = (y + h) * breite; i < ende; i++) {
+                            bild.pixel[i] &= 0x00ffffff;
+                        }
+                    }
+                } else if (typ == TYPE_3BYTE_BGR) {
+                    int ende = (y + h) * breite;
+                    for (int i = y * breite, j = 3 * i; i < ende; i++, j += 3) {
+                        bild.pixel[i] = (bytes[j + 2] & 0xff) << 16
+                                | (bytes[j + 1] & 0xff) << 8 | (bytes[j] & 0xff);
+                    }
+                } else {
+                    int ende = (y + h) * breite;
+                    for (int i = y * breite, j = 4 * i; i < ende; i++, j += 4) {
+                        bild.pixel[i] = (bytes[j] & 0xff) << 24 | (bytes[j + 3] & 0xff) << 16
+                                | (bytes[j + 2] & 0xff) << 8 | (bytes[j + 1] & 0xff);
+                    }
+                }
+            }
+        });
+        if (image instanceof Farbbild) {
+            Farbbild original = (Farbbild) image;
+            bild.dateiname = original.dateiname;
+            bild.dateityp = original.dateityp;
+            bild.unterabtastung = original.unterabtastung;
+        }
+        return bild;
+    }
+
+    /**
+     * Erzeuge ein indiziertes Farbbild aus einem BufferedImage mit Palette
+     * (IndexColorModel mit höchstens 256 Einträgen), wie es z. B. GIFs und
+     * PNGs mit Palette liefern. Es belegt ein Byte je Bildpunkt, und
+     * Punktfilter bilden nur die Palette ab. Schreibt ein anderer Filter in
+     * das Bild, werden die Bildpunkte einmalig zu gepackten int-Werten
+     * aufgelöst. Liegen die Indizes schon als ein Byte je Bildpunkt vor,
+     * werden sie wie bei {@link #uebernehmen(BufferedImage)} ohne Kopie
+     * übernommen.
+     * @param image das BufferedImage mit Palette.
+     * @return das indizierte Farbbild oder null, wenn das Bild keine Palette
+     *         mit höchstens 256 Einträgen hat.
+     */
+    public static Farbbild indiziert(BufferedImage image) {
+        if (!(image.getColorModel() instanceof IndexColorModel)) {
+            return null;
+        }
+        IndexColorModel modell = (IndexColorModel) image.getColorModel();
+        if (modell.getMapSize() > 256) {
+            return null;
+        }
+        int breite = image.getWidth();
+        int hoehe = image.getHeight();
+        boolean alpha = modell.hasAlpha();
+        int[] palette = new int[256];
+        modell.getRGBs(palette);
+        if (!alpha) {
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] &= 0x00ffffff;
+            }
+        }
+        byte[] indizes = null;
+        WritableRaster raster = image.getRaster();
+        if (image.getType() == TYPE_BYTE_INDEXED
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getSampleModel() instanceof PixelInterleavedSampleModel) {
+            DataBufferByte puffer = (DataBufferByte) raster.getDataBuffer();
+            if (puffer.getNumBanks() == 1 && puffer.getOffset() == 0
+                    && ((PixelInterleavedSampleModel) raster.getSampleModel())
+                            .getScanlineStride() == breite) {
+                indizes = puffer.getData();
+            }
+        }
+        if (indizes == null) {
+            // z. B. mehrere Bildpunkte je Byte (TYPE_BYTE_BINARY)
+            indizes = new byte[breite * hoehe];
+            int[] zeile = new int[breite];
+            for (int y = 0; y < hoehe; y++) {
+                raster.getSamples(0, y, breite, 1, 0, zeile);
+                for (int x = 0; x < breite; x++) {
+                    indizes[y * breite + x] = (byte) zeile[x];
+                }
+            }
+        }
+        return new Farbbild(alpha, new Palettenspeicher(breite, indizes, palette),
+                breite, hoehe);
     }
 
     /**
@@ -38,6 +220,426 @@ public class Farbbild extends BufferedImage implements Transferable {
         super(breite, hoehe, TYPE_INT_RGB);
         dateiname = "";
         dateityp = "";
+        pixel = pixelpufferErmitteln();
+        alpha = false;
+        speicher = null;
+    }
+
+    /**
+     * Erzeugt ein gepacktes ARGB- bzw. RGB-Bild auf dem angegebenen Speicher.
+     */
+    private Farbbild(boolean alpha, Pixelspeicher speicher, int breite, int hoehe) {
+        super(alpha ? ColorModel.getRGBdefault()
+                : new DirectColorModel(24, 0x00ff0000, 0x0000ff00, 0x000000ff),
+                Raster.createWritableRaster(new SinglePixelPackedSampleModel(
+                        DataBuffer.TYPE_INT, breite, hoehe, alpha
+                                ? new int[]{0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000}
+                                : new int[]{0x00ff0000, 0x0000ff00, 0x000000ff}),
+                        speicher, null),
+                false, null);
+        dateiname = "";
+        dateityp = "";
+        pixel = null;
+        this.alpha = alpha;
+        this.speicher = speicher;
+    }
+
+    /**
+     * Erzeuge ein gekacheltes Farbbild als Kopie von einem BufferedImage.
+     * Gekachelte Bilder teilen sich beim Klonen ihre Kacheln und kopieren
+     * eine Kachel erst, wenn sie beschrieben wird (copy-on-write). Kopien für
+     * Vorschau und Verlauf kosten so nur Speicher für die veränderte Fläche.
+     * Das Zeichnen auf den Bildschirm ist dafür langsamer als bei gepackten
+     * Bildern.
+     * @param image das zu kopierende BufferedImage.
+     * @return das gekachelte Farbbild, mit Alphakanal, wenn das Original
+     *         einen hat.
+     */
+    public static Farbbild gekachelt(BufferedImage image) {
+        int breite = image.getWidth();
+        int hoehe = image.getHeight();
+        Farbbild bild = new Farbbild(image.getColorModel().hasAlpha(),
+                new Kachelspeicher(breite, hoehe), breite, hoehe);
+        bild.uebertragen(image);
+        return bild;
+    }
+
+    /**
+     * Erzeuge ein leeres Farbbild, dessen Bildpunkte außerhalb des Heaps in
+     * einer eingeblendeten temporären Datei liegen (memory-mapped). Solche
+     * Bilder dürfen größer als der Heap sein; das Betriebssystem lädt nur die
+     * gerade bearbeiteten Kacheln. Alle Zugriffsmethoden und Filter
+     * funktionieren wie gewohnt, Klonen kopiert die Datei.
+     * @param breite die Breite des Bildes.
+     * @param hoehe die Hoehe des Bildes.
+     * @param alpha ob das Bild einen Alphakanal haben soll.
+     * @return das ausgelagerte Farbbild, schwarz bzw. durchsichtig.
+     * @throws IOException wenn die Auslagerungsdatei nicht angelegt werden
+     *         kann.
+     */
+    public static Farbbild ausgelagert(int breite, int hoehe, boolean alpha)
+            throws IOException {
+        return new Farbbild(alpha, new Dateispeicher(breite, hoehe), breite, hoehe);
+    }
+
+    /**
+     * Erzeuge ein ausgelagertes Farbbild als Kopie von einem BufferedImage.
+     * @param image das zu kopierende BufferedImage.
+     * @return das ausgelagerte Farbbild, mit Alphakanal, wenn das Original
+     *         einen hat.
+     * @throws IOException wenn die Auslagerungsdatei nicht angelegt werden
+     *         kann.
+     * @see #ausgelagert(int, int, boolean)
+     */
+    public static Farbbild ausgelagert(BufferedImage image) throws IOException {
+        Farbbild bild = ausgelagert(image.getWidth(), image.getHeight(),
+                image.getColorModel().hasAlpha());
+        bild.uebertragen(image);
+        return bild;
+    }
+
+    /**
+     * Kopiert Inhalt und Dateiangaben eines gleich großen Bildes streifenweise
+     * in dieses Bild.
+     */
+    private void uebertragen(BufferedImage image) {
+        int breite = image.getWidth();
+        int hoehe = image.getHeight();
+        if (image instanceof Farbbild) {
+            Farbbild original = (Farbbild) image;
+            dateiname = original.dateiname;
+            dateityp = original.dateityp;
+            unterabtastung = original.unterabtastung;
+        }
+        int zeilen = Kachelausfuehrer.KACHELGROESSE;
+        int[] puffer = new int[breite * zeilen];
+        for (int y = 0; y < hoehe; y += zeilen) {
+            int h = Math.min(zeilen, hoehe - y);
+            if (image instanceof Farbbild) {
+                ((Farbbild) image).leseBereich(0, y, breite, h, puffer, 0, breite);
+            } else {
+                image.getRGB(0, y, breite, h, puffer, 0, breite);
+            }
+            schreibeBereich(0, y, breite, h, puffer, 0, breite);
+        }
+    }
+
+    /**
+     * Gibt an, ob das Bild gekachelt mit copy-on-write gespeichert ist.
+     * @return wahr, wenn das Bild gekachelt ist.
+     */
+    public boolean istGekachelt() {
+        return speicher instanceof Kachelspeicher;
+    }
+
+    /**
+     * Gibt an, ob die Bildpunkte außerhalb des Heaps in einer Datei liegen.
+     * Filter sollten für solche Bilder keine Hilfsfelder in Bildgröße
+     * anlegen.
+     * @return wahr, wenn das Bild ausgelagert ist.
+     */
+    public boolean istAusgelagert() {
+        return speicher instanceof Dateispeicher;
+    }
+
+    /**
+     * Gibt an, ob die Bildpunkte noch als Indizes in eine Palette vorliegen.
+     * @return wahr, wenn das Bild indiziert ist.
+     * @see #indiziert(BufferedImage)
+     */
+    public boolean istIndiziert() {
+        return speicher instanceof Palettenspeicher
+                && ((Palettenspeicher) speicher).istIndiziert();
+    }
+
+    /**
+     * Liefert das Bild mit seiner Palette als TYPE_BYTE_INDEXED-Bild auf
+     * denselben Indizes, z. B. um es mit Palette zu speichern. Spätere
+     * Änderungen der Palette wirken sich darauf nicht aus.
+     * @return das indizierte Bild oder null, wenn das Bild nicht indiziert
+     *         ist.
+     */
+    public BufferedImage gibPalettenbild() {
+        if (!(speicher instanceof Palettenspeicher)) {
+            return null;
+        }
+        return ((Palettenspeicher) speicher).palettenbild(getHeight(), alpha);
+    }
+
+    /**
+     * Gibt an, ob jeder Bildpunkt als gepackter int-Wert mit 8 Bit je Kanal
+     * vorliegt, direkt oder in einem Kachel-, Datei- oder aufgelösten
+     * Palettenspeicher. Dann liefern {@link #leseZeile(int, int[])} und
+     * {@link #leseBereich(int, int, int, int, int[], int, int)} das Bild
+     * ohne Verlust.
+     * @return falsch bei indizierten Bildern und bei Bildern in ihrem
+     *         ursprünglichen Format, z. B. mit 16 Bit je Kanal.
+     */
+    public boolean istAchtBitGepackt() {
+        return pixel != null || speicher != null && !istIndiziert();
+    }
+
+    /**
+     * Wendet eine Punktoperation nur auf die Palette an, wenn das Bild
+     * indiziert ist. Das kostet 256 statt Breite x Höhe Abbildungen.
+     * @param op die Punktoperation.
+     * @return wahr, wenn das Bild damit fertig abgebildet ist; falsch, wenn
+     *         es nicht indiziert ist und die Operation auf alle Bildpunkte
+     *         angewendet werden muss.
+     */
+    public boolean paletteAbbilden(Pixeloperation op) {
+        if (!(speicher instanceof Palettenspeicher)
+                || !((Palettenspeicher) speicher).paletteAbbilden(op,
+                        alpha ? 0 : 0xff000000, alpha ? -1 : 0x00ffffff)) {
+            return false;
+        }
+        hashBekannt = false;
+        return true;
+    }
+
+    /**
+     * Prüft, ob beide Bilder an der Stelle (x, y) dieselbe Kachel verwenden.
+     * @return wahr, wenn beide gekachelt sind und sich die Kachel teilen.
+     */
+    boolean teiltKachel(Farbbild anderes, int x, int y) {
+        return istGekachelt() && anderes.istGekachelt()
+                && getWidth() == anderes.getWidth() && getHeight() == anderes.getHeight()
+                && ((Kachelspeicher) speicher).gleicheKachel(
+                        (Kachelspeicher) anderes.speicher, x, y);
+    }
+
+    /**
+     * Übernimmt die Kachel an der Stelle (x, y) aus einem gleich großen,
+     * gekachelten Bild, ohne sie zu kopieren.
+     * @return wahr, wenn die Kachel übernommen werden konnte.
+     */
+    boolean kachelUebernehmen(Farbbild quelle, int x, int y) {
+        if (!istGekachelt() || !quelle.istGekachelt() || alpha != quelle.alpha
+                || getWidth() != quelle.getWidth() || getHeight() != quelle.getHeight()) {
+            return false;
+        }
+        hashBekannt = false;
+        ((Kachelspeicher) speicher).uebernehmen((Kachelspeicher) quelle.speicher, x, y);
+        return true;
+    }
+
+    /**
+     * Kopiert das Raster eines Bildes. Liegen die Bildpunkte gepackt und ohne
+     * Lücken in einem int-Feld, wird das ganze Feld mit einem Aufruf kopiert,
+     * sonst zeilenweise über das Raster.
+     * @param bild das zu kopierende Bild.
+     * @return ein neues Raster mit demselben Inhalt.
+     */
+    private static WritableRaster rasterKopieren(BufferedImage bild) {
+        WritableRaster raster = bild.getRaster();
+        if (raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            DataBufferInt puffer = (DataBufferInt) raster.getDataBuffer();
+            SinglePixelPackedSampleModel modell
+                    = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            int anzahl = bild.getWidth() * bild.getHeight();
+            if (puffer.getNumBanks() == 1 && puffer.getOffset() == 0
+                    && modell.getScanlineStride() == bild.getWidth()
+                    && puffer.getSize() >= anzahl) {
+                WritableRaster kopie = raster.createCompatibleWritableRaster();
+                System.arraycopy(puffer.getData(), 0,
+                        ((DataBufferInt) kopie.getDataBuffer()).getData(), 0, anzahl);
+                return kopie;
+            }
+        }
+        return bild.copyData(null);
+    }
+
+    /**
+     * Liefert das int-Feld hinter dem Raster, wenn die Bildpunkte als gepackte
+     * ARGB- bzw. RGB-Werte Zeile für Zeile ohne Lücken abgelegt sind.
+     * @return die Rasterdaten oder null, wenn das Bild anders gespeichert ist.
+     */
+    private int[] pixelpufferErmitteln() {
+        int typ = getType();
+        if (typ != TYPE_INT_RGB && typ != TYPE_INT_ARGB) {
+            return null;
+        }
+        WritableRaster raster = getRaster();
+        if (raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0
+                || !(raster.getDataBuffer() instanceof DataBufferInt)
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return null;
+        }
+        DataBufferInt puffer = (DataBufferInt) raster.getDataBuffer();
+        SinglePixelPackedSampleModel modell
+                = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        if (puffer.getNumBanks() != 1 || puffer.getOffset() != 0
+                || modell.getScanlineStride() != getWidth()) {
+            return null;
+        }
+        return puffer.getData();
+    }
+
+    /**
+     * Liefert das byte-Feld hinter dem Raster eines TYPE_3BYTE_BGR- oder
+     * TYPE_4BYTE_ABGR-Bildes, wenn die Bildpunkte Zeile für Zeile ohne Lücken
+     * abgelegt sind, wie sie die meisten Dekoder liefern.
+     * @return die Rasterdaten oder null, wenn das Bild anders gespeichert ist.
+     */
+    private static byte[] bytepufferErmitteln(BufferedImage image) {
+        int typ = image.getType();
+        if (typ != TYPE_3BYTE_BGR && typ != TYPE_4BYTE_ABGR) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        if (raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0
+                || !(raster.getDataBuffer() instanceof DataBufferByte)
+                || !(raster.getSampleModel() instanceof PixelInterleavedSampleModel)) {
+            return null;
+        }
+        DataBufferByte puffer = (DataBufferByte) raster.getDataBuffer();
+        PixelInterleavedSampleModel modell = (PixelInterleavedSampleModel) raster.getSampleModel();
+        if (puffer.getNumBanks() != 1 || puffer.getOffset() != 0
+                || modell.getScanlineStride() != modell.getPixelStride() * image.getWidth()) {
+            return null;
+        }
+        return puffer.getData();
+    }
+
+    /**
+     * Gibt an, ob die Bildpunkte direkt als gepackte int-Werte vorliegen und
+     * {@link #gibPixelpuffer()} damit eine Sicht auf die Rasterdaten liefert.
+     * @return wahr, wenn das Bild gepackt gespeichert ist.
+     */
+    public boolean istGepackt() {
+        return pixel != null;
+    }
+
+    /**
+     * Liefert die Rasterdaten des Bildes ohne Kopie. Die Bildpunkte liegen
+     * zeilenweise hintereinander, der Punkt (x, y) hat den Index
+     * y * Breite + x. Bei Bildern ohne Alphakanal wird das oberste Byte
+     * ignoriert und sollte 0 sein.
+     * Änderungen am Feld wirken sich unmittelbar auf das Bild aus. Wer das
+     * Feld später noch beschreibt, muss danach {@link #inhaltGeaendert()}
+     * aufrufen.
+     * @return das int-Feld oder null, wenn das Bild nicht gepackt ist.
+     */
+    public int[] gibPixelpuffer() {
+        inhaltGeaendert();
+        return pixel;
+    }
+
+    /**
+     * Teilt dem Bild mit, dass sein Inhalt an den eigenen Methoden vorbei
+     * verändert wurde, etwa über den Pixelpuffer oder das Raster. Der
+     * zwischengespeicherte Hashwert wird dadurch verworfen.
+     */
+    public void inhaltGeaendert() {
+        hashBekannt = false;
+    }
+
+    /**
+     * Liest eine Bildzeile als ARGB-Werte in ein vom Aufrufer bereitgestelltes
+     * Feld.
+     * @param y die Zeile.
+     * @param ziel Feld mit mindestens Breite Einträgen.
+     */
+    public void leseZeile(int y, int[] ziel) {
+        leseBereich(0, y, getWidth(), 1, ziel, 0, getWidth());
+    }
+
+    /**
+     * Schreibt eine Bildzeile aus ARGB-Werten eines vom Aufrufer
+     * bereitgestellten Feldes.
+     * @param y die Zeile.
+     * @param quelle Feld mit mindestens Breite Einträgen.
+     */
+    public void schreibeZeile(int y, int[] quelle) {
+        schreibeBereich(0, y, getWidth(), 1, quelle, 0, getWidth());
+    }
+
+    /**
+     * Liest einen rechteckigen Bildausschnitt als ARGB-Werte in ein vom
+     * Aufrufer bereitgestelltes Feld. Bei Bildern ohne Alphakanal ist der
+     * Alphawert stets 255.
+     * @param x linke Kante des Ausschnitts.
+     * @param y obere Kante des Ausschnitts.
+     * @param breite Breite des Ausschnitts.
+     * @param hoehe Höhe des Ausschnitts.
+     * @param ziel das Zielfeld.
+     * @param offset Index des ersten Bildpunktes im Zielfeld.
+     * @param zeilenlaenge Abstand zweier Zeilen im Zielfeld.
+     */
+    public void leseBereich(int x, int y, int breite, int hoehe,
+            int[] ziel, int offset, int zeilenlaenge) {
+        if (speicher != null) {
+            speicher.lesen(x, y, breite, hoehe, ziel, offset, zeilenlaenge,
+                    alpha ? 0 : 0xff000000);
+            return;
+        }
+        if (pixel == null) {
+            getRGB(x, y, breite, hoehe, ziel, offset, zeilenlaenge);
+            return;
+        }
+        int bildbreite = getWidth();
+        for (int j = 0; j < hoehe; j++) {
+            int von = (y + j) * bildbreite + x;
+            int nach = offset + j * zeilenlaenge;
+            System.arraycopy(pixel, von, ziel, nach, breite);
+            if (!alpha) {
+                for (int i = nach; i < nach + breite; i++) {
+                    ziel[i] |= 0xff000000;
+                }
+            }
+        }
+    }
+
+    /**
+     * Schreibt einen rechteckigen Bildausschnitt aus ARGB-Werten eines vom
+     * Aufrufer bereitgestellten Feldes.
+     * @param x linke Kante des Ausschnitts.
+     * @param y obere Kante des Ausschnitts.
+     * @param breite Breite des Ausschnitts.
+     * @param hoehe Höhe des Ausschnitts.
+     * @param quelle das Quellfeld.
+     * @param offset Index des ersten Bildpunktes im Quellfeld.
+     * @param zeilenlaenge Abstand zweier Zeilen im Quellfeld.
+     */
+    public void schreibeBereich(int x, int y, int breite, int hoehe,
+            int[] quelle, int offset, int zeilenlaenge) {
+        hashBekannt = false;
+        if (speicher != null) {
+            speicher.schreiben(x, y, breite, hoehe, quelle, offset, zeilenlaenge,
+                    alpha ? -1 : 0x00ffffff);
+            return;
+        }
+        if (pixel == null) {
+            setRGB(x, y, breite, hoehe, quelle, offset, zeilenlaenge);
+            return;
+        }
+        int bildbreite = getWidth();
+        for (int j = 0; j < hoehe; j++) {
+            int von = offset + j * zeilenlaenge;
+            int nach = (y + j) * bildbreite + x;
+            if (alpha) {
+                System.arraycopy(quelle, von, pixel, nach, breite);
+            } else {
+                for (int i = 0; i < breite; i++) {
+                    pixel[nach + i] = quelle[von + i] & 0x00ffffff;
+                }
+            }
+        }
+    }
+
+    /**
+     * Liefert einen Zeiger, mit dem alle Bildpunkte zeilenweise als gepackte
+     * ARGB-Werte gelesen und geschrieben werden können, ohne dass dabei
+     * Objekte erzeugt werden.
+     * @return ein neuer Pixelzeiger vor dem ersten Bildpunkt.
+     */
+    public Pixelzeiger gibPixelzeiger() {
+        return new Pixelzeiger(this, pixel, alpha);
     }
 
     /**
@@ -52,6 +654,54 @@ public class Farbbild extends BufferedImage implements Transferable {
         setRGB(x, y, punktfarbe);
     }
 
+    @Override
+    public void setRGB(int x, int y, int rgb) {
+        hashBekannt = false;
+        super.setRGB(x, y, rgb);
+    }
+
+    @Override
+    public void setRGB(int startX, int startY, int w, int h,
+            int[] rgbArray, int offset, int scansize) {
+        hashBekannt = false;
+        super.setRGB(startX, startY, w, h, rgbArray, offset, scansize);
+    }
+
+    @Override
+    public void setData(Raster r) {
+        hashBekannt = false;
+        super.setData(r);
+    }
+
+    /**
+     * Liefert das Raster des Bildes. Weil darüber geschrieben werden kann,
+     * wird der zwischengespeicherte Hashwert verworfen.
+     * @return das Raster.
+     */
+    @Override
+    public WritableRaster getRaster() {
+        hashBekannt = false;
+        return super.getRaster();
+    }
+
+    @Override
+    public WritableRaster getWritableTile(int tileX, int tileY) {
+        hashBekannt = false;
+        return super.getWritableTile(tileX, tileY);
+    }
+
+    /**
+     * Liefert ein Graphics2D-Objekt zum Zeichnen in dieses Bild. Was damit
+     * gezeichnet wird, nachdem der Hashwert erneut berechnet wurde, muss mit
+     * {@link #inhaltGeaendert()} gemeldet werden.
+     * @return das Graphics2D-Objekt.
+     */
+    @Override
+    public Graphics2D createGraphics() {
+        hashBekannt = false;
+        return super.createGraphics();
+    }
+
     /**
      * Liefere die Farbe des angegebenen Bildpunktes.
      * @param x die x-Koordinate des Bildpunktes.
@@ -63,6 +713,87 @@ public class Farbbild extends BufferedImage implements Transferable {
         return new Color(punktfarbe);
     }
     
+    /**
+     * Liest einen einzelnen Bildpunkt als ARGB-Wert, ohne dabei Objekte zu
+     * erzeugen. Für verstreute Zugriffe, etwa bei Verzerrungen.
+     */
+    int leseARGB(int x, int y) {
+        int argb;
+        if (pixel != null) {
+            argb = pixel[y * getWidth() + x];
+        } else if (speicher != null) {
+            argb = speicher.getElem(y * getWidth() + x);
+        } else {
+            return getRGB(x, y);
+        }
+        return alpha ? argb : argb | 0xff000000;
+    }
+
+    /**
+     * Erzeuge eine verkleinerte Kopie, in der jeder Bildpunkt der Mittelwert
+     * des entsprechenden Rechtecks im Original ist. Das Original wird dabei
+     * nur einmal Zeile für Zeile gelesen, so dass auch ausgelagerte Bilder
+     * ohne Hilfsfelder in Bildgröße verkleinert werden.
+     * @param breite die Breite der Kopie, höchstens die Bildbreite.
+     * @param hoehe die Höhe der Kopie, höchstens die Bildhöhe.
+     * @return die verkleinerte Kopie, mit Alphakanal, wenn das Original
+     *         einen hat.
+     */
+    public Farbbild verkleinert(int breite, int hoehe) {
+        int quellbreite = getWidth();
+        int quellhoehe = getHeight();
+        Farbbild klein = alpha
+                ? new Farbbild(new BufferedImage(breite, hoehe, TYPE_INT_ARGB))
+                : new Farbbild(breite, hoehe);
+        // Zielspalte jeder Quellspalte
+        int[] spalte = new int[quellbreite];
+        for (int x = 0; x < quellbreite; x++) {
+            spalte[x] = (int) ((long) x * breite / quellbreite);
+        }
+        int[] zeile = new int[quellbreite];
+        long[] summen = new long[4 * breite];
+        int[] ergebnis = new int[breite];
+        for (int ty = 0; ty < hoehe; ty++) {
+            int y0 = (int) ((long) ty * quellhoehe / hoehe);
+            int y1 = (int) ((long) (ty + 1) * quellhoehe / hoehe);
+            Arrays.fill(summen, 0);
+            for (int y = y0; y < y1; y++) {
+                leseZeile(y, zeile);
+                for (int x = 0; x < quellbreite; x++) {
+                    int argb = zeile[x];
+                    int k = 4 * spalte[x];
+                    summen[k] += argb >>> 24;
+                    summen[k + 1] += (argb >> 16) & 0xff;
+                    summen[k + 2] += (argb >> 8) & 0xff;
+                    summen[k + 3] += argb & 0xff;
+                }
+            }
+            for (int tx = 0; tx < breite; tx++) {
+                long x0 = ((long) tx * quellbreite + breite - 1) / breite;
+                long x1 = ((long) (tx + 1) * quellbreite + breite - 1) / breite;
+                long flaeche = Math.max(1, (x1 - x0) * (y1 - y0));
+                int argb = 0;
+                for (int c = 0; c < 4; c++) {
+                    argb |= (int) ((summen[4 * tx + c] + flaeche / 2) / flaeche)
+                            << (24 - 8 * c);
+                }
+                ergebnis[tx] = argb;
+            }
+            klein.schreibeZeile(ty, ergebnis);
+        }
+        return klein;
+    }
+
+    /**
+     * Berechnet das Integralbild dieses Bildes, mit dem sich Mittelwerte
+     * beliebig großer Rechtecke in konstanter Zeit bestimmen lassen.
+     * Spätere Änderungen am Bild wirken sich nicht auf das Integralbild aus.
+     * @return das Integralbild
+     */
+    public Integralbild gibIntegralbild() {
+        return new Integralbild(this);
+    }
+
     /**
      * Gibt die Metadaten dieses Objektes für den Transfer in das Clipboard wieder.
      * @return DataFlavor Bild-Metadaten
@@ -132,24 +863,59 @@ public class Farbbild extends BufferedImage implements Transferable {
     }
 
     /**
-     * Erzeugt eine Kopie des Objektes 
+     * Liefert den Faktor, mit dem das Bild beim Laden unterabgetastet wurde.
+     * Ein Bild mit Faktor n enthält nur jeden n-ten Bildpunkt jeder n-ten
+     * Zeile der Datei.
+     * @return der Faktor, 1 bei voller Auflösung
+     */
+    public int gibUnterabtastung() {
+        return unterabtastung;
+    }
+
+    /**
+     * Legt fest, mit welchem Faktor das Bild beim Laden unterabgetastet wurde.
+     * @param unterabtastung der Faktor, mindestens 1
+     */
+    public void setzeUnterabtastung(int unterabtastung) {
+        this.unterabtastung = Math.max(1, unterabtastung);
+    }
+
+    /**
+     * Gibt an, ob das Bild nur eine verkleinerte Vorschau der Datei ist, die
+     * vor dem Bearbeiten oder Speichern in voller Auflösung geladen werden
+     * muss.
+     * @return wahr, wenn das Bild unterabgetastet wurde.
+     */
+    public boolean istVorschau() {
+        return unterabtastung > 1;
+    }
+
+    /**
+     * Erzeugt eine Kopie des Objektes mit demselben Farbmodell. Gepackte
+     * Bilder werden mit einem einzigen Blockkopieraufruf kopiert, gekachelte
+     * teilen sich ihre Kacheln mit der Kopie, ausgelagerte bekommen eine
+     * eigene Auslagerungsdatei.
      * @return Kopie des Farbbild Objektes
      */
     @Override
     public Object clone() {
-        Farbbild copy = new Farbbild(this.getWidth(), this.getHeight());
+        Farbbild copy = speicher != null
+                ? new Farbbild(alpha, speicher.kopieren(), getWidth(), getHeight())
+                : new Farbbild(this);
         copy.dateiname = this.dateiname;
         copy.dateityp = this.dateityp;
-        for (int i = 0; i < this.getWidth(); i++) {
-            for (int j = 0; j < this.getHeight(); j++) {
-                copy.setRGB(i, j, this.getRGB(i, j));
-            }
-        }
+        copy.unterabtastung = this.unterabtastung;
+        copy.hash = this.hash;
+        copy.hashBekannt = this.hashBekannt;
         return copy;
     }
 
     /**
      * Überprüft, ob zwei Farbbilder die gleichen Bildinformationen besitzen.
+     * Verglichen werden die ARGB-Werte, unabhängig davon, wie die Bilder
+     * intern gespeichert sind. Der zwischengespeicherte Hashwert wird dafür
+     * nicht herangezogen, weil Schreibzugriffe über ein früher geholtes Feld
+     * oder Raster ihn unbemerkt veralten lassen können.
      * @param obj Ein Vergleichsobjekt; sollte vom Typ Farbbild sein.
      * @return wahr wenn der Inhalt der Farbbild Objekte gleich ist. Wenn andere Datentypen
      *         als Parameter übergeben werden oder die Farbbilder unterschiedliche
@@ -165,20 +931,71 @@ public class Farbbild extends BufferedImage implements Transferable {
             return true;
         }
         
-        if (this.getWidth() != ((Farbbild) obj).getWidth()
-                || this.getHeight() != ((Farbbild) obj).getHeight()
-                || !this.dateiname.equals(((Farbbild) obj).getDateiname())
-                || !this.dateityp.equals(((Farbbild) obj).getDateityp())) {
+        Farbbild anderes = (Farbbild) obj;
+        if (this.getWidth() != anderes.getWidth()
+                || this.getHeight() != anderes.getHeight()
+                || !this.dateiname.equals(anderes.getDateiname())
+                || !this.dateityp.equals(anderes.getDateityp())) {
             return false;
         }
         
-        for (int i = 0; i < this.getWidth(); i++) {
-            for (int j = 0; j < this.getHeight(); j++) {
-                if (this.getRGB(i, j) != ((Farbbild) obj).getRGB(i, j)) {
-                    return false;   
+        int anzahl = getWidth() * getHeight();
+        if (pixel != null && anderes.pixel != null && alpha == anderes.alpha
+                && pixel.length == anzahl && anderes.pixel.length == anzahl) {
+            if (alpha) {
+                return Arrays.equals(pixel, anderes.pixel);
+            }
+            // ohne Alphakanal zählt das oberste Byte nicht, wie in hashCode
+            for (int i = 0; i < anzahl; i++) {
+                if (((pixel[i] ^ anderes.pixel[i]) & 0x00ffffff) != 0) {
+                    return false;
                 }
             }
+            return true;
+        }
+
+        int breite = getWidth();
+        int[] zeile = new int[breite];
+        int[] andereZeile = new int[breite];
+        for (int y = 0; y < getHeight(); y++) {
+            leseZeile(y, zeile);
+            anderes.leseZeile(y, andereZeile);
+            if (!Arrays.equals(zeile, andereZeile)) {
+                return false;
+            }
         }
         return true;
     }
+
+    /**
+     * Berechnet einen Hashwert aus Größe und ARGB-Werten des Bildes, passend
+     * zu {@link #equals(Object)}. Der Wert wird bis zur nächsten Änderung
+     * zwischengespeichert.
+     * @return der Hashwert
+     */
+    @Override
+    public int hashCode() {
+        if (hashBekannt) {
+            return hash;
+        }
+        int breite = getWidth();
+        int h = 31 * breite + getHeight();
+        if (pixel != null && pixel.length == breite * getHeight()) {
+            int maske = alpha ? 0 : 0xff000000;
+            for (int argb : pixel) {
+                h = 31 * h + (argb | maske);
+            }
+        } else {
+            int[] zeile = new int[breite];
+            for (int y = 0; y < getHeight(); y++) {
+                leseZeile(y, zeile);
+                for (int argb : zeile) {
+                    h = 31 * h + argb;
+                }
+            }
+        }
+        hash = h;
+        hashBekannt = true;
+        return h;
+    }
 }
@@ -0,0 +1,303 @@
+package bildbetrachter.bild;
+
+/**
+ * Eine Farbtabelle beschreibt eine Punktoperation, bei der jeder Farbkanal
+ * eines Bildpunktes unabhängig von seiner Position über eine Tabelle mit 256
+ * Einträgen auf einen neuen Wert abgebildet wird. Die Tabellen werden einmal
+ * aus den Parametern eines Filters berechnet, danach kostet jeder Bildpunkt
+ * nur noch vier Tabellenzugriffe.
+ *
+ * Im Luminanzmodus wird statt der einzelnen Farbkanäle zuerst die Helligkeit
+ * des Bildpunktes bestimmt und diese über die Tabellen für rot, grün und blau
+ * abgebildet. Damit lassen sich z. B. Graustufen- und Schwellenwertfilter
+ * ausdrücken.
+ *
+ * Tabellen, die aus einem Kanalversatz, der Graustufenumwandlung oder einem
+ * Schwellenwert entstanden sind, merken sich das und rechnen beim Abbilden
+ * ganzer Felder mit den passenden {@link Pixelkerne}n statt mit Tabellen,
+ * wenn deren Vektorumsetzung verfügbar ist. Die skalaren Kerne sind nicht
+ * schneller als die Tabellen.
+ *
+ * Zwei hintereinander ausgeführte Farbtabellen lassen sich meist zu einer
+ * einzigen verketten, siehe {@link #verketten(Farbtabelle)}.
+ */
+public class Farbtabelle implements Pixeloperation {
+
+    // Gewichte für die Helligkeit nach ITU-R BT.601, Summe 256
+    private static final int GEWICHT_ROT = 77;
+    private static final int GEWICHT_GRUEN = 150;
+    private static final int GEWICHT_BLAU = 29;
+
+    // Die Tabellen enthalten die Werte bereits an die Position des Kanals
+    // im gepackten ARGB-Wert verschoben.
+    private final int[] alpha;
+    private final int[] rot;
+    private final int[] gruen;
+    private final int[] blau;
+    private final boolean luminanz;
+
+    // Kern, mit dem Felder statt über die Tabellen berechnet werden können
+    private enum Kern {
+        KEINER, VERSATZ, GRAU, SCHWELLE
+    }
+    private Kern kern = Kern.KEINER;
+    // nur die Vektorumsetzung der Kerne ist schneller als die Tabellen
+    private static final boolean KERNE_NUTZEN = Pixelkerne.istVektorisiert();
+    private int[] kernparameter;
+
+    /**
+     * Erzeugt eine Farbtabelle aus vier Tabellen mit je 256 Einträgen im
+     * Bereich 0 bis 255.
+     *
+     * @param alpha Tabelle für den Alphakanal
+     * @param rot Tabelle für den Rotkanal
+     * @param gruen Tabelle für den Grünkanal
+     * @param blau Tabelle für den Blaukanal
+     * @param luminanz wahr, wenn rot, grün und blau aus der Helligkeit des
+     * Bildpunktes statt aus dem eigenen Kanal berechnet werden sollen
+     */
+    public Farbtabelle(int[] alpha, int[] rot, int[] gruen, int[] blau,
+            boolean luminanz) {
+        this.alpha = verschieben(alpha, 24);
+        this.rot = verschieben(rot, 16);
+        this.gruen = verschieben(gruen, 8);
+        this.blau = verschieben(blau, 0);
+        this.luminanz = luminanz;
+    }
+
+    /**
+     * Liefert eine Tabelle, die jeden Wert auf sich selbst abbildet.
+     *
+     * @return die Identitätstabelle
+     */
+    public static int[] identitaet() {
+        int[] tabelle = new int[256];
+        for (int i = 0; i < 256; i++) {
+            tabelle[i] = i;
+        }
+        return tabelle;
+    }
+
+    /**
+     * Liefert eine Tabelle, die zu jedem Wert einen Versatz addiert und das
+     * Ergebnis auf den Bereich 0 bis 255 begrenzt.
+     *
+     * @param versatz der zu addierende Wert
+     * @return die Tabelle
+     */
+    public static int[] versatz(int versatz) {
+        int[] tabelle = new int[256];
+        for (int i = 0; i < 256; i++) {
+            tabelle[i] = klemmen(i + versatz);
+        }
+        return tabelle;
+    }
+
+    /**
+     * Erzeugt eine Farbtabelle, die auf jeden Kanal einen eigenen Versatz
+     * addiert.
+     *
+     * @param da Versatz für den Alphakanal
+     * @param dr Versatz für den Rotkanal
+     * @param dg Versatz für den Grünkanal
+     * @param db Versatz für den Blaukanal
+     * @return die Farbtabelle
+     */
+    public static Farbtabelle kanalversatz(int da, int dr, int dg, int db) {
+        Farbtabelle tabelle = new Farbtabelle(versatz(da), versatz(dr),
+                versatz(dg), versatz(db), false);
+        tabelle.kern = Kern.VERSATZ;
+        tabelle.kernparameter = new int[]{da, dr, dg, db};
+        return tabelle;
+    }
+
+    /**
+     * Erzeugt eine Farbtabelle, die jeden Bildpunkt durch seine Helligkeit
+     * als Grauwert ersetzt.
+     *
+     * @return die Farbtabelle
+     */
+    public static Farbtabelle graustufen() {
+        int[] id = identitaet();
+        Farbtabelle tabelle = new Farbtabelle(id, id, id, id, true);
+        tabelle.kern = Kern.GRAU;
+        return tabelle;
+    }
+
+    /**
+     * Erzeugt eine Farbtabelle, die Bildpunkte ab der angegebenen Helligkeit
+     * weiß und alle anderen schwarz macht.
+     *
+     * @param schwellenwert der Schwellenwert zwischen 0 und 255
+     * @return die Farbtabelle
+     */
+    public static Farbtabelle schwellenwert(int schwellenwert) {
+        int[] tabelle = new int[256];
+        for (int i = 0; i < 256; i++) {
+            tabelle[i] = i < schwellenwert ? 0 : 255;
+        }
+        Farbtabelle ergebnis = new Farbtabelle(identitaet(), tabelle, tabelle,
+                tabelle, true);
+        ergebnis.kern = Kern.SCHWELLE;
+        ergebnis.kernparameter = new int[]{schwellenwert};
+        return ergebnis;
+    }
+
+    /**
+     * begrenzt einen Farbwert auf den Bereich 0 bis 255
+     *
+     * @param wert der Farbwert
+     * @return der begrenzte Farbwert
+     */
+    public static int klemmen(int wert) {
+        return wert < 0 ? 0 : (wert > 255 ? 255 : wert);
+    }
+
+    private static int[] verschieben(int[] tabelle, int bits) {
+        if (tabelle.length != 256) {
+            throw new IllegalArgumentException("Farbtabellen müssen 256 Einträge haben.");
+        }
+        int[] verschoben = new int[256];
+        for (int i = 0; i < 256; i++) {
+            verschoben[i] = klemmen(tabelle[i]) << bits;
+        }
+        return verschoben;
+    }
+
+    /**
+     * Verkettet diese Tabelle mit einer danach auszuführenden zu einer
+     * einzigen Tabelle. Das ist nur dann nicht möglich, wenn die zweite
+     * Tabelle die Helligkeit von Bildpunkten braucht, deren Kanäle die erste
+     * unterschiedlich verändert hat.
+     *
+     * @param danach die danach auszuführende Tabelle
+     * @return die zusammengefasste Tabelle oder null
+     */
+    public Farbtabelle verketten(Farbtabelle danach) {
+        int[] a = new int[256];
+        int[] r = new int[256];
+        int[] g = new int[256];
+        int[] b = new int[256];
+        if (!danach.luminanz) {
+            for (int i = 0; i < 256; i++) {
+                a[i] = danach.alpha[alpha[i] >>> 24] >>> 24;
+                r[i] = danach.rot[rot[i] >>> 16] >>> 16;
+                g[i] = danach.gruen[gruen[i] >>> 8] >>> 8;
+                b[i] = danach.blau[blau[i]];
+            }
+            return new Farbtabelle(a, r, g, b, luminanz);
+        }
+        if (!luminanz && !(istIdentitaet(rot, 16) && istIdentitaet(gruen, 8)
+                && istIdentitaet(blau, 0))) {
+            return null;
+        }
+        for (int i = 0; i < 256; i++) {
+            // Helligkeit des Zwischenergebnisses für die Eingabe i
+            int y = (GEWICHT_ROT * (rot[i] >>> 16) + GEWICHT_GRUEN * (gruen[i] >>> 8)
+                    + GEWICHT_BLAU * blau[i]) >> 8;
+            a[i] = danach.alpha[alpha[i] >>> 24] >>> 24;
+            r[i] = danach.rot[y] >>> 16;
+            g[i] = danach.gruen[y] >>> 8;
+            b[i] = danach.blau[y];
+        }
+        return new Farbtabelle(a, r, g, b, true);
+    }
+
+    private static boolean istIdentitaet(int[] tabelle, int bits) {
+        for (int i = 0; i < 256; i++) {
+            if (tabelle[i] != i << bits) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int abbilden(int argb) {
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        if (luminanz) {
+            int y = (GEWICHT_ROT * r + GEWICHT_GRUEN * g + GEWICHT_BLAU * b) >> 8;
+            r = y;
+            g = y;
+            b = y;
+        }
+        return alpha[argb >>> 24] | rot[r] | gruen[g] | blau[b];
+    }
+
+    @Override
+    public void abbilden(int[] pixel, int von, int anzahl) {
+        switch (KERNE_NUTZEN ? kern : Kern.KEINER) {
+            case VERSATZ:
+                Pixelkerne.gib().addieren(pixel, von, anzahl, kernparameter[0],
+                        kernparameter[1], kernparameter[2], kernparameter[3]);
+                return;
+            case GRAU:
+                Pixelkerne.gib().graustufen(pixel, von, anzahl);
+                return;
+            case SCHWELLE:
+                Pixelkerne.gib().schwelle(pixel, von, anzahl, kernparameter[0]);
+                return;
+            default:
+                break;
+        }
+        int[] a = alpha;
+        int[] r = rot;
+        int[] g = gruen;
+        int[] b = blau;
+        int bis = von + anzahl;
+        if (luminanz) {
+            for (int i = von; i < bis; i++) {
+                int argb = pixel[i];
+                int y = (GEWICHT_ROT * ((argb >> 16) & 0xff)
+                        + GEWICHT_GRUEN * ((argb >> 8) & 0xff)
+                        + GEWICHT_BLAU * (argb & 0xff)) >> 8;
+                pixel[i] = a[argb >>> 24] | r[y] | g[y] | b[y];
+            }
+        } else {
+            for (int i = von; i < bis; i++) {
+                int argb = pixel[i];
+                pixel[i] = a[argb >>> 24] | r[(argb >> 16) & 0xff]
+                        | g[(argb >> 8) & 0xff] | b[argb & 0xff];
+            }
+        }
+    }
+
+    /**
+     * Wendet die Tabelle parallel auf alle Bildpunkte eines Bildes an, bei
+     * indizierten Bildern nur auf die Palette.
+     *
+     * @param bild das zu verändernde Bild
+     */
+    public void anwenden(final Farbbild bild) {
+        if (bild.paletteAbbilden(this)) {
+            return;
+        }
+        Kachelausfuehrer.ausfuehren(bild.getWidth(), bild.getHeight(),
+                Parallelitaet.KACHEL, new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int breite, int hoehe) {
+                anwenden(bild, x, y, breite, hoehe);
+            }
+        });
+    }
+
+    /**
+     * Wendet die Tabelle zeilenweise auf einen Ausschnitt eines Bildes an.
+     *
+     * @param bild das zu verändernde Bild
+     * @param x linke Kante des Ausschnitts
+     * @param y obere Kante des Ausschnitts
+     * @param breite Breite des Ausschnitts
+     * @param hoehe Höhe des Ausschnitts
+     */
+    public void anwenden(Farbbild bild, int x, int y, int breite, int hoehe) {
+        int[] zeile = new int[breite];
+        for (int j = y; j < y + hoehe; j++) {
+            bild.leseBereich(x, j, breite, 1, zeile, 0, breite);
+            abbilden(zeile, 0, breite);
+            bild.schreibeBereich(x, j, breite, 1, zeile, 0, breite);
+        }
+    }
+}
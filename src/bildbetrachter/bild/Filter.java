@@ -1,5 +1,8 @@
 package bildbetrachter.bild;
 
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.event.InputEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import javax.swing.JComponent;
@@ -15,6 +18,8 @@ public abstract class Filter extends JComponent {
     private final String name;
     private final PropertyChangeSupport change;
     private KeyStroke key;
+    // Wert, mit dem der Filter zuletzt angewendet wurde
+    private int wert;
 
     public Filter(String name) {
         change = new PropertyChangeSupport(this);
@@ -41,6 +46,20 @@ public abstract class Filter extends JComponent {
         return key;
     }
 
+    /**
+     * liefert die Modifikatortaste für Menükürzel (Strg bzw. Cmd). Ohne
+     * Bildschirm, etwa in Benchmarks oder Stapelverarbeitung, wird Strg
+     * angenommen, damit Filter auch dort erzeugt werden können.
+     *
+     * @return die Maske der Modifikatortaste
+     */
+    protected static int gibKuerzelmaske() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return InputEvent.CTRL_MASK;
+        }
+        return Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+    }
+
     /**
      * 
      * @param key 
@@ -49,6 +68,25 @@ public abstract class Filter extends JComponent {
         this.key = key;
     }
 
+    /**
+     * liefert den Wert, mit dem der Filter zuletzt angewendet wurde, z. B. um
+     * ihn in einer Filterkette zu wiederholen
+     *
+     * @return der Wert
+     */
+    public int gibWert() {
+        return wert;
+    }
+
+    /**
+     * merkt sich den Wert, mit dem der Filter angewendet wird
+     *
+     * @param wert der Wert
+     */
+    public void setzeWert(int wert) {
+        this.wert = wert;
+    }
+
     /**
      * Öffnet einen Benutzerdialog, indem Änderungen eingestellt werden können
      *
@@ -64,6 +102,41 @@ public abstract class Filter extends JComponent {
      */
     public abstract void ausfuehren(Farbbild kopie, int value);
 
+    /**
+     * liefert die Wirkung des Filters als Pixeloperation, falls jeder
+     * Bildpunkt nur aus seinem eigenen Wert berechnet wird. Solche Filter
+     * können in einer Filterkette in einem Durchlauf ausgeführt werden.
+     *
+     * @param value Wert, um den das Bild geändert werden soll.
+     * @return die Pixeloperation oder null, wenn der Filter Nachbarpunkte
+     * braucht
+     */
+    public Pixeloperation gibPixeloperation(int value) {
+        return null;
+    }
+
+    /**
+     * gibt an, wie der Filter auf mehrere Prozessorkerne verteilt werden
+     * darf. Ohne Angabe läuft ein Filter auf dem aufrufenden Thread.
+     *
+     * @return die Art der Parallelisierung
+     */
+    public Parallelitaet gibParallelitaet() {
+        return Parallelitaet.GLOBAL;
+    }
+
+    /**
+     * führt eine Operation auf dem Bild aus, zerlegt in Kacheln oder Streifen
+     * je nach {@link #gibParallelitaet()}.
+     *
+     * @param bild das zu bearbeitende Bild
+     * @param operation die Operation für jeden Bereich
+     */
+    protected void parallelAusfuehren(Farbbild bild, Bereichsoperation operation) {
+        Kachelausfuehrer.ausfuehren(bild.getWidth(), bild.getHeight(),
+                gibParallelitaet(), operation);
+    }
+
     public void anzeigeAktualisieren() {
         change.firePropertyChange("Bild geändert.", 0, 1);
     }
@@ -0,0 +1,208 @@
+package bildbetrachter.bild;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Eine Filterkette führt mehrere Filter nacheinander auf einem Bild aus.
+ * Aufeinanderfolgende Filter, die sich als Pixeloperation beschreiben lassen,
+ * werden dabei in einem einzigen Durchlauf über das Bild ausgeführt, so dass
+ * jeder Bildpunkt nur einmal gelesen und geschrieben wird. Farbtabellen werden
+ * vorher, soweit möglich, zu einer einzigen Tabelle verkettet.
+ *
+ * Filter, die Nachbarpunkte brauchen, unterbrechen die Zusammenfassung und
+ * werden für sich ausgeführt. Solange ein Bild indiziert ist, werden die
+ * zusammengefassten Pixeloperationen nur auf seine Palette angewendet.
+ *
+ * Die Wirkung eines Punktfilters wird beim Anhängen festgehalten, damit die
+ * Kette später genau das wiederholt, was damals eingestellt war, auch wenn
+ * der Filter inzwischen mit anderen Reglerwerten benutzt wurde.
+ */
+public class Filterkette extends Filter {
+
+    private final List<Filter> filter;
+    private final List<Integer> werte;
+    // Wirkung der Filter beim Anhängen, null bei Filtern mit Nachbarpunkten
+    private final List<Pixeloperation> operationen;
+
+    public Filterkette(String name) {
+        super(name);
+        filter = new ArrayList<>();
+        werte = new ArrayList<>();
+        operationen = new ArrayList<>();
+    }
+
+    /**
+     * hängt einen Filter an das Ende der Kette an
+     *
+     * @param f der Filter
+     * @param value der Wert, mit dem der Filter ausgeführt wird
+     * @return diese Filterkette
+     */
+    public Filterkette hinzufuegen(Filter f, int value) {
+        filter.add(f);
+        werte.add(value);
+        operationen.add(f.gibPixeloperation(value));
+        return this;
+    }
+
+    /**
+     * entfernt alle Filter hinter den ersten
+     *
+     * @param anzahl die Anzahl der Filter, die bleiben
+     */
+    public void kuerzen(int anzahl) {
+        while (filter.size() > anzahl) {
+            filter.remove(filter.size() - 1);
+            werte.remove(werte.size() - 1);
+            operationen.remove(operationen.size() - 1);
+        }
+    }
+
+    /**
+     * liefert eine neue Kette aus den ersten Filtern dieser Kette
+     *
+     * @param name der Name der neuen Kette
+     * @param anzahl die Anzahl der übernommenen Filter
+     * @return die neue Filterkette
+     */
+    public Filterkette anfang(String name, int anzahl) {
+        Filterkette kette = new Filterkette(name);
+        kette.filter.addAll(filter.subList(0, anzahl));
+        kette.werte.addAll(werte.subList(0, anzahl));
+        kette.operationen.addAll(operationen.subList(0, anzahl));
+        return kette;
+    }
+
+    /**
+     * @return die Anzahl der Filter in der Kette
+     */
+    public int gibAnzahl() {
+        return filter.size();
+    }
+
+    @Override
+    public void anwenden(Farbbild bild) {
+        ausfuehren(bild, 0);
+        anzeigeAktualisieren();
+    }
+
+    /**
+     * führt alle Filter der Kette aus
+     *
+     * @param kopie das zu verändernde Bild
+     * @param value wird nicht verwendet, jeder Filter hat seinen eigenen Wert
+     */
+    @Override
+    public void ausfuehren(Farbbild kopie, int value) {
+        List<Pixeloperation> stufen = new ArrayList<>();
+        for (int i = 0; i < filter.size(); i++) {
+            Pixeloperation op = operationen.get(i);
+            if (op != null) {
+                stufen.add(op);
+            } else {
+                durchlaufen(kopie, stufen);
+                stufen.clear();
+                filter.get(i).ausfuehren(kopie, werte.get(i));
+            }
+        }
+        durchlaufen(kopie, stufen);
+    }
+
+    /**
+     * Die Kette ist selbst eine Pixeloperation, wenn alle ihre Filter es sind.
+     */
+    @Override
+    public Pixeloperation gibPixeloperation(int value) {
+        List<Pixeloperation> stufen = new ArrayList<>();
+        for (Pixeloperation op : operationen) {
+            if (op == null) {
+                return null;
+            }
+        }
+        return zusammenfassen(operationen);
+    }
+
+    @Override
+    public Parallelitaet gibParallelitaet() {
+        return gibPixeloperation(0) != null ? Parallelitaet.KACHEL : Parallelitaet.GLOBAL;
+    }
+
+    /**
+     * führt eine Folge von Pixeloperationen in einem Durchlauf aus
+     */
+    private void durchlaufen(final Farbbild bild, List<Pixeloperation> stufen) {
+        if (stufen.isEmpty()) {
+            return;
+        }
+        final Pixeloperation op = zusammenfassen(stufen);
+        if (bild.paletteAbbilden(op)) {
+            return;
+        }
+        Kachelausfuehrer.ausfuehren(bild.getWidth(), bild.getHeight(),
+                Parallelitaet.KACHEL, new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int breite, int hoehe) {
+                int[] zeile = new int[breite];
+                for (int j = y; j < y + hoehe; j++) {
+                    bild.leseBereich(x, j, breite, 1, zeile, 0, breite);
+                    op.abbilden(zeile, 0, breite);
+                    bild.schreibeBereich(x, j, breite, 1, zeile, 0, breite);
+                }
+            }
+        });
+    }
+
+    /**
+     * verkettet benachbarte Farbtabellen und fasst die übrigen Stufen zu
+     * einer Operation zusammen
+     */
+    private static Pixeloperation zusammenfassen(List<Pixeloperation> stufen) {
+        List<Pixeloperation> ergebnis = new ArrayList<>();
+        for (Pixeloperation op : stufen) {
+            int letzte = ergebnis.size() - 1;
+            if (letzte >= 0 && op instanceof Farbtabelle
+                    && ergebnis.get(letzte) instanceof Farbtabelle) {
+                Farbtabelle verkettet = ((Farbtabelle) ergebnis.get(letzte))
+                        .verketten((Farbtabelle) op);
+                if (verkettet != null) {
+                    ergebnis.set(letzte, verkettet);
+                    continue;
+                }
+            }
+            ergebnis.add(op);
+        }
+        if (ergebnis.size() == 1) {
+            return ergebnis.get(0);
+        }
+        return new Verbund(ergebnis.toArray(new Pixeloperation[ergebnis.size()]));
+    }
+
+    /**
+     * wendet mehrere Pixeloperationen nacheinander auf denselben Abschnitt
+     * an, solange er noch im Cache liegt
+     */
+    private static class Verbund implements Pixeloperation {
+
+        private final Pixeloperation[] stufen;
+
+        Verbund(Pixeloperation[] stufen) {
+            this.stufen = stufen;
+        }
+
+        @Override
+        public int abbilden(int argb) {
+            for (Pixeloperation op : stufen) {
+                argb = op.abbilden(argb);
+            }
+            return argb;
+        }
+
+        @Override
+        public void abbilden(int[] pixel, int von, int anzahl) {
+            for (Pixeloperation op : stufen) {
+                op.abbilden(pixel, von, anzahl);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package bildbetrachter.bild;
+
+import bildbetrachter.gui.Parameter;
+import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Hashtable;
+import javax.swing.JLabel;
+import javax.swing.KeyStroke;
+
+/**
+ * Ahmt ein Fischaugenobjektiv nach: Die Bildmitte wird vergrößert, zum Rand
+ * des größten Kreises um die Mitte hin gestaucht. Der eingestellte Wert ist
+ * die Stärke der Wölbung in Prozent.
+ */
+public class FischaugenFilter extends Filter {
+
+    public FischaugenFilter(String name) {
+        super(name);
+        final int SHORTCUT_MASK = gibKuerzelmaske();
+        setKey(KeyStroke.getKeyStroke(KeyEvent.VK_F, SHORTCUT_MASK));
+    }
+
+    @Override
+    public void anwenden(final Farbbild kopie) {
+        int standard = 50;
+        int min = 0;
+        int max = 100;
+        String labelText = "Stellen Sie die gewünschte Wölbung ein.";
+        int majorTickSpacing = 25;
+        int minorTickSpacing = 5;
+        Hashtable labelTabelle = new Hashtable();
+        int[] werte = {0, 25, 50, 75, 100};
+        for (int i = 0; i < werte.length; i++) {
+            labelTabelle.put(werte[i], new JLabel(("" + werte[i])));
+        }
+        Parameter parameter = new Parameter(standard, labelText, min, max,
+                majorTickSpacing, minorTickSpacing, labelTabelle, kopie, this);
+        parameter.setSnapToTicks(false);
+        parameter.addPropertyChangeListener(new PropertyChangeListener() {
+            //OK wurde geklickt
+
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                ausfuehren(kopie, (Integer) event.getNewValue());
+                anzeigeAktualisieren();
+            }
+        });
+    }
+
+    @Override
+    public void ausfuehren(Farbbild bild, int value) {
+        if (value > 0 && value <= 100) {
+            new Fischauge(value).anwenden(bild);
+        }
+    }
+
+    @Override
+    public Parallelitaet gibParallelitaet() {
+        return Parallelitaet.ZEILE;
+    }
+
+    /**
+     * Der Abstand r zur Mitte, bezogen auf den Kreisradius, stammt aus dem
+     * Abstand r^(1 + Stärke) der Quelle.
+     */
+    private static class Fischauge extends Verzerrung {
+
+        private final int staerke;
+
+        Fischauge(int staerke) {
+            this.staerke = staerke;
+        }
+
+        @Override
+        protected String gibSchluessel() {
+            return Integer.toString(staerke);
+        }
+
+        @Override
+        protected boolean quellpunkt(int x, int y, int breite, int hoehe,
+                double[] punkt) {
+            double mx = (breite - 1) / 2.0;
+            double my = (hoehe - 1) / 2.0;
+            double radius = Math.max(1, Math.min(mx, my));
+            double dx = (x - mx) / radius;
+            double dy = (y - my) / radius;
+            double r = Math.sqrt(dx * dx + dy * dy);
+            double faktor = 1;
+            if (r > 0 && r < 1) {
+                faktor = Math.pow(r, staerke / 100.0);
+            }
+            punkt[0] = mx + dx * faktor * radius;
+            punkt[1] = my + dy * faktor * radius;
+            return true;
+        }
+    }
+}
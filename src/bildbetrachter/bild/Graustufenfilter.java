@@ -0,0 +1,29 @@
+package bildbetrachter.bild;
+
+import java.awt.event.KeyEvent;
+import javax.swing.KeyStroke;
+
+/**
+ * Wandelt das Bild in Graustufen um. Jeder Bildpunkt erhält als Grauwert
+ * seine Helligkeit.
+ */
+public class Graustufenfilter extends PunktFilter {
+
+    public Graustufenfilter(String name) {
+        super(name);
+        final int SHORTCUT_MASK = gibKuerzelmaske();
+        setKey(KeyStroke.getKeyStroke(KeyEvent.VK_G, SHORTCUT_MASK));
+    }
+
+    @Override
+    public void anwenden(Farbbild kopie) {
+        //kein Parameter nötig, sofort anwenden
+        ausfuehren(kopie, 0);
+        anzeigeAktualisieren();
+    }
+
+    @Override
+    protected Farbtabelle erzeugeTabelle(int value) {
+        return Farbtabelle.graustufen();
+    }
+}
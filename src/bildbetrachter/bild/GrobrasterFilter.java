@@ -0,0 +1,106 @@
+package bildbetrachter.bild;
+
+import bildbetrachter.gui.Parameter;
+import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.Hashtable;
+import javax.swing.JLabel;
+import javax.swing.KeyStroke;
+
+/**
+ * Vergröbert das Bild: Es wird in quadratische Blöcke zerlegt, die jeweils
+ * mit ihrer mittleren Farbe gefüllt werden. Der eingestellte Wert ist die
+ * Kantenlänge der Blöcke. Die Mittelwerte stammen aus dem Integralbild, bei
+ * ausgelagerten Bildern aus Streifen von einer Blockhöhe.
+ */
+public class GrobrasterFilter extends Filter {
+
+    public GrobrasterFilter(String name) {
+        super(name);
+        final int SHORTCUT_MASK = gibKuerzelmaske();
+        setKey(KeyStroke.getKeyStroke(KeyEvent.VK_J, SHORTCUT_MASK));
+    }
+
+    @Override
+    public void anwenden(final Farbbild kopie) {
+        int standard = 8;
+        int min = 2;
+        int max = 64;
+        String labelText = "Stellen Sie die gewünschte Blockgröße ein.";
+        int majorTickSpacing = 16;
+        int minorTickSpacing = 2;
+        Hashtable labelTabelle = new Hashtable();
+        int[] werte = {2, 16, 32, 48, 64};
+        for (int i = 0; i < werte.length; i++) {
+            labelTabelle.put(werte[i], new JLabel(("" + werte[i])));
+        }
+        Parameter parameter = new Parameter(standard, labelText, min, max,
+                majorTickSpacing, minorTickSpacing, labelTabelle, kopie, this);
+        parameter.setSnapToTicks(false);
+        parameter.addPropertyChangeListener(new PropertyChangeListener() {
+            //OK wurde geklickt
+
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                ausfuehren(kopie, (Integer) event.getNewValue());
+                anzeigeAktualisieren();
+            }
+        });
+    }
+
+    @Override
+    public void ausfuehren(Farbbild bild, int value) {
+        if (value < 2) {
+            return;
+        }
+        if (bild.istAusgelagert()) {
+            blockzeilen(bild, value);
+        } else {
+            bild.gibIntegralbild().grobraster(bild, value);
+        }
+    }
+
+    /**
+     * bestimmt die Mittelwerte Blockzeile für Blockzeile ohne Integralbild;
+     * der Heap belegt dabei nur einen Streifen in Blockhöhe
+     */
+    private static void blockzeilen(Farbbild bild, int block) {
+        int breite = bild.getWidth();
+        int hoehe = bild.getHeight();
+        int[] streifen = new int[breite * block];
+        long[] summen = new long[4];
+        for (int y = 0; y < hoehe; y += block) {
+            int h = Math.min(block, hoehe - y);
+            bild.leseBereich(0, y, breite, h, streifen, 0, breite);
+            for (int x = 0; x < breite; x += block) {
+                int b = Math.min(block, breite - x);
+                Arrays.fill(summen, 0);
+                for (int j = 0; j < h; j++) {
+                    for (int i = x; i < x + b; i++) {
+                        int argb = streifen[j * breite + i];
+                        summen[0] += argb >>> 24;
+                        summen[1] += (argb >> 16) & 0xff;
+                        summen[2] += (argb >> 8) & 0xff;
+                        summen[3] += argb & 0xff;
+                    }
+                }
+                long flaeche = (long) b * h;
+                int mittel = 0;
+                for (int c = 0; c < 4; c++) {
+                    mittel |= (int) ((summen[c] + flaeche / 2) / flaeche) << (24 - 8 * c);
+                }
+                for (int j = 0; j < h; j++) {
+                    Arrays.fill(streifen, j * breite + x, j * breite + x + b, mittel);
+                }
+            }
+            bild.schreibeBereich(0, y, breite, h, streifen, 0, breite);
+        }
+    }
+
+    @Override
+    public Parallelitaet gibParallelitaet() {
+        return Parallelitaet.KACHEL;
+    }
+}
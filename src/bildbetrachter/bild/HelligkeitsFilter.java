@@ -1,8 +1,6 @@
 package bildbetrachter.bild;
 
 import bildbetrachter.gui.Parameter;
-import java.awt.Color;
-import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -15,11 +13,11 @@ import javax.swing.KeyStroke;
  *
  * @author eih
  */
-public class HelligkeitsFilter extends Filter {
+public class HelligkeitsFilter extends PunktFilter {
 
     public HelligkeitsFilter(String name) {
         super(name);
-        final int SHORTCUT_MASK = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+        final int SHORTCUT_MASK = gibKuerzelmaske();
         setKey(KeyStroke.getKeyStroke(KeyEvent.VK_H, SHORTCUT_MASK));
     }
 
@@ -51,44 +49,10 @@ public class HelligkeitsFilter extends Filter {
     }
 
     @Override
-    public void ausfuehren(Farbbild bild, int value) {
-        int height = bild.getHeight();
-        int width = bild.getWidth();
-        //auf alle Bildpunkte anwenden        
-        if (-255 <= value && value <= 255) {
-            for (int i = 0; i < width; i++) {
-                for (int j = 0; j < height; j++) {
-                    Color c = bild.gibPunktfarbe(i, j);
-                    boolean heller = value > 0;
-                    int r = c.getRed() + value;
-                    int g = c.getGreen() + value;
-                    int b = c.getBlue() + value;
-
-                    if (r < 0 || r > 255) {
-                        if (heller) {
-                            r = 255;
-                        } else {
-                            r = 0;
-                        }
-                    }
-                    if (g < 0 || g > 255) {
-                        if (heller) {
-                            g = 255;
-                        } else {
-                            g = 0;
-                        }
-                    }
-                    if (b < 0 || b > 255) {
-                        if (heller) {
-                            b = 255;
-                        } else {
-                            b = 0;
-                        }
-                    }
-                    Color neu = new Color(r, g, b);
-                    bild.setzePunktfarbe(i, j, neu);
-                }
-            }
+    protected Farbtabelle erzeugeTabelle(int value) {
+        if (value < -255 || value > 255) {
+            return null;
         }
+        return Farbtabelle.kanalversatz(0, value, value, value);
     }
 }
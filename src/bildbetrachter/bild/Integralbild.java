@@ -0,0 +1,227 @@
+package bildbetrachter.bild;
+
+/**
+ * Ein Integralbild (summed-area table) enthält für jeden Kanal an der Stelle
+ * (x, y) die Summe aller Farbwerte oberhalb und links davon. Damit lässt sich
+ * die Summe bzw. der Mittelwert beliebiger Rechtecke mit vier Zugriffen je
+ * Kanal bestimmen, unabhängig von deren Größe. Boxfilter und Grobraster
+ * kosten so je Bildpunkt gleich viel, egal wie groß der Radius ist.
+ *
+ * Die Summen werden in int-Feldern modulo 2^32 gespeichert. Die Differenz
+ * für ein Rechteck ist trotzdem exakt, solange dessen wahre Summe unter 2^32
+ * liegt; größere Rechtecke werden in Streifen zerlegt. Ein Integralbild
+ * belegt 16 Byte je Bildpunkt.
+ */
+public class Integralbild {
+
+    // größte Fläche, deren Summe je Kanal sicher unter 2^32 bleibt
+    private static final long MAX_FLAECHE = 0xffffffffL / 255;
+
+    private int breite;
+    private int hoehe;
+    // Zeilenlänge der Tabellen, eine Spalte und Zeile mehr als das Bild
+    private int spalten;
+    private int[][] summen;
+
+    /**
+     * Berechnet das Integralbild eines Farbbildes.
+     *
+     * @param bild das Bild
+     */
+    public Integralbild(Farbbild bild) {
+        berechnen(bild);
+    }
+
+    /**
+     * Berechnet das Integralbild neu, z. B. nachdem das Bild verändert wurde.
+     * Bei gleicher Bildgröße werden die vorhandenen Felder wiederverwendet.
+     *
+     * @param bild das Bild
+     */
+    public final void berechnen(final Farbbild bild) {
+        int n = (bild.getWidth() + 1) * (bild.getHeight() + 1);
+        if (summen == null || summen[0].length != n) {
+            summen = new int[4][n];
+        }
+        breite = bild.getWidth();
+        hoehe = bild.getHeight();
+        spalten = breite + 1;
+        // 1. Durchgang: Zeilensummen, parallel in Streifen ganzer Zeilen
+        Kachelausfuehrer.ausfuehren(breite, hoehe, Parallelitaet.ZEILE,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                int[] zeile = new int[breite];
+                for (int j = y; j < y + h; j++) {
+                    bild.leseZeile(j, zeile);
+                    int basis = (j + 1) * spalten + 1;
+                    int sa = 0, sr = 0, sg = 0, sb = 0;
+                    for (int i = 0; i < breite; i++) {
+                        int argb = zeile[i];
+                        sa += argb >>> 24;
+                        sr += (argb >> 16) & 0xff;
+                        sg += (argb >> 8) & 0xff;
+                        sb += argb & 0xff;
+                        summen[0][basis + i] = sa;
+                        summen[1][basis + i] = sr;
+                        summen[2][basis + i] = sg;
+                        summen[3][basis + i] = sb;
+                    }
+                }
+            }
+        });
+        // 2. Durchgang: Spaltensummen, parallel in Streifen ganzer Spalten
+        Kachelausfuehrer.ausfuehrenSpalten(breite, hoehe, new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                for (int[] s : summen) {
+                    for (int j = 2; j <= hoehe; j++) {
+                        int oben = (j - 1) * spalten + 1 + x;
+                        int hier = j * spalten + 1 + x;
+                        for (int i = 0; i < b; i++) {
+                            s[hier + i] += s[oben + i];
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return die Breite des zugrunde liegenden Bildes
+     */
+    public int gibBreite() {
+        return breite;
+    }
+
+    /**
+     * @return die Höhe des zugrunde liegenden Bildes
+     */
+    public int gibHoehe() {
+        return hoehe;
+    }
+
+    /**
+     * Liefert die Summe eines Kanals über ein Rechteck. Die Grenzen müssen im
+     * Bild liegen.
+     *
+     * @param kanal 0 für Alpha, 1 für Rot, 2 für Grün, 3 für Blau
+     * @param x0 linke Kante, einschließlich
+     * @param y0 obere Kante, einschließlich
+     * @param x1 rechte Kante, ausschließlich
+     * @param y1 untere Kante, ausschließlich
+     * @return die Summe
+     */
+    public long summe(int kanal, int x0, int y0, int x1, int y1) {
+        int[] s = summen[kanal];
+        long flaeche = (long) (x1 - x0) * (y1 - y0);
+        if (flaeche <= MAX_FLAECHE) {
+            return rechteck(s, x0, y0, x1, y1);
+        }
+        // zu groß für eine Differenz modulo 2^32, in Streifen zerlegen
+        int zeilen = (int) Math.max(1, MAX_FLAECHE / (x1 - x0));
+        long summe = 0;
+        for (int y = y0; y < y1; y += zeilen) {
+            summe += rechteck(s, x0, y, x1, Math.min(y1, y + zeilen));
+        }
+        return summe;
+    }
+
+    private long rechteck(int[] s, int x0, int y0, int x1, int y1) {
+        int wert = s[y1 * spalten + x1] - s[y0 * spalten + x1]
+                - s[y1 * spalten + x0] + s[y0 * spalten + x0];
+        return wert & 0xffffffffL;
+    }
+
+    /**
+     * Liefert den gerundeten Mittelwert aller Kanäle über ein Rechteck. Das
+     * Rechteck wird auf das Bild beschnitten.
+     *
+     * @param x0 linke Kante, einschließlich
+     * @param y0 obere Kante, einschließlich
+     * @param x1 rechte Kante, ausschließlich
+     * @param y1 untere Kante, ausschließlich
+     * @return der Mittelwert als gepackter ARGB-Wert
+     */
+    public int mittelwert(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(breite, x1);
+        y1 = Math.min(hoehe, y1);
+        long flaeche = (long) (x1 - x0) * (y1 - y0);
+        if (flaeche <= 0) {
+            return 0;
+        }
+        int argb = 0;
+        for (int kanal = 0; kanal < 4; kanal++) {
+            long wert = (summe(kanal, x0, y0, x1, y1) + flaeche / 2) / flaeche;
+            argb |= (int) wert << (24 - 8 * kanal);
+        }
+        return argb;
+    }
+
+    /**
+     * Ersetzt jeden Bildpunkt durch den Mittelwert des Quadrates mit dem
+     * angegebenen Radius um ihn herum. Am Rand wird nur über den Teil im Bild
+     * gemittelt.
+     *
+     * @param ziel Bild in der Größe des Integralbildes, darf das Quellbild
+     * sein
+     * @param radius der Radius in Bildpunkten
+     */
+    public void boxfilter(final Farbbild ziel, final int radius) {
+        Kachelausfuehrer.ausfuehren(breite, hoehe, Parallelitaet.KACHEL,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                int[] ergebnis = new int[b * h];
+                for (int j = 0; j < h; j++) {
+                    int yy = y + j;
+                    for (int i = 0; i < b; i++) {
+                        int xx = x + i;
+                        ergebnis[j * b + i] = mittelwert(xx - radius, yy - radius,
+                                xx + radius + 1, yy + radius + 1);
+                    }
+                }
+                ziel.schreibeBereich(x, y, b, h, ergebnis, 0, b);
+            }
+        });
+    }
+
+    /**
+     * Zerlegt das Bild in Blöcke der angegebenen Größe, beginnend links oben,
+     * und füllt jeden Block mit seinem Mittelwert.
+     *
+     * @param ziel Bild in der Größe des Integralbildes, darf das Quellbild
+     * sein
+     * @param block die Kantenlänge eines Blocks
+     */
+    public void grobraster(final Farbbild ziel, final int block) {
+        Kachelausfuehrer.ausfuehren(breite, hoehe, Parallelitaet.KACHEL,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                int[] ergebnis = new int[b * h];
+                int erster = x / block;
+                int[] farben = new int[(x + b - 1) / block - erster + 1];
+                int blockzeile = -1;
+                for (int j = 0; j < h; j++) {
+                    int yy = y + j;
+                    if (yy / block != blockzeile) {
+                        // Mittelwerte der Blöcke dieser Blockzeile bestimmen
+                        blockzeile = yy / block;
+                        for (int k = 0; k < farben.length; k++) {
+                            int bx = (erster + k) * block;
+                            farben[k] = mittelwert(bx, blockzeile * block,
+                                    bx + block, (blockzeile + 1) * block);
+                        }
+                    }
+                    for (int i = 0; i < b; i++) {
+                        ergebnis[j * b + i] = farben[(x + i) / block - erster];
+                    }
+                }
+                ziel.schreibeBereich(x, y, b, h, ergebnis, 0, b);
+            }
+        });
+    }
+}
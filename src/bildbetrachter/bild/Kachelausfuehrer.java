@@ -0,0 +1,221 @@
+package bildbetrachter.bild;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Der Kachelausfuehrer zerlegt ein Bild in Kacheln oder Streifen, deren
+ * Bildpunkte gemeinsam in den Prozessorcache passen, und bearbeitet sie
+ * parallel. Standardmäßig wird der gemeinsame ForkJoinPool verwendet, es kann
+ * aber auch ein eigener Executor eingestellt werden.
+ */
+public class Kachelausfuehrer {
+
+    // Kantenlänge einer Kachel; 256 x 256 Bildpunkte belegen 256 KB
+    public static final int KACHELGROESSE = 256;
+    // Bildpunkte je Streifen bei zeilenweiser Zerlegung
+    private static final int STREIFENGROESSE = KACHELGROESSE * KACHELGROESSE;
+    // kleinere Bilder werden ohne Aufteilung bearbeitet
+    private static final int MINDESTGROESSE = STREIFENGROESSE;
+
+    private static volatile ExecutorService executor = ForkJoinPool.commonPool();
+
+    private Kachelausfuehrer() {
+    }
+
+    /**
+     * Legt fest, auf welchem Executor die Bereiche bearbeitet werden.
+     *
+     * @param neu der Executor oder null für den gemeinsamen ForkJoinPool
+     */
+    public static void setzeExecutor(ExecutorService neu) {
+        executor = neu != null ? neu : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * @return der eingestellte Executor
+     */
+    public static ExecutorService gibExecutor() {
+        return executor;
+    }
+
+    /**
+     * Bearbeitet eine Fläche der angegebenen Größe, zerlegt nach der
+     * angegebenen Art. Die Methode kehrt erst zurück, wenn alle Bereiche
+     * bearbeitet sind. Ausnahmen aus der Operation werden weitergereicht.
+     *
+     * @param breite Breite der Fläche
+     * @param hoehe Höhe der Fläche
+     * @param art wie die Fläche zerlegt werden darf
+     * @param operation die Operation für jeden Bereich
+     */
+    public static void ausfuehren(int breite, int hoehe, Parallelitaet art,
+            Bereichsoperation operation) {
+        if (breite <= 0 || hoehe <= 0) {
+            return;
+        }
+        if (art == Parallelitaet.GLOBAL
+                || (long) breite * hoehe <= MINDESTGROESSE) {
+            operation.bearbeiten(0, 0, breite, hoehe);
+            return;
+        }
+        verteilen(zerlegen(breite, hoehe, art), operation);
+    }
+
+    /**
+     * Bearbeitet eine Fläche in Streifen aus ganzen Spalten, je
+     * KACHELGROESSE breit. Das brauchen Verfahren, die jede Spalte von oben
+     * nach unten durchlaufen müssen.
+     *
+     * @param breite Breite der Fläche
+     * @param hoehe Höhe der Fläche
+     * @param operation die Operation für jeden Streifen
+     */
+    public static void ausfuehrenSpalten(int breite, int hoehe,
+            Bereichsoperation operation) {
+        if (breite <= 0 || hoehe <= 0) {
+            return;
+        }
+        if ((long) breite * hoehe <= MINDESTGROESSE) {
+            operation.bearbeiten(0, 0, breite, hoehe);
+            return;
+        }
+        List<int[]> bereiche = new ArrayList<>();
+        for (int x = 0; x < breite; x += KACHELGROESSE) {
+            bereiche.add(new int[]{x, 0, Math.min(KACHELGROESSE, breite - x), hoehe});
+        }
+        verteilen(bereiche, operation);
+    }
+
+    /**
+     * Bearbeitet eine Fläche in Streifen ganzer Zeilen mit der angegebenen
+     * Höhe, nur der letzte kann niedriger sein. Das brauchen Verfahren, bei
+     * denen jeder Streifen feste Kosten hat und deshalb nicht zu schmal sein
+     * darf.
+     *
+     * @param breite Breite der Fläche
+     * @param hoehe Höhe der Fläche
+     * @param zeilen Höhe eines Streifens
+     * @param operation die Operation für jeden Streifen
+     */
+    public static void ausfuehrenStreifen(int breite, int hoehe, int zeilen,
+            Bereichsoperation operation) {
+        if (breite <= 0 || hoehe <= 0) {
+            return;
+        }
+        if (zeilen >= hoehe) {
+            operation.bearbeiten(0, 0, breite, hoehe);
+            return;
+        }
+        List<int[]> bereiche = new ArrayList<>();
+        for (int y = 0; y < hoehe; y += zeilen) {
+            bereiche.add(new int[]{0, y, breite, Math.min(zeilen, hoehe - y)});
+        }
+        verteilen(bereiche, operation);
+    }
+
+    private static void verteilen(List<int[]> bereiche, Bereichsoperation operation) {
+        ExecutorService aktuell = executor;
+        if (aktuell instanceof ForkJoinPool) {
+            ((ForkJoinPool) aktuell).invoke(
+                    new Aufteilung(bereiche, 0, bereiche.size(), operation));
+        } else {
+            mitExecutor(aktuell, bereiche, operation);
+        }
+    }
+
+    /**
+     * Zerlegt die Fläche in Kacheln bzw. Streifen ganzer Zeilen.
+     *
+     * @return Liste der Bereiche als {x, y, breite, hoehe}
+     */
+    private static List<int[]> zerlegen(int breite, int hoehe, Parallelitaet art) {
+        List<int[]> bereiche = new ArrayList<>();
+        if (art == Parallelitaet.KACHEL && breite > KACHELGROESSE) {
+            for (int y = 0; y < hoehe; y += KACHELGROESSE) {
+                int h = Math.min(KACHELGROESSE, hoehe - y);
+                for (int x = 0; x < breite; x += KACHELGROESSE) {
+                    bereiche.add(new int[]{x, y, Math.min(KACHELGROESSE, breite - x), h});
+                }
+            }
+        } else {
+            int zeilen = Math.max(1, STREIFENGROESSE / breite);
+            for (int y = 0; y < hoehe; y += zeilen) {
+                bereiche.add(new int[]{0, y, breite, Math.min(zeilen, hoehe - y)});
+            }
+        }
+        return bereiche;
+    }
+
+    private static void mitExecutor(ExecutorService aktuell, List<int[]> bereiche,
+            final Bereichsoperation operation) {
+        List<Future<?>> auftraege = new ArrayList<>(bereiche.size());
+        for (final int[] b : bereiche) {
+            auftraege.add(aktuell.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    operation.bearbeiten(b[0], b[1], b[2], b[3]);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<?> auftrag : auftraege) {
+                auftrag.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> auftrag : auftraege) {
+                auftrag.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Filterausführung unterbrochen.", e);
+        } catch (ExecutionException e) {
+            Throwable ursache = e.getCause();
+            if (ursache instanceof RuntimeException) {
+                throw (RuntimeException) ursache;
+            }
+            if (ursache instanceof Error) {
+                throw (Error) ursache;
+            }
+            throw new IllegalStateException(ursache);
+        }
+    }
+
+    /**
+     * Teilt die Liste der Bereiche rekursiv auf, bis jede Aufgabe nur noch
+     * einen Bereich bearbeitet.
+     */
+    private static class Aufteilung extends RecursiveAction {
+
+        private final List<int[]> bereiche;
+        private final int von;
+        private final int bis;
+        private final Bereichsoperation operation;
+
+        Aufteilung(List<int[]> bereiche, int von, int bis,
+                Bereichsoperation operation) {
+            this.bereiche = bereiche;
+            this.von = von;
+            this.bis = bis;
+            this.operation = operation;
+        }
+
+        @Override
+        protected void compute() {
+            if (bis - von == 1) {
+                int[] b = bereiche.get(von);
+                operation.bearbeiten(b[0], b[1], b[2], b[3]);
+            } else {
+                int mitte = (von + bis) >>> 1;
+                invokeAll(new Aufteilung(bereiche, von, mitte, operation),
+                        new Aufteilung(bereiche, mitte, bis, operation));
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package bildbetrachter.bild;
+
+import java.util.Arrays;
+
+/**
+ * Ein Kachelspeicher hält die Bildpunkte eines Bildes als Raster aus Kacheln
+ * von KACHELGROESSE x KACHELGROESSE gepackten int-Werten. Kopien teilen sich
+ * die Kacheln (copy-on-write): Erst wenn in eine geteilte Kachel geschrieben
+ * wird, bekommt der Schreibende eine eigene Kopie. Eine Kopie des ganzen
+ * Bildes kostet so nur ein Feld von Verweisen, und jeder weitere Speicher
+ * wächst mit der veränderten Fläche, nicht mit der Bildgröße.
+ *
+ * Eine geteilte Kachel wird nie wieder beschrieben, auch wenn die übrigen
+ * Besitzer inzwischen nicht mehr existieren; der Zähler kennt daher nur
+ * "einer" und "mehrere". Das kostet höchstens eine überflüssige Kopie je
+ * Kachel, erlaubt aber paralleles Schreiben ohne Sperren auf dem schnellen
+ * Weg. Noch nie beschriebene Kacheln belegen keinen Speicher und enthalten
+ * 0.
+ *
+ * Das Kopieren über {@link #kopieren()} teilt ebenfalls nur die Kacheln.
+ */
+class Kachelspeicher extends Pixelspeicher {
+
+    static final int GROESSE = Kachelausfuehrer.KACHELGROESSE;
+    private static final int BITS = Integer.numberOfTrailingZeros(GROESSE);
+    private static final int MASKE = GROESSE - 1;
+
+    private final int breite;
+    private final int hoehe;
+    private final int spalten;
+    private final Kachel[] kacheln;
+
+    /**
+     * Erzeugt einen leeren Kachelspeicher.
+     *
+     * @param breite Breite des Bildes
+     * @param hoehe Höhe des Bildes
+     */
+    Kachelspeicher(int breite, int hoehe) {
+        super(breite * hoehe);
+        this.breite = breite;
+        this.hoehe = hoehe;
+        this.spalten = (breite + MASKE) >> BITS;
+        this.kacheln = new Kachel[spalten * ((hoehe + MASKE) >> BITS)];
+    }
+
+    /**
+     * Erzeugt einen Kachelspeicher, der sich alle Kacheln mit dem Original
+     * teilt.
+     */
+    private Kachelspeicher(Kachelspeicher original) {
+        this(original.breite, original.hoehe);
+        for (int i = 0; i < kacheln.length; i++) {
+            Kachel k = original.kacheln[i];
+            if (k != null) {
+                k.geteilt = true;
+                kacheln[i] = k;
+            }
+        }
+    }
+
+    /**
+     * @return eine Kopie, die sich alle Kacheln mit diesem Speicher teilt
+     */
+    @Override
+    Kachelspeicher kopieren() {
+        return new Kachelspeicher(this);
+    }
+
+    /**
+     * @return wahr, wenn beide Speicher an der Stelle dieselbe Kachel
+     * verwenden, ihr Inhalt dort also sicher gleich ist
+     */
+    boolean gleicheKachel(Kachelspeicher anderer, int x, int y) {
+        int i = (y >> BITS) * spalten + (x >> BITS);
+        return kacheln[i] == anderer.kacheln[i];
+    }
+
+    /**
+     * übernimmt die Kachel an der Stelle (x, y) aus dem anderen Speicher
+     * gleicher Größe, beide teilen sie danach
+     */
+    void uebernehmen(Kachelspeicher anderer, int x, int y) {
+        int i = (y >> BITS) * spalten + (x >> BITS);
+        Kachel k = anderer.kacheln[i];
+        if (k != null) {
+            k.geteilt = true;
+        }
+        synchronized (this) {
+            kacheln[i] = k;
+        }
+    }
+
+    /**
+     * @return Anzahl der Bytes in Kacheln, die nur diesem Speicher gehören
+     */
+    long gibEigeneBytes() {
+        long summe = 0;
+        for (Kachel k : kacheln) {
+            if (k != null && !k.geteilt) {
+                summe += 4L * k.daten.length;
+            }
+        }
+        return summe;
+    }
+
+    /**
+     * liefert eine Kachel, die nur diesem Speicher gehört und beschrieben
+     * werden darf
+     */
+    private Kachel beschreibbar(int i) {
+        Kachel k = kacheln[i];
+        if (k != null && !k.geteilt) {
+            return k;
+        }
+        synchronized (this) {
+            k = kacheln[i];
+            if (k == null) {
+                k = new Kachel(new int[GROESSE * GROESSE]);
+                kacheln[i] = k;
+            } else if (k.geteilt) {
+                k = new Kachel(k.daten.clone());
+                kacheln[i] = k;
+            }
+            return k;
+        }
+    }
+
+    @Override
+    void lesen(int x, int y, int b, int h, int[] ziel, int offset, int zeilenlaenge,
+            int oder) {
+        for (int ky = y & ~MASKE; ky < y + h; ky += GROESSE) {
+            int j0 = Math.max(y, ky);
+            int j1 = Math.min(y + h, ky + GROESSE);
+            for (int kx = x & ~MASKE; kx < x + b; kx += GROESSE) {
+                int i0 = Math.max(x, kx);
+                int i1 = Math.min(x + b, kx + GROESSE);
+                Kachel k = kacheln[(ky >> BITS) * spalten + (kx >> BITS)];
+                for (int j = j0; j < j1; j++) {
+                    int nach = offset + (j - y) * zeilenlaenge + (i0 - x);
+                    if (k == null) {
+                        Arrays.fill(ziel, nach, nach + i1 - i0, oder);
+                    } else {
+                        System.arraycopy(k.daten, ((j & MASKE) << BITS) + (i0 & MASKE),
+                                ziel, nach, i1 - i0);
+                        if (oder != 0) {
+                            for (int i = nach; i < nach + i1 - i0; i++) {
+                                ziel[i] |= oder;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Schreibt einen Ausschnitt; geteilte Kacheln werden dabei vorher
+     * kopiert.
+     */
+    @Override
+    void schreiben(int x, int y, int b, int h, int[] quelle, int offset, int zeilenlaenge,
+            int und) {
+        for (int ky = y & ~MASKE; ky < y + h; ky += GROESSE) {
+            int j0 = Math.max(y, ky);
+            int j1 = Math.min(y + h, ky + GROESSE);
+            for (int kx = x & ~MASKE; kx < x + b; kx += GROESSE) {
+                int i0 = Math.max(x, kx);
+                int i1 = Math.min(x + b, kx + GROESSE);
+                Kachel k = beschreibbar((ky >> BITS) * spalten + (kx >> BITS));
+                for (int j = j0; j < j1; j++) {
+                    int von = offset + (j - y) * zeilenlaenge + (i0 - x);
+                    int nach = ((j & MASKE) << BITS) + (i0 & MASKE);
+                    if (und == -1) {
+                        System.arraycopy(quelle, von, k.daten, nach, i1 - i0);
+                    } else {
+                        for (int i = 0; i < i1 - i0; i++) {
+                            k.daten[nach + i] = quelle[von + i] & und;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+        int y = i / breite;
+        int x = i - y * breite;
+        Kachel k = kacheln[(y >> BITS) * spalten + (x >> BITS)];
+        return k == null ? 0 : k.daten[((y & MASKE) << BITS) + (x & MASKE)];
+    }
+
+    @Override
+    public void setElem(int bank, int i, int wert) {
+        int y = i / breite;
+        int x = i - y * breite;
+        Kachel k = beschreibbar((y >> BITS) * spalten + (x >> BITS));
+        k.daten[((y & MASKE) << BITS) + (x & MASKE)] = wert;
+    }
+
+    /**
+     * eine Kachel mit GROESSE x GROESSE Werten, am Bildrand nur teilweise
+     * genutzt
+     */
+    private static class Kachel {
+
+        final int[] daten;
+        // wird nur von false auf true gesetzt, danach ist die Kachel
+        // unveränderlich
+        volatile boolean geteilt;
+
+        Kachel(int[] daten) {
+            this.daten = daten;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package bildbetrachter.bild;
+
+import java.awt.event.KeyEvent;
+import javax.swing.KeyStroke;
+
+/**
+ * Hebt Kanten hervor. Für jeden Farbkanal wird mit dem Sobeloperator die
+ * Stärke der Änderung zu den Nachbarpunkten bestimmt; gleichmäßige Flächen
+ * werden schwarz, Kanten hell. Die Transparenz bleibt erhalten.
+ */
+public class KantenerkennungsFilter extends Filter {
+
+    public KantenerkennungsFilter(String name) {
+        super(name);
+        final int SHORTCUT_MASK = gibKuerzelmaske();
+        setKey(KeyStroke.getKeyStroke(KeyEvent.VK_K, SHORTCUT_MASK));
+    }
+
+    @Override
+    public void anwenden(Farbbild kopie) {
+        //kein Parameter nötig, sofort anwenden
+        ausfuehren(kopie, 0);
+        anzeigeAktualisieren();
+    }
+
+    @Override
+    public void ausfuehren(final Farbbild bild, int value) {
+        final Faltung faltung = new Faltung(bild, Randmodus.ERWEITERN);
+        final Faltungskern sobelX = Faltungskern.sobelX();
+        final Faltungskern sobelY = Faltungskern.sobelY();
+        parallelAusfuehren(bild, new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int breite, int hoehe) {
+                int n = breite * hoehe;
+                float[][] gx = new float[4][n];
+                float[][] gy = new float[4][n];
+                faltung.falten(sobelX, x, y, breite, hoehe, gx);
+                faltung.falten(sobelY, x, y, breite, hoehe, gy);
+                for (int c = 1; c < 4; c++) {
+                    for (int i = 0; i < n; i++) {
+                        gx[c][i] = (float) Math.sqrt(gx[c][i] * gx[c][i]
+                                + gy[c][i] * gy[c][i]);
+                    }
+                }
+                for (int j = 0; j < hoehe; j++) {
+                    for (int i = 0; i < breite; i++) {
+                        gx[0][j * breite + i] = faltung.gibAlpha(x + i, y + j);
+                    }
+                }
+                int[] ergebnis = new int[n];
+                Faltung.packen(gx, ergebnis);
+                bild.schreibeBereich(x, y, breite, hoehe, ergebnis, 0, breite);
+            }
+        });
+    }
+
+    @Override
+    public Parallelitaet gibParallelitaet() {
+        return Parallelitaet.KACHEL;
+    }
+}
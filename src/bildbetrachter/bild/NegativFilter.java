@@ -0,0 +1,33 @@
+package bildbetrachter.bild;
+
+import java.awt.event.KeyEvent;
+import javax.swing.KeyStroke;
+
+/**
+ * Erzeugt das Negativ des Bildes, indem jeder Farbkanal umgekehrt wird.
+ */
+public class NegativFilter extends PunktFilter {
+
+    public NegativFilter(String name) {
+        super(name);
+        final int SHORTCUT_MASK = gibKuerzelmaske();
+        setKey(KeyStroke.getKeyStroke(KeyEvent.VK_N, SHORTCUT_MASK));
+    }
+
+    @Override
+    public void anwenden(Farbbild kopie) {
+        //kein Parameter nötig, sofort anwenden
+        ausfuehren(kopie, 0);
+        anzeigeAktualisieren();
+    }
+
+    @Override
+    protected Farbtabelle erzeugeTabelle(int value) {
+        int[] tabelle = new int[256];
+        for (int i = 0; i < 256; i++) {
+            tabelle[i] = 255 - i;
+        }
+        return new Farbtabelle(Farbtabelle.identitaet(), tabelle, tabelle,
+                tabelle, false);
+    }
+}
@@ -0,0 +1,182 @@
+package bildbetrachter.bild;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+
+/**
+ * Ein Palettenspeicher hält die Bildpunkte eines indizierten Bildes (z. B.
+ * GIF oder PNG mit Palette) als ein Byte je Bildpunkt und eine Palette von
+ * höchstens 256 gepackten Werten. Das belegt ein Viertel des Speichers eines
+ * gepackten Bildes, und Punktoperationen müssen nur die Palette statt aller
+ * Bildpunkte abbilden, siehe {@link #paletteAbbilden(Pixeloperation, int, int)}.
+ *
+ * Die Indizes werden nie verändert; Kopien teilen sich daher die Indizes und
+ * kopieren nur die Palette. Sobald ein Bildpunkt geschrieben wird, etwa von
+ * einem Filter, der Nachbarpunkte braucht, wird der Speicher einmalig zu
+ * einem int-Feld aufgelöst und verhält sich danach wie ein gepacktes Bild.
+ */
+class Palettenspeicher extends Pixelspeicher {
+
+    private final int breite;
+    private final byte[] indizes;
+    private final int[] palette;
+    // die aufgelösten Bildpunkte, null solange das Bild indiziert ist
+    private volatile int[] daten;
+
+    /**
+     * Erzeugt einen Palettenspeicher auf den angegebenen Indizes, ohne sie zu
+     * kopieren.
+     *
+     * @param breite Breite des Bildes
+     * @param indizes ein Index je Bildpunkt, zeilenweise ohne Lücken
+     * @param palette 256 gepackte Werte, wie sie auch im int-Feld eines
+     * gepackten Bildes stünden
+     */
+    Palettenspeicher(int breite, byte[] indizes, int[] palette) {
+        super(indizes.length);
+        this.breite = breite;
+        this.indizes = indizes;
+        this.palette = palette;
+    }
+
+    /**
+     * @return eine Kopie, die sich die Indizes mit diesem Speicher teilt
+     */
+    @Override
+    Palettenspeicher kopieren() {
+        Palettenspeicher kopie = new Palettenspeicher(breite, indizes, palette.clone());
+        int[] aufgeloest = daten;
+        if (aufgeloest != null) {
+            kopie.daten = aufgeloest.clone();
+        }
+        return kopie;
+    }
+
+    /**
+     * @return wahr, solange der Speicher noch nicht aufgelöst wurde
+     */
+    boolean istIndiziert() {
+        return daten == null;
+    }
+
+    /**
+     * Bildet die Palette mit einer Punktoperation ab, solange der Speicher
+     * noch indiziert ist.
+     *
+     * @param op die Operation
+     * @param oder wird vor dem Abbilden mit jedem Eintrag verodert
+     * @param und wird nach dem Abbilden mit jedem Eintrag verundet
+     * @return falsch, wenn der Speicher schon aufgelöst ist und die Operation
+     * auf alle Bildpunkte angewendet werden muss
+     */
+    synchronized boolean paletteAbbilden(Pixeloperation op, int oder, int und) {
+        if (daten != null) {
+            return false;
+        }
+        int[] eintraege = new int[palette.length];
+        for (int i = 0; i < eintraege.length; i++) {
+            eintraege[i] = palette[i] | oder;
+        }
+        op.abbilden(eintraege, 0, eintraege.length);
+        for (int i = 0; i < eintraege.length; i++) {
+            palette[i] = eintraege[i] & und;
+        }
+        return true;
+    }
+
+    /**
+     * Liefert die Indizes mit einer Kopie der Palette als indiziertes Bild,
+     * solange der Speicher noch indiziert ist.
+     *
+     * @param hoehe Höhe des Bildes
+     * @param alpha ob die Palette Alphawerte enthält
+     * @return das Bild oder null, wenn der Speicher schon aufgelöst ist
+     */
+    synchronized BufferedImage palettenbild(int hoehe, boolean alpha) {
+        if (daten != null) {
+            return null;
+        }
+        IndexColorModel modell = new IndexColorModel(8, palette.length, palette, 0, alpha, -1,
+                DataBuffer.TYPE_BYTE);
+        return new BufferedImage(modell, Raster.createInterleavedRaster(
+                new DataBufferByte(indizes, indizes.length), breite, hoehe, breite, 1,
+                new int[]{0}, null), false, null);
+    }
+
+    /**
+     * liefert die aufgelösten Bildpunkte und löst den Speicher dafür beim
+     * ersten Aufruf auf
+     */
+    private int[] aufloesen() {
+        int[] aufgeloest = daten;
+        if (aufgeloest != null) {
+            return aufgeloest;
+        }
+        synchronized (this) {
+            if (daten == null) {
+                aufgeloest = new int[indizes.length];
+                for (int i = 0; i < aufgeloest.length; i++) {
+                    aufgeloest[i] = palette[indizes[i] & 0xff];
+                }
+                daten = aufgeloest;
+            }
+            return daten;
+        }
+    }
+
+    @Override
+    void lesen(int x, int y, int b, int h, int[] ziel, int offset, int zeilenlaenge,
+            int oder) {
+        int[] aufgeloest = daten;
+        for (int j = 0; j < h; j++) {
+            int von = (y + j) * breite + x;
+            int nach = offset + j * zeilenlaenge;
+            if (aufgeloest != null) {
+                System.arraycopy(aufgeloest, von, ziel, nach, b);
+                if (oder != 0) {
+                    for (int i = nach; i < nach + b; i++) {
+                        ziel[i] |= oder;
+                    }
+                }
+            } else {
+                for (int i = 0; i < b; i++) {
+                    ziel[nach + i] = palette[indizes[von + i] & 0xff] | oder;
+                }
+            }
+        }
+    }
+
+    /**
+     * Schreibt einen Ausschnitt; der Speicher wird dabei vorher aufgelöst.
+     */
+    @Override
+    void schreiben(int x, int y, int b, int h, int[] quelle, int offset, int zeilenlaenge,
+            int und) {
+        int[] aufgeloest = aufloesen();
+        for (int j = 0; j < h; j++) {
+            int von = offset + j * zeilenlaenge;
+            int nach = (y + j) * breite + x;
+            if (und == -1) {
+                System.arraycopy(quelle, von, aufgeloest, nach, b);
+            } else {
+                for (int i = 0; i < b; i++) {
+                    aufgeloest[nach + i] = quelle[von + i] & und;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+        int[] aufgeloest = daten;
+        return aufgeloest != null ? aufgeloest[i] : palette[indizes[i] & 0xff];
+    }
+
+    @Override
+    public void setElem(int bank, int i, int wert) {
+        aufloesen()[i] = wert;
+    }
+}
@@ -0,0 +1,24 @@
+package bildbetrachter.bild;
+
+/**
+ * Gibt an, wie ein Filter bei der Ausführung auf mehrere Prozessorkerne
+ * verteilt werden darf.
+ */
+public enum Parallelitaet {
+
+    /**
+     * Jeder rechteckige Ausschnitt des Bildes kann unabhängig von den anderen
+     * bearbeitet werden, z. B. bei Punktoperationen.
+     */
+    KACHEL,
+    /**
+     * Das Bild kann nur in Streifen aus ganzen Zeilen zerlegt werden, z. B.
+     * wenn der Filter innerhalb einer Zeile von links nach rechts arbeitet.
+     */
+    ZEILE,
+    /**
+     * Der Filter braucht das ganze Bild auf einmal und läuft auf dem
+     * aufrufenden Thread.
+     */
+    GLOBAL
+}
@@ -0,0 +1,131 @@
+package bildbetrachter.bild;
+
+/**
+ * Pixelkerne bündelt häufige Rechenschritte auf Feldern gepackter
+ * ARGB-Werte. Es gibt eine skalare Umsetzung, die überall läuft, und eine mit
+ * der Vector API (jdk.incubator.vector), die mehrere Bildpunkte in einem
+ * Befehl verarbeitet. Welche verwendet wird, entscheidet {@link #gib()} beim
+ * ersten Aufruf: Ist die Vektorumsetzung mitgebaut (siehe build.xml,
+ * Eigenschaft vektor.kerne) und das Modul beim Start freigegeben
+ * (--add-modules jdk.incubator.vector), wird sie genutzt, sonst die skalare.
+ *
+ * Alle Kerne liefern in beiden Umsetzungen bitgenau dieselben Ergebnisse.
+ */
+public abstract class Pixelkerne {
+
+    // Gewichte für die Helligkeit nach ITU-R BT.601, Summe 256
+    static final int GEWICHT_ROT = 77;
+    static final int GEWICHT_GRUEN = 150;
+    static final int GEWICHT_BLAU = 29;
+
+    private static final String VEKTORKLASSE = "bildbetrachter.bild.VektorKerne";
+
+    // wird erst beim ersten Aufruf von gib() geladen, ohne dass jeder
+    // weitere Aufruf einen Monitor braucht
+    private static final class Halter {
+
+        static final Pixelkerne KERNE = laden();
+    }
+
+    /**
+     * Liefert die schnellste auf diesem System verfügbare Umsetzung. Mit der
+     * Systemeigenschaft bildbetrachter.vektor=false kann die skalare erzwungen
+     * werden.
+     *
+     * @return die Pixelkerne
+     */
+    public static Pixelkerne gib() {
+        return Halter.KERNE;
+    }
+
+    /**
+     * @return wahr, wenn {@link #gib()} die Vektorumsetzung liefert
+     */
+    static boolean istVektorisiert() {
+        return !(gib() instanceof SkalareKerne);
+    }
+
+    private static Pixelkerne laden() {
+        if (!"false".equals(System.getProperty("bildbetrachter.vektor"))) {
+            try {
+                Pixelkerne vektor = (Pixelkerne) Class.forName(VEKTORKLASSE)
+                        .getDeclaredConstructor().newInstance();
+                // einmal aufrufen, damit ein fehlendes Modul hier auffällt
+                vektor.graustufen(new int[1], 0, 1);
+                return vektor;
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                // Vektorumsetzung nicht gebaut oder Modul nicht verfügbar
+            }
+        }
+        return new SkalareKerne();
+    }
+
+    /**
+     * @return Name der Umsetzung, z. B. für Benchmarks
+     */
+    public abstract String gibName();
+
+    /**
+     * Addiert auf jeden Kanal einen Versatz und begrenzt auf 0 bis 255.
+     *
+     * @param pixel das Feld
+     * @param von Index des ersten Bildpunktes
+     * @param anzahl Anzahl der Bildpunkte
+     * @param da Versatz für den Alphakanal
+     * @param dr Versatz für den Rotkanal
+     * @param dg Versatz für den Grünkanal
+     * @param db Versatz für den Blaukanal
+     */
+    public abstract void addieren(int[] pixel, int von, int anzahl,
+            int da, int dr, int dg, int db);
+
+    /**
+     * Multipliziert jeden Kanal mit einem Faktor in Festkommadarstellung
+     * (256 entspricht 1,0) und begrenzt auf 0 bis 255.
+     *
+     * @param pixel das Feld
+     * @param von Index des ersten Bildpunktes
+     * @param anzahl Anzahl der Bildpunkte
+     * @param fa Faktor für den Alphakanal
+     * @param fr Faktor für den Rotkanal
+     * @param fg Faktor für den Grünkanal
+     * @param fb Faktor für den Blaukanal
+     */
+    public abstract void multiplizieren(int[] pixel, int von, int anzahl,
+            int fa, int fr, int fg, int fb);
+
+    /**
+     * Mischt zwei Felder kanalweise: ziel = a + (b - a) * gewicht / 256.
+     *
+     * @param a das erste Feld
+     * @param b das zweite Feld
+     * @param ziel das Ergebnisfeld, darf a oder b sein
+     * @param von Index des ersten Bildpunktes in allen drei Feldern
+     * @param anzahl Anzahl der Bildpunkte
+     * @param gewicht Anteil von b zwischen 0 und 256
+     */
+    public abstract void mischen(int[] a, int[] b, int[] ziel, int von,
+            int anzahl, int gewicht);
+
+    /**
+     * Ersetzt rot, grün und blau durch die Helligkeit des Bildpunktes, der
+     * Alphakanal bleibt erhalten.
+     *
+     * @param pixel das Feld
+     * @param von Index des ersten Bildpunktes
+     * @param anzahl Anzahl der Bildpunkte
+     */
+    public abstract void graustufen(int[] pixel, int von, int anzahl);
+
+    /**
+     * Setzt Bildpunkte, deren Helligkeit den Schwellenwert erreicht, auf weiß,
+     * alle anderen auf schwarz. Der Alphakanal bleibt erhalten.
+     *
+     * @param pixel das Feld
+     * @param von Index des ersten Bildpunktes
+     * @param anzahl Anzahl der Bildpunkte
+     * @param schwellenwert der Schwellenwert zwischen 0 und 255
+     */
+    public abstract void schwelle(int[] pixel, int von, int anzahl,
+            int schwellenwert);
+}
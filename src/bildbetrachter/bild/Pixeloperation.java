@@ -0,0 +1,27 @@
+package bildbetrachter.bild;
+
+/**
+ * Eine Pixeloperation berechnet jeden Bildpunkt allein aus seinem bisherigen
+ * ARGB-Wert. Solche Operationen können in einer Filterkette zu einem einzigen
+ * Durchlauf über das Bild zusammengefasst werden.
+ */
+public interface Pixeloperation {
+
+    /**
+     * Bildet einen einzelnen Bildpunkt ab.
+     *
+     * @param argb der gepackte ARGB-Wert
+     * @return der abgebildete ARGB-Wert
+     */
+    int abbilden(int argb);
+
+    /**
+     * Bildet einen Abschnitt eines Feldes gepackter ARGB-Werte an Ort und
+     * Stelle ab.
+     *
+     * @param pixel das Feld
+     * @param von Index des ersten Bildpunktes
+     * @param anzahl Anzahl der Bildpunkte
+     */
+    void abbilden(int[] pixel, int von, int anzahl);
+}
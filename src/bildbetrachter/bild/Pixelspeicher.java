@@ -0,0 +1,44 @@
+package bildbetrachter.bild;
+
+import java.awt.image.DataBuffer;
+
+/**
+ * Oberklasse für eigene Speicherformen der Bildpunkte, die nicht als ein
+ * einziges int-Feld vorliegen. Ein Pixelspeicher liegt einem Raster mit
+ * SinglePixelPackedSampleModel zugrunde, dessen Zeilenlänge der Bildbreite
+ * entspricht; der Index eines Bildpunktes ist also y * Breite + x. Java2D
+ * greift Punkt für Punkt über getElem/setElem zu, das Farbbild über die
+ * schnelleren Bereichsmethoden.
+ */
+abstract class Pixelspeicher extends DataBuffer {
+
+    /**
+     * @param groesse Anzahl der Bildpunkte
+     */
+    Pixelspeicher(int groesse) {
+        super(TYPE_INT, groesse);
+    }
+
+    /**
+     * Liest einen Ausschnitt als gepackte Werte.
+     *
+     * @param oder wird mit jedem gelesenen Wert verodert, z. B. 0xff000000
+     * für deckendes Alpha, sonst 0
+     */
+    abstract void lesen(int x, int y, int b, int h, int[] ziel, int offset,
+            int zeilenlaenge, int oder);
+
+    /**
+     * Schreibt einen Ausschnitt aus gepackten Werten.
+     *
+     * @param und wird mit jedem geschriebenen Wert verundet, z. B. 0x00ffffff
+     * für Bilder ohne Alpha, sonst -1
+     */
+    abstract void schreiben(int x, int y, int b, int h, int[] quelle, int offset,
+            int zeilenlaenge, int und);
+
+    /**
+     * @return ein neuer Speicher gleicher Art und Größe mit demselben Inhalt
+     */
+    abstract Pixelspeicher kopieren();
+}
@@ -0,0 +1,102 @@
+package bildbetrachter.bild;
+
+/**
+ * Ein Pixelzeiger durchläuft ein Farbbild zeilenweise und erlaubt es, den
+ * jeweils aktuellen Bildpunkt als gepackten ARGB-Wert zu lesen und zu
+ * schreiben. Anders als bei gibPunktfarbe/setzePunktfarbe werden dabei keine
+ * Color-Objekte erzeugt.
+ *
+ * <pre>
+ * Pixelzeiger z = bild.gibPixelzeiger();
+ * while (z.weiter()) {
+ *     z.setzeARGB(z.gibARGB() ^ 0x00ffffff);
+ * }
+ * </pre>
+ */
+public class Pixelzeiger {
+
+    private final Farbbild bild;
+    private final int[] pixel;
+    private final boolean alpha;
+    private final int breite;
+    private final int anzahl;
+    private int index;
+
+    /**
+     * Erzeugt einen Zeiger vor dem ersten Bildpunkt.
+     *
+     * @param bild das zu durchlaufende Bild
+     * @param pixel die Rasterdaten, falls das Bild gepackt ist, sonst null
+     * @param alpha ob das Bild einen Alphakanal besitzt
+     */
+    Pixelzeiger(Farbbild bild, int[] pixel, boolean alpha) {
+        this.bild = bild;
+        this.pixel = pixel;
+        this.alpha = alpha;
+        this.breite = bild.getWidth();
+        this.anzahl = breite * bild.getHeight();
+        this.index = -1;
+    }
+
+    /**
+     * Rückt zum nächsten Bildpunkt vor.
+     *
+     * @return wahr, solange noch ein Bildpunkt erreicht wurde
+     */
+    public boolean weiter() {
+        if (index < anzahl) {
+            index++;
+        }
+        return index < anzahl;
+    }
+
+    /**
+     * Setzt den Zeiger auf den angegebenen Bildpunkt.
+     *
+     * @param x die x-Koordinate
+     * @param y die y-Koordinate
+     */
+    public void setzePosition(int x, int y) {
+        index = y * breite + x;
+    }
+
+    /**
+     * @return die x-Koordinate des aktuellen Bildpunktes
+     */
+    public int gibX() {
+        return index % breite;
+    }
+
+    /**
+     * @return die y-Koordinate des aktuellen Bildpunktes
+     */
+    public int gibY() {
+        return index / breite;
+    }
+
+    /**
+     * Liefert die Farbe des aktuellen Bildpunktes.
+     *
+     * @return der gepackte ARGB-Wert
+     */
+    public int gibARGB() {
+        if (pixel == null) {
+            return bild.getRGB(index % breite, index / breite);
+        }
+        return alpha ? pixel[index] : pixel[index] | 0xff000000;
+    }
+
+    /**
+     * Setzt die Farbe des aktuellen Bildpunktes.
+     *
+     * @param argb der gepackte ARGB-Wert
+     */
+    public void setzeARGB(int argb) {
+        if (pixel == null) {
+            bild.setRGB(index % breite, index / breite, argb);
+        } else {
+            pixel[index] = alpha ? argb : argb & 0x00ffffff;
+            bild.inhaltGeaendert();
+        }
+    }
+}
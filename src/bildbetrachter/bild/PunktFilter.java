@@ -0,0 +1,54 @@
+package bildbetrachter.bild;
+
+/**
+ * abstrakte Oberklasse für Filter, die jeden Bildpunkt unabhängig von seinen
+ * Nachbarn verändern. Die Unterklassen beschreiben ihre Wirkung als
+ * Farbtabelle, die beim Ausführen einmal berechnet und dann auf das ganze
+ * Bild angewendet wird. Bei indizierten Bildern wird nur die Palette
+ * abgebildet.
+ */
+public abstract class PunktFilter extends Filter {
+
+    public PunktFilter(String name) {
+        super(name);
+    }
+
+    /**
+     * berechnet die Farbtabelle für den angegebenen Parameterwert
+     *
+     * @param value Wert, um den das Bild geändert werden soll.
+     * @return die Farbtabelle oder null, wenn das Bild unverändert bleibt
+     */
+    protected abstract Farbtabelle erzeugeTabelle(int value);
+
+    @Override
+    public void ausfuehren(final Farbbild kopie, int value) {
+        final Farbtabelle tabelle = erzeugeTabelle(value);
+        // bei indizierten Bildern genügt es, die Palette abzubilden
+        if (tabelle != null && !kopie.paletteAbbilden(tabelle)) {
+            parallelAusfuehren(kopie, new Bereichsoperation() {
+                @Override
+                public void bearbeiten(int x, int y, int breite, int hoehe) {
+                    tabelle.anwenden(kopie, x, y, breite, hoehe);
+                }
+            });
+        }
+    }
+
+    @Override
+    public Pixeloperation gibPixeloperation(int value) {
+        Farbtabelle tabelle = erzeugeTabelle(value);
+        // eine fehlende Tabelle lässt das Bild unverändert
+        return tabelle != null ? tabelle : new Farbtabelle(Farbtabelle.identitaet(),
+                Farbtabelle.identitaet(), Farbtabelle.identitaet(),
+                Farbtabelle.identitaet(), false);
+    }
+
+    /**
+     * Punktoperationen können in beliebigen Kacheln ausgeführt werden.
+     */
+    @Override
+    public Parallelitaet gibParallelitaet() {
+        return Parallelitaet.KACHEL;
+    }
+}
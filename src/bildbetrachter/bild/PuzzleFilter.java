@@ -0,0 +1,114 @@
+package bildbetrachter.bild;
+
+import bildbetrachter.gui.Parameter;
+import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Hashtable;
+import java.util.Random;
+import javax.swing.JLabel;
+import javax.swing.KeyStroke;
+
+/**
+ * Zerschneidet das Bild in Teile und setzt sie vertauscht wieder zusammen.
+ * Der eingestellte Wert ist die Anzahl der Teile je Zeile und Spalte. Die
+ * Reihenfolge hängt nur von diesem Wert ab, so dass Vorschau und Ergebnis
+ * übereinstimmen.
+ */
+public class PuzzleFilter extends Filter {
+
+    public PuzzleFilter(String name) {
+        super(name);
+        final int SHORTCUT_MASK = gibKuerzelmaske();
+        setKey(KeyStroke.getKeyStroke(KeyEvent.VK_U, SHORTCUT_MASK));
+    }
+
+    @Override
+    public void anwenden(final Farbbild kopie) {
+        int standard = 4;
+        int min = 2;
+        int max = 10;
+        String labelText = "Stellen Sie die Anzahl der Teile je Reihe ein.";
+        int majorTickSpacing = 2;
+        int minorTickSpacing = 1;
+        Hashtable labelTabelle = new Hashtable();
+        int[] werte = {2, 4, 6, 8, 10};
+        for (int i = 0; i < werte.length; i++) {
+            labelTabelle.put(werte[i], new JLabel(("" + werte[i])));
+        }
+        Parameter parameter = new Parameter(standard, labelText, min, max,
+                majorTickSpacing, minorTickSpacing, labelTabelle, kopie, this);
+        parameter.setSnapToTicks(true);
+        parameter.addPropertyChangeListener(new PropertyChangeListener() {
+            //OK wurde geklickt
+
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                ausfuehren(kopie, (Integer) event.getNewValue());
+                anzeigeAktualisieren();
+            }
+        });
+    }
+
+    @Override
+    public void ausfuehren(Farbbild bild, int value) {
+        if (value >= 2 && value <= bild.getWidth() && value <= bild.getHeight()) {
+            new Puzzle(value).anwenden(bild);
+        }
+    }
+
+    @Override
+    public Parallelitaet gibParallelitaet() {
+        return Parallelitaet.ZEILE;
+    }
+
+    private static class Puzzle extends Verzerrung {
+
+        private final int teile;
+        // Teil an Position i stammt von Teil reihenfolge[i]
+        private final int[] reihenfolge;
+
+        Puzzle(int teile) {
+            this.teile = teile;
+            reihenfolge = new int[teile * teile];
+            for (int i = 0; i < reihenfolge.length; i++) {
+                reihenfolge[i] = i;
+            }
+            Random zufall = new Random(teile);
+            for (int i = reihenfolge.length - 1; i > 0; i--) {
+                int j = zufall.nextInt(i + 1);
+                int t = reihenfolge[i];
+                reihenfolge[i] = reihenfolge[j];
+                reihenfolge[j] = t;
+            }
+        }
+
+        @Override
+        protected String gibSchluessel() {
+            return Integer.toString(teile);
+        }
+
+        @Override
+        protected boolean quellpunkt(int x, int y, int breite, int hoehe,
+                double[] punkt) {
+            int spalte = (int) ((long) x * teile / breite);
+            int zeile = (int) ((long) y * teile / hoehe);
+            int quelle = reihenfolge[zeile * teile + spalte];
+            int qs = quelle % teile;
+            int qz = quelle / teile;
+            // Lage innerhalb des Teils auf das Quellteil übertragen, die
+            // Teile können sich um einen Bildpunkt in der Größe unterscheiden
+            punkt[0] = umrechnen(x, spalte, qs, breite);
+            punkt[1] = umrechnen(y, zeile, qz, hoehe);
+            return true;
+        }
+
+        private int umrechnen(int wert, int teil, int quellteil, int groesse) {
+            int von = (int) ((long) teil * groesse / teile);
+            int bis = (int) ((long) (teil + 1) * groesse / teile);
+            int qvon = (int) ((long) quellteil * groesse / teile);
+            int qbis = (int) ((long) (quellteil + 1) * groesse / teile);
+            return qvon + (int) ((long) (wert - von) * (qbis - qvon) / (bis - von));
+        }
+    }
+}
@@ -2,7 +2,6 @@ package bildbetrachter.bild;
 
 import bildbetrachter.gui.Parameter;
 import java.awt.Color;
-import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -14,19 +13,28 @@ import javax.swing.JSlider;
 import javax.swing.KeyStroke;
 
 /**
- * Verändert die Farbwerte des Bildes
+ * Verändert die Farbwerte des Bildes. Rot, Grün, Blau und Alpha werden
+ * jeweils um ihren Reglerwert verschoben und auf 0 bis 255 begrenzt.
+ *
+ * Der Alphakanal wird dabei vom vorhandenen Wert des Bildpunktes aus
+ * verschoben. Früher ging er immer von voller Deckkraft aus, weil
+ * gibPunktfarbe den Alphakanal verwirft; teilweise transparente Bildpunkte
+ * wurden so bei jedem Anwenden deckend. Bei Bildern ohne Alphakanal ändert
+ * sich nichts.
  *
  * @author eih
  */
-public class RGBFilter extends Filter {
+public class RGBFilter extends PunktFilter {
 
     private String labelText;
     private JSlider rSlider, gSlider, bSlider, aSlider;
     private LinkedList<JComponent> guiList;
+    // zuletzt eingestellte Verschiebung für Alpha, Rot, Grün und Blau
+    private final int[] versatz = new int[4];
 
     public RGBFilter(String name) {
         super(name);
-        final int SHORTCUT_MASK = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+        final int SHORTCUT_MASK = gibKuerzelmaske();
         setKey(KeyStroke.getKeyStroke(KeyEvent.VK_R, SHORTCUT_MASK));
     }
 
@@ -45,62 +53,29 @@ public class RGBFilter extends Filter {
         });
     }
 
-    @Override
-    public void ausfuehren(Farbbild bild, int value) {
-        int height = bild.getHeight();
-        int width = bild.getWidth();
-        int rSld = rSlider.getValue();
-        int gSld = gSlider.getValue();
-        int bSld = bSlider.getValue();
-        int aSld = aSlider.getValue();
-        Color neu = new Color(0);
-
-        if (-255 <= rSld && rSld <= 255
-                || -255 <= gSld && gSld <= 255
-                || -255 <= bSld && bSld <= 255
-                || -255 <= aSld && aSld <= 255) {
-            //auf alle Bildpunkte anwenden
-            for (int i = 0; i < width; i++) {
-                for (int j = 0; j < height; j++) {
-                    Color c = bild.gibPunktfarbe(i, j);
-                    int r = c.getRed() + rSld;
-                    int g = c.getGreen() + gSld;
-                    int b = c.getBlue() + bSld;
-                    int a = c.getAlpha() + aSld;
+    /**
+     * legt die Verschiebung der Kanäle ohne Dialog fest, etwa für Benchmarks
+     * oder Filterketten. Ein geöffneter Dialog überschreibt die Werte.
+     *
+     * @param a Verschiebung des Alphakanals
+     * @param r Verschiebung des Rotkanals
+     * @param g Verschiebung des Grünkanals
+     * @param b Verschiebung des Blaukanals
+     */
+    public void setzeVersatz(int a, int r, int g, int b) {
+        versatz[0] = a;
+        versatz[1] = r;
+        versatz[2] = g;
+        versatz[3] = b;
+    }
 
-                    if (r < 0 || r > 255) {
-                        if (r > 255) {
-                            r = 255;
-                        } else {
-                            r = 0;
-                        }
-                    }
-                    if (g < 0 || g > 255) {
-                        if (g > 255) {
-                            g = 255;
-                        } else {
-                            g = 0;
-                        }
-                    }
-                    if (b < 0 || b > 255) {
-                        if (b > 255) {
-                            b = 255;
-                        } else {
-                            b = 0;
-                        }
-                    }
-                    if (a < 0 || a > 255) {
-                        if (a > 255) {
-                            a = 255;
-                        } else {
-                            a = 0;
-                        }
-                    }
-                    neu = new Color(r, g, b, a);
-                    bild.setzePunktfarbe(i, j, neu);
-                }
-            }
+    @Override
+    protected Farbtabelle erzeugeTabelle(int value) {
+        if (rSlider != null) {
+            setzeVersatz(aSlider.getValue(), rSlider.getValue(),
+                    gSlider.getValue(), bSlider.getValue());
         }
+        return Farbtabelle.kanalversatz(versatz[0], versatz[1], versatz[2], versatz[3]);
     }
 
     private void initComponents() {
@@ -0,0 +1,54 @@
+package bildbetrachter.bild;
+
+/**
+ * Legt fest, welche Werte eine Faltung für Bildpunkte außerhalb des Bildes
+ * verwendet.
+ */
+public enum Randmodus {
+
+    /**
+     * Der nächstgelegene Randpunkt wird wiederholt.
+     */
+    ERWEITERN,
+    /**
+     * Das Bild wird am Rand gespiegelt, ohne den Randpunkt zu verdoppeln.
+     */
+    SPIEGELN,
+    /**
+     * Das Bild setzt sich an der gegenüberliegenden Seite fort.
+     */
+    UMBRECHEN,
+    /**
+     * Außerhalb des Bildes liegt transparentes Schwarz.
+     */
+    TRANSPARENT;
+
+    /**
+     * Bildet eine Koordinate, die auch außerhalb des Bildes liegen kann, auf
+     * eine Koordinate im Bild ab.
+     *
+     * @param i die Koordinate
+     * @param n die Breite bzw. Höhe des Bildes
+     * @return die Koordinate im Bild oder -1 für transparent
+     */
+    public int abbilden(int i, int n) {
+        if (i >= 0 && i < n) {
+            return i;
+        }
+        switch (this) {
+            case ERWEITERN:
+                return i < 0 ? 0 : n - 1;
+            case SPIEGELN:
+                if (n == 1) {
+                    return 0;
+                }
+                int periode = 2 * (n - 1);
+                int m = Math.floorMod(i, periode);
+                return m < n ? m : periode - m;
+            case UMBRECHEN:
+                return Math.floorMod(i, n);
+            default:
+                return -1;
+        }
+    }
+}
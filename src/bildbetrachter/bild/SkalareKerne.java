@@ -0,0 +1,79 @@
+package bildbetrachter.bild;
+
+/**
+ * Umsetzung der Pixelkerne ohne Vektorbefehle. Sie wird verwendet, wenn die
+ * Vector API nicht zur Verfügung steht, und bearbeitet die Bildpunkte einzeln.
+ */
+class SkalareKerne extends Pixelkerne {
+
+    @Override
+    public String gibName() {
+        return "skalar";
+    }
+
+    private static int klemmen(int wert) {
+        return wert < 0 ? 0 : (wert > 255 ? 255 : wert);
+    }
+
+    @Override
+    public void addieren(int[] pixel, int von, int anzahl,
+            int da, int dr, int dg, int db) {
+        for (int i = von; i < von + anzahl; i++) {
+            int argb = pixel[i];
+            pixel[i] = klemmen((argb >>> 24) + da) << 24
+                    | klemmen(((argb >> 16) & 0xff) + dr) << 16
+                    | klemmen(((argb >> 8) & 0xff) + dg) << 8
+                    | klemmen((argb & 0xff) + db);
+        }
+    }
+
+    @Override
+    public void multiplizieren(int[] pixel, int von, int anzahl,
+            int fa, int fr, int fg, int fb) {
+        for (int i = von; i < von + anzahl; i++) {
+            int argb = pixel[i];
+            pixel[i] = klemmen(((argb >>> 24) * fa) >> 8) << 24
+                    | klemmen((((argb >> 16) & 0xff) * fr) >> 8) << 16
+                    | klemmen((((argb >> 8) & 0xff) * fg) >> 8) << 8
+                    | klemmen(((argb & 0xff) * fb) >> 8);
+        }
+    }
+
+    @Override
+    public void mischen(int[] a, int[] b, int[] ziel, int von, int anzahl,
+            int gewicht) {
+        for (int i = von; i < von + anzahl; i++) {
+            int p = a[i];
+            int q = b[i];
+            int ergebnis = 0;
+            for (int bits = 0; bits < 32; bits += 8) {
+                int x = (p >>> bits) & 0xff;
+                int y = (q >>> bits) & 0xff;
+                ergebnis |= (x + (((y - x) * gewicht) >> 8)) << bits;
+            }
+            ziel[i] = ergebnis;
+        }
+    }
+
+    @Override
+    public void graustufen(int[] pixel, int von, int anzahl) {
+        for (int i = von; i < von + anzahl; i++) {
+            int argb = pixel[i];
+            int y = (GEWICHT_ROT * ((argb >> 16) & 0xff)
+                    + GEWICHT_GRUEN * ((argb >> 8) & 0xff)
+                    + GEWICHT_BLAU * (argb & 0xff)) >> 8;
+            pixel[i] = (argb & 0xff000000) | (y << 16) | (y << 8) | y;
+        }
+    }
+
+    @Override
+    public void schwelle(int[] pixel, int von, int anzahl, int schwellenwert) {
+        for (int i = von; i < von + anzahl; i++) {
+            int argb = pixel[i];
+            int y = (GEWICHT_ROT * ((argb >> 16) & 0xff)
+                    + GEWICHT_GRUEN * ((argb >> 8) & 0xff)
+                    + GEWICHT_BLAU * (argb & 0xff)) >> 8;
+            pixel[i] = (argb & 0xff000000) | (y < schwellenwert ? 0 : 0x00ffffff);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package bildbetrachter.bild;
+
+import bildbetrachter.gui.Parameter;
+import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Hashtable;
+import javax.swing.JLabel;
+import javax.swing.KeyStroke;
+
+/**
+ * Ahmt die Solarisation aus der Fotografie nach: Farbwerte oberhalb des
+ * Schwellenwertes werden umgekehrt, die übrigen bleiben erhalten.
+ */
+public class SolarisationsFilter extends PunktFilter {
+
+    public SolarisationsFilter(String name) {
+        super(name);
+        final int SHORTCUT_MASK = gibKuerzelmaske();
+        setKey(KeyStroke.getKeyStroke(KeyEvent.VK_L, SHORTCUT_MASK));
+    }
+
+    @Override
+    public void anwenden(final Farbbild kopie) {
+        int standard = 128;
+        int min = 0;
+        int max = 255;
+        String labelText = "Stellen Sie ein, ab welchem Farbwert umgekehrt wird.";
+        int majorTickSpacing = 64;
+        int minorTickSpacing = 16;
+        Hashtable labelTabelle = new Hashtable();
+        int[] werte = {0, 64, 128, 192, 255};
+        for (int i = 0; i < werte.length; i++) {
+            labelTabelle.put(werte[i], new JLabel(("" + werte[i])));
+        }
+        Parameter parameter = new Parameter(standard, labelText, min, max,
+                majorTickSpacing, minorTickSpacing, labelTabelle, kopie, this);
+        parameter.setSnapToTicks(false);
+        parameter.addPropertyChangeListener(new PropertyChangeListener() {
+            //OK wurde geklickt
+
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                ausfuehren(kopie, (Integer) event.getNewValue());
+                anzeigeAktualisieren();
+            }
+        });
+    }
+
+    @Override
+    protected Farbtabelle erzeugeTabelle(int value) {
+        if (value < 0 || value > 255) {
+            return null;
+        }
+        int[] tabelle = new int[256];
+        for (int i = 0; i < 256; i++) {
+            tabelle[i] = i < value ? i : 255 - i;
+        }
+        return new Farbtabelle(Farbtabelle.identitaet(), tabelle, tabelle,
+                tabelle, false);
+    }
+}
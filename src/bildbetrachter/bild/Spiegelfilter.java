@@ -0,0 +1,83 @@
+package bildbetrachter.bild;
+
+import bildbetrachter.gui.Parameter;
+import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Hashtable;
+import javax.swing.JLabel;
+import javax.swing.KeyStroke;
+
+/**
+ * Spiegelt das Bild. Wert 0 spiegelt an der senkrechten Achse (links und
+ * rechts werden vertauscht), 1 an der waagerechten Achse, 2 an beiden.
+ */
+public class Spiegelfilter extends Filter {
+
+    public Spiegelfilter(String name) {
+        super(name);
+        final int SHORTCUT_MASK = gibKuerzelmaske();
+        setKey(KeyStroke.getKeyStroke(KeyEvent.VK_M, SHORTCUT_MASK));
+    }
+
+    @Override
+    public void anwenden(final Farbbild kopie) {
+        int standard = 0;
+        int min = 0;
+        int max = 2;
+        String labelText = "Wählen Sie die Spiegelachse.";
+        int majorTickSpacing = 1;
+        int minorTickSpacing = 1;
+        Hashtable labelTabelle = new Hashtable();
+        String[] texte = {"links/rechts", "oben/unten", "beide"};
+        for (int i = 0; i < texte.length; i++) {
+            labelTabelle.put(i, new JLabel(texte[i]));
+        }
+        Parameter parameter = new Parameter(standard, labelText, min, max,
+                majorTickSpacing, minorTickSpacing, labelTabelle, kopie, this);
+        parameter.setSnapToTicks(true);
+        parameter.addPropertyChangeListener(new PropertyChangeListener() {
+            //OK wurde geklickt
+
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                ausfuehren(kopie, (Integer) event.getNewValue());
+                anzeigeAktualisieren();
+            }
+        });
+    }
+
+    @Override
+    public void ausfuehren(Farbbild bild, int value) {
+        if (value >= 0 && value <= 2) {
+            new Spiegelung(value).anwenden(bild);
+        }
+    }
+
+    @Override
+    public Parallelitaet gibParallelitaet() {
+        return Parallelitaet.ZEILE;
+    }
+
+    private static class Spiegelung extends Verzerrung {
+
+        private final int achse;
+
+        Spiegelung(int achse) {
+            this.achse = achse;
+        }
+
+        @Override
+        protected String gibSchluessel() {
+            return Integer.toString(achse);
+        }
+
+        @Override
+        protected boolean quellpunkt(int x, int y, int breite, int hoehe,
+                double[] punkt) {
+            punkt[0] = achse != 1 ? breite - 1 - x : x;
+            punkt[1] = achse != 0 ? hoehe - 1 - y : y;
+            return true;
+        }
+    }
+}
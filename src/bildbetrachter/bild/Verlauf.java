@@ -0,0 +1,420 @@
+package bildbetrachter.bild;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Der Verlauf speichert die Bearbeitungsschritte eines Bildes, damit sie
+ * rückgängig gemacht und wiederholt werden können.
+ *
+ * Statt ganzer Bildkopien wird je Schritt nur festgehalten, welche Kacheln
+ * sich geändert haben, und zwar als komprimierte XOR-Differenz zwischen
+ * altem und neuem Inhalt. Dieselbe Differenz führt in beide Richtungen:
+ * Auf den neuen Stand angewendet ergibt sie den alten und umgekehrt. Zum
+ * Erkennen der Änderungen hält der Verlauf eine einzige Vergleichskopie des
+ * aktuellen Standes, unabhängig von der Zahl der Schritte. Bei gekachelten
+ * Bildern teilt sich die Vergleichskopie die Kacheln mit dem Bild, belegt
+ * also kaum eigenen Speicher, und unveränderte Kacheln werden ohne
+ * Vergleich der Bildpunkte erkannt.
+ *
+ * Die Schritte belegen höchstens das eingestellte Budget an Bytes; wird es
+ * überschritten, werden die ältesten Schritte verworfen. Rückgängig machen
+ * und Wiederholen kosten nur so viel, wie der Schritt Kacheln geändert hat.
+ */
+public class Verlauf {
+
+    private static final int KACHEL = Kachelausfuehrer.KACHELGROESSE;
+
+    private final List<Schritt> schritte = new ArrayList<>();
+    // Anzahl der angewendeten Schritte; dahinter liegen die wiederholbaren
+    private int position;
+    private long budget;
+    private long belegt;
+    private int zaehler;
+    // Kennung des ältesten noch erreichbaren Standes
+    private int basis;
+    private int breite;
+    private int hoehe;
+    // Vergleichskopie des aktuellen Standes
+    private Farbbild stand;
+
+    /**
+     * Erzeugt einen leeren Verlauf.
+     *
+     * @param budget höchstens belegte Bytes für die gespeicherten Schritte
+     */
+    public Verlauf(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Beginnt einen neuen Verlauf für das Bild und verwirft alle bisherigen
+     * Schritte.
+     *
+     * @param bild das Bild im Ausgangszustand oder null, wenn kein Bild
+     * bearbeitet wird
+     */
+    public void beginnen(Farbbild bild) {
+        schritte.clear();
+        position = 0;
+        belegt = 0;
+        basis = ++zaehler;
+        if (bild == null) {
+            stand = null;
+            breite = 0;
+            hoehe = 0;
+            return;
+        }
+        breite = bild.getWidth();
+        hoehe = bild.getHeight();
+        stand = (Farbbild) bild.clone();
+    }
+
+    /**
+     * Legt fest, wie viele Bytes die Schritte höchstens belegen dürfen, und
+     * verwirft gegebenenfalls die ältesten.
+     *
+     * @param budget das neue Budget in Bytes
+     */
+    public void setzeBudget(long budget) {
+        this.budget = budget;
+        kuerzen();
+    }
+
+    /**
+     * @return das Budget in Bytes
+     */
+    public long gibBudget() {
+        return budget;
+    }
+
+    /**
+     * @return die von den Schritten belegten Bytes
+     */
+    public long gibBelegt() {
+        return belegt;
+    }
+
+    /**
+     * Hält die Änderungen seit dem letzten Stand als neuen Schritt fest.
+     * Wiederholbare Schritte werden dabei verworfen. Hat sich die Bildgröße
+     * geändert, beginnt der Verlauf von vorn.
+     *
+     * @param name Bezeichnung des Schrittes, z. B. der Filtername
+     * @param bild das veränderte Bild
+     * @return wahr, wenn sich etwas geändert hat
+     */
+    public boolean aufzeichnen(String name, final Farbbild bild) {
+        if (stand == null || bild.getWidth() != breite || bild.getHeight() != hoehe) {
+            beginnen(bild);
+            return false;
+        }
+        int spalten = (breite + KACHEL - 1) / KACHEL;
+        int zeilen = (hoehe + KACHEL - 1) / KACHEL;
+        final Kacheldelta[] deltas = new Kacheldelta[spalten * zeilen];
+        final int kachelspalten = spalten;
+        Kachelausfuehrer.ausfuehren(breite, hoehe, Parallelitaet.KACHEL,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                // jede Kachel des Rasters gehört zu dem Bereich, in dem ihre
+                // linke obere Ecke liegt
+                for (int ky = aufrunden(y); ky < y + h; ky += KACHEL) {
+                    for (int kx = aufrunden(x); kx < x + b; kx += KACHEL) {
+                        deltas[(ky / KACHEL) * kachelspalten + kx / KACHEL]
+                                = vergleichen(bild, kx, ky, Math.min(KACHEL, breite - kx),
+                                        Math.min(KACHEL, hoehe - ky));
+                    }
+                }
+            }
+        });
+        List<Kacheldelta> geaendert = new ArrayList<>();
+        long groesse = 0;
+        for (Kacheldelta d : deltas) {
+            if (d != null) {
+                geaendert.add(d);
+                groesse += d.daten.length;
+            }
+        }
+        if (geaendert.isEmpty()) {
+            return false;
+        }
+        while (schritte.size() > position) {
+            belegt -= schritte.remove(schritte.size() - 1).groesse;
+        }
+        schritte.add(new Schritt(name, ++zaehler,
+                geaendert.toArray(new Kacheldelta[geaendert.size()]), groesse));
+        position++;
+        belegt += groesse;
+        kuerzen();
+        return true;
+    }
+
+    private static int aufrunden(int wert) {
+        return (wert + KACHEL - 1) / KACHEL * KACHEL;
+    }
+
+    /**
+     * vergleicht eine Kachel mit der Vergleichskopie, übernimmt den neuen
+     * Inhalt und liefert die komprimierte Differenz oder null
+     */
+    private Kacheldelta vergleichen(Farbbild bild, int x, int y, int b, int h) {
+        if (stand.teiltKachel(bild, x, y)) {
+            return null;
+        }
+        int[] neu = new int[b * h];
+        int[] differenz = new int[b * h];
+        bild.leseBereich(x, y, b, h, neu, 0, b);
+        stand.leseBereich(x, y, b, h, differenz, 0, b);
+        boolean gleich = true;
+        for (int i = 0; i < differenz.length; i++) {
+            differenz[i] ^= neu[i];
+            gleich &= differenz[i] == 0;
+        }
+        uebernehmen(bild, x, y, b, h, neu);
+        if (gleich) {
+            return null;
+        }
+        return new Kacheldelta(x, y, b, h, komprimieren(differenz));
+    }
+
+    /**
+     * bringt die Vergleichskopie an einer Kachel auf den Stand des Bildes,
+     * bei gekachelten Bildern ohne Kopie
+     */
+    private void uebernehmen(Farbbild bild, int x, int y, int b, int h, int[] werte) {
+        if (!stand.kachelUebernehmen(bild, x, y)) {
+            stand.schreibeBereich(x, y, b, h, werte, 0, b);
+        }
+    }
+
+    /**
+     * @return wahr, wenn ein Schritt rückgängig gemacht werden kann
+     */
+    public boolean kannRueckgaengig() {
+        return position > 0;
+    }
+
+    /**
+     * @return wahr, wenn ein rückgängig gemachter Schritt wiederholt werden
+     * kann
+     */
+    public boolean kannWiederholen() {
+        return position < schritte.size();
+    }
+
+    /**
+     * @return Bezeichnung des Schrittes, der als nächstes rückgängig gemacht
+     * würde, oder null
+     */
+    public String gibRueckgaengigName() {
+        return kannRueckgaengig() ? schritte.get(position - 1).name : null;
+    }
+
+    /**
+     * @return Bezeichnung des Schrittes, der als nächstes wiederholt würde,
+     * oder null
+     */
+    public String gibWiederholenName() {
+        return kannWiederholen() ? schritte.get(position).name : null;
+    }
+
+    /**
+     * Liefert eine Kennung des aktuellen Standes. Zwei gleiche Kennungen
+     * bedeuten denselben Bildinhalt, z. B. um zu prüfen, ob seit dem letzten
+     * Speichern etwas geändert wurde.
+     *
+     * @return die Kennung
+     */
+    public int gibStand() {
+        return position == 0 ? basis : schritte.get(position - 1).kennung;
+    }
+
+    /**
+     * Macht den letzten Schritt am Bild rückgängig.
+     *
+     * @param bild das Bild, dessen Verlauf dies ist
+     * @return wahr, wenn ein Schritt rückgängig gemacht wurde
+     */
+    public boolean rueckgaengig(Farbbild bild) {
+        if (!kannRueckgaengig()) {
+            return false;
+        }
+        position--;
+        umkehren(bild, schritte.get(position));
+        return true;
+    }
+
+    /**
+     * Wiederholt den zuletzt rückgängig gemachten Schritt am Bild.
+     *
+     * @param bild das Bild, dessen Verlauf dies ist
+     * @return wahr, wenn ein Schritt wiederholt wurde
+     */
+    public boolean wiederholen(Farbbild bild) {
+        if (!kannWiederholen()) {
+            return false;
+        }
+        umkehren(bild, schritte.get(position));
+        position++;
+        return true;
+    }
+
+    /**
+     * wendet die Differenzen eines Schrittes auf Bild und Vergleichskopie an,
+     * parallel je Kachel
+     */
+    private void umkehren(final Farbbild bild, Schritt schritt) {
+        final int kachelspalten = (breite + KACHEL - 1) / KACHEL;
+        final Kacheldelta[] raster
+                = new Kacheldelta[kachelspalten * ((hoehe + KACHEL - 1) / KACHEL)];
+        for (Kacheldelta d : schritt.deltas) {
+            raster[(d.y / KACHEL) * kachelspalten + d.x / KACHEL] = d;
+        }
+        Kachelausfuehrer.ausfuehren(breite, hoehe, Parallelitaet.KACHEL,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                for (int ky = aufrunden(y); ky < y + h; ky += KACHEL) {
+                    for (int kx = aufrunden(x); kx < x + b; kx += KACHEL) {
+                        Kacheldelta d = raster[(ky / KACHEL) * kachelspalten + kx / KACHEL];
+                        if (d != null) {
+                            anwenden(bild, d);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * überlagert Vergleichskopie und Bild mit der Differenz einer Kachel
+     */
+    private void anwenden(Farbbild bild, Kacheldelta d) {
+        int[] werte = entpacken(d.daten, d.breite * d.hoehe);
+        int[] alt = new int[werte.length];
+        stand.leseBereich(d.x, d.y, d.breite, d.hoehe, alt, 0, d.breite);
+        for (int i = 0; i < werte.length; i++) {
+            werte[i] ^= alt[i];
+        }
+        bild.schreibeBereich(d.x, d.y, d.breite, d.hoehe, werte, 0, d.breite);
+        uebernehmen(bild, d.x, d.y, d.breite, d.hoehe, werte);
+    }
+
+    /**
+     * verwirft die ältesten Schritte, bis das Budget eingehalten ist
+     */
+    private void kuerzen() {
+        int verworfen = 0;
+        while (belegt > budget && verworfen < schritte.size()) {
+            if (verworfen == position) {
+                // nur noch wiederholbare Schritte übrig, diese zuerst verwerfen
+                Schritt letzter = schritte.remove(schritte.size() - 1);
+                belegt -= letzter.groesse;
+                continue;
+            }
+            Schritt s = schritte.get(verworfen);
+            belegt -= s.groesse;
+            basis = s.kennung;
+            verworfen++;
+        }
+        if (verworfen > 0) {
+            schritte.subList(0, verworfen).clear();
+            position -= verworfen;
+        }
+    }
+
+    private static byte[] komprimieren(int[] werte) {
+        byte[] roh = new byte[werte.length * 4];
+        // Bytes nach Kanälen getrennt ablegen, damit gleiche Kanäle
+        // nebeneinander liegen und sich besser komprimieren lassen
+        int n = werte.length;
+        for (int i = 0; i < n; i++) {
+            int w = werte[i];
+            roh[i] = (byte) (w >>> 24);
+            roh[n + i] = (byte) (w >>> 16);
+            roh[2 * n + i] = (byte) (w >>> 8);
+            roh[3 * n + i] = (byte) w;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(roh);
+            deflater.finish();
+            byte[] puffer = new byte[roh.length / 8 + 64];
+            int laenge = 0;
+            while (!deflater.finished()) {
+                if (laenge == puffer.length) {
+                    puffer = Arrays.copyOf(puffer, puffer.length * 2);
+                }
+                laenge += deflater.deflate(puffer, laenge, puffer.length - laenge);
+            }
+            return Arrays.copyOf(puffer, laenge);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int[] entpacken(byte[] daten, int n) {
+        byte[] roh = new byte[n * 4];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(daten);
+            int laenge = 0;
+            while (laenge < roh.length && !inflater.finished()) {
+                laenge += inflater.inflate(roh, laenge, roh.length - laenge);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Verlauf beschädigt.", e);
+        } finally {
+            inflater.end();
+        }
+        int[] werte = new int[n];
+        for (int i = 0; i < n; i++) {
+            werte[i] = (roh[i] & 0xff) << 24 | (roh[n + i] & 0xff) << 16
+                    | (roh[2 * n + i] & 0xff) << 8 | (roh[3 * n + i] & 0xff);
+        }
+        return werte;
+    }
+
+    /**
+     * ein Bearbeitungsschritt mit den Differenzen der geänderten Kacheln
+     */
+    private static class Schritt {
+
+        final String name;
+        final int kennung;
+        final Kacheldelta[] deltas;
+        final long groesse;
+
+        Schritt(String name, int kennung, Kacheldelta[] deltas, long groesse) {
+            this.name = name;
+            this.kennung = kennung;
+            this.deltas = deltas;
+            this.groesse = groesse;
+        }
+    }
+
+    /**
+     * komprimierte XOR-Differenz einer Kachel
+     */
+    private static class Kacheldelta {
+
+        final int x;
+        final int y;
+        final int breite;
+        final int hoehe;
+        final byte[] daten;
+
+        Kacheldelta(int x, int y, int breite, int hoehe, byte[] daten) {
+            this.x = x;
+            this.y = y;
+            this.breite = breite;
+            this.hoehe = hoehe;
+            this.daten = daten;
+        }
+    }
+}
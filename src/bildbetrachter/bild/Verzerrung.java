@@ -0,0 +1,142 @@
+package bildbetrachter.bild;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * abstrakte Oberklasse für geometrische Verzerrungen, bei denen jeder
+ * Bildpunkt des Ergebnisses von einer anderen Stelle des Bildes stammt. Die
+ * Unterklassen beschreiben nur, woher ein Bildpunkt kommt. Daraus wird einmal
+ * je Bildgröße und Parametersatz eine Abbildungskarte berechnet und in einem
+ * gemeinsamen, in der Größe begrenzten Zwischenspeicher abgelegt. Wird die
+ * Vorschau mit unveränderten Parametern neu gezeichnet, entfallen so alle
+ * Winkelfunktionen. Wäre die Karte größer als der ganze Zwischenspeicher,
+ * etwa bei ausgelagerten Riesenbildern, wird sie nicht angelegt; die
+ * Koordinaten werden dann beim Anwenden Zeile für Zeile berechnet.
+ */
+public abstract class Verzerrung {
+
+    // Obergrenze für alle zwischengespeicherten Karten zusammen
+    private static final long CACHE_GROESSE = 64L * 1024 * 1024;
+    private static final LinkedHashMap<String, Abbildungskarte> KARTEN
+            = new LinkedHashMap<>(16, 0.75f, true);
+    private static long belegt;
+
+    /**
+     * Liefert einen Schlüssel, der die Geometrie vollständig beschreibt, z. B.
+     * Art und Parameter der Verzerrung. Gleiche Schlüssel müssen bei gleicher
+     * Bildgröße gleiche Karten ergeben.
+     *
+     * @return der Schlüssel
+     */
+    protected abstract String gibSchluessel();
+
+    /**
+     * Bestimmt die Stelle im Quellbild, von der der Bildpunkt (x, y) seine
+     * Farbe erhält.
+     *
+     * @param x x-Koordinate im Ergebnis
+     * @param y y-Koordinate im Ergebnis
+     * @param breite Breite des Bildes
+     * @param hoehe Höhe des Bildes
+     * @param punkt nimmt x und y der Quelle auf
+     * @return falsch, wenn die Quelle außerhalb des Bildes liegt
+     */
+    protected abstract boolean quellpunkt(int x, int y, int breite, int hoehe,
+            double[] punkt);
+
+    /**
+     * Wendet die Verzerrung auf ein Bild an.
+     *
+     * @param bild das zu verändernde Bild
+     */
+    public void anwenden(Farbbild bild) {
+        gibKarte(bild.getWidth(), bild.getHeight()).anwenden(bild);
+    }
+
+    /**
+     * Liefert die Abbildungskarte für die angegebene Bildgröße, aus dem
+     * Zwischenspeicher oder neu berechnet.
+     *
+     * @param breite Breite des Bildes
+     * @param hoehe Höhe des Bildes
+     * @return die Karte
+     */
+    public Abbildungskarte gibKarte(int breite, int hoehe) {
+        String schluessel = getClass().getName() + ':' + gibSchluessel()
+                + ':' + breite + 'x' + hoehe;
+        synchronized (KARTEN) {
+            Abbildungskarte karte = KARTEN.get(schluessel);
+            if (karte != null) {
+                return karte;
+            }
+        }
+        if (8L * breite * hoehe > CACHE_GROESSE) {
+            return new Abbildungskarte(breite, hoehe, this);
+        }
+        Abbildungskarte karte = berechnen(breite, hoehe);
+        synchronized (KARTEN) {
+            if (!KARTEN.containsKey(schluessel) && karte.gibGroesse() <= CACHE_GROESSE) {
+                KARTEN.put(schluessel, karte);
+                belegt += karte.gibGroesse();
+                // am längsten nicht benutzte Karten verdrängen
+                Iterator<Map.Entry<String, Abbildungskarte>> it = KARTEN.entrySet().iterator();
+                while (belegt > CACHE_GROESSE && it.hasNext()) {
+                    belegt -= it.next().getValue().gibGroesse();
+                    it.remove();
+                }
+            }
+        }
+        return karte;
+    }
+
+    /**
+     * berechnet die Karte parallel in Streifen ganzer Zeilen
+     */
+    private Abbildungskarte berechnen(final int breite, final int hoehe) {
+        final int[] koordinaten = new int[2 * breite * hoehe];
+        Kachelausfuehrer.ausfuehren(breite, hoehe, Parallelitaet.ZEILE,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                double[] punkt = new double[2];
+                for (int j = y; j < y + h; j++) {
+                    // Streifen bestehen aus ganzen Zeilen
+                    zeileBerechnen(j, x, b, breite, hoehe, koordinaten,
+                            2 * (j * breite + x), punkt);
+                }
+            }
+        });
+        return new Abbildungskarte(breite, hoehe, koordinaten);
+    }
+
+    /**
+     * berechnet die Festkommakoordinaten der Bildpunkte x bis x + b - 1 der
+     * Zeile j als Paare ab dem angegebenen Index des Ziels
+     */
+    void zeileBerechnen(int j, int x, int b, int breite, int hoehe, int[] ziel,
+            int basis, double[] punkt) {
+        for (int i = x; i < x + b; i++) {
+            int k = basis + 2 * (i - x);
+            if (quellpunkt(i, j, breite, hoehe, punkt)
+                    && punkt[0] > -0.5 && punkt[0] < breite - 0.5
+                    && punkt[1] > -0.5 && punkt[1] < hoehe - 0.5) {
+                ziel[k] = festkomma(punkt[0], breite);
+                ziel[k + 1] = festkomma(punkt[1], hoehe);
+            } else {
+                ziel[k] = Abbildungskarte.AUSSERHALB;
+                ziel[k + 1] = Abbildungskarte.AUSSERHALB;
+            }
+        }
+    }
+
+    /**
+     * wandelt eine Koordinate in eine Festkommazahl mit 8 Nachkommabits,
+     * begrenzt auf den gültigen Bereich
+     */
+    private static int festkomma(double wert, int groesse) {
+        double begrenzt = Math.max(0, Math.min(groesse - 1, wert));
+        return (int) Math.round(begrenzt * 256);
+    }
+}
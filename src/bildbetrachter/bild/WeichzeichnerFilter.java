@@ -0,0 +1,194 @@
+package bildbetrachter.bild;
+
+import bildbetrachter.gui.Parameter;
+import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.Hashtable;
+import javax.swing.JLabel;
+import javax.swing.KeyStroke;
+
+/**
+ * Zeichnet das Bild mit einem Gaußfilter weich. Der eingestellte Wert ist der
+ * Radius in Bildpunkten. Große Radien werden durch drei Boxfilter über das
+ * Integralbild angenähert, deren Kosten nicht vom Radius abhängen. Bei
+ * ausgelagerten Bildern, für die ein Integralbild mit 16 Byte je Bildpunkt
+ * den Heap sprengen würde, laufen die Boxfilter stattdessen als gleitende
+ * Summen über Zeilen und Spaltenstreifen.
+ */
+public class WeichzeichnerFilter extends Filter {
+
+    // ab diesem Radius wird der Gaußkern durch Boxfilter angenähert
+    private static final int BOX_AB_RADIUS = 8;
+
+    public WeichzeichnerFilter(String name) {
+        super(name);
+        final int SHORTCUT_MASK = gibKuerzelmaske();
+        setKey(KeyStroke.getKeyStroke(KeyEvent.VK_B, SHORTCUT_MASK));
+    }
+
+    @Override
+    public void anwenden(final Farbbild kopie) {
+        int standard = 3;
+        int min = 1;
+        int max = 100;
+        String labelText = "Stellen Sie die gewünschte Stärke ein.";
+        int majorTickSpacing = 25;
+        int minorTickSpacing = 5;
+        Hashtable labelTabelle = new Hashtable();
+        int[] werte = {1, 25, 50, 75, 100};
+        for (int i = 0; i < werte.length; i++) {
+            labelTabelle.put(werte[i], new JLabel(("" + werte[i])));
+        }
+        Parameter parameter = new Parameter(standard, labelText, min, max,
+                majorTickSpacing, minorTickSpacing, labelTabelle, kopie, this);
+        parameter.setSnapToTicks(false);
+        parameter.addPropertyChangeListener(new PropertyChangeListener() {
+            //OK wurde geklickt
+
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                ausfuehren(kopie, (Integer) event.getNewValue());
+                anzeigeAktualisieren();
+            }
+        });
+    }
+
+    @Override
+    public void ausfuehren(Farbbild bild, int value) {
+        if (value < 1) {
+            return;
+        }
+        // der Radius deckt drei Standardabweichungen ab
+        double sigma = value / 3.0;
+        if (value < BOX_AB_RADIUS) {
+            Faltungskern kern = Faltungskern.gauss(value, sigma);
+            new Faltung(bild, Randmodus.ERWEITERN).anwenden(bild, kern);
+        } else {
+            // drei Boxfilter gleicher Varianz ergeben nahezu eine Gaußglocke
+            int box = (int) Math.round((Math.sqrt(4 * sigma * sigma + 1) - 1) / 2);
+            if (bild.istAusgelagert()) {
+                for (int i = 0; i < 3; i++) {
+                    boxZeilen(bild, box);
+                    boxSpalten(bild, box);
+                }
+                return;
+            }
+            Integralbild integral = bild.gibIntegralbild();
+            for (int i = 0; i < 3; i++) {
+                if (i > 0) {
+                    integral.berechnen(bild);
+                }
+                integral.boxfilter(bild, box);
+            }
+        }
+    }
+
+    /**
+     * waagerechter Boxfilter mit dem Radius r über ganze Zeilen; am Rand wird
+     * nur über den Teil im Bild gemittelt
+     */
+    private static void boxZeilen(final Farbbild bild, final int r) {
+        final int breite = bild.getWidth();
+        Kachelausfuehrer.ausfuehren(breite, bild.getHeight(), Parallelitaet.ZEILE,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                int[] zeile = new int[breite];
+                int[] ergebnis = new int[breite];
+                int[] summen = new int[4];
+                for (int j = y; j < y + h; j++) {
+                    bild.leseZeile(j, zeile);
+                    Arrays.fill(summen, 0);
+                    for (int i = 0; i < Math.min(r, breite); i++) {
+                        addieren(summen, zeile[i], 1);
+                    }
+                    for (int i = 0; i < breite; i++) {
+                        if (i + r < breite) {
+                            addieren(summen, zeile[i + r], 1);
+                        }
+                        if (i - r - 1 >= 0) {
+                            addieren(summen, zeile[i - r - 1], -1);
+                        }
+                        ergebnis[i] = mitteln(summen,
+                                Math.min(breite - 1, i + r) - Math.max(0, i - r) + 1);
+                    }
+                    bild.schreibeZeile(j, ergebnis);
+                }
+            }
+        });
+    }
+
+    /**
+     * senkrechter Boxfilter mit dem Radius r über Spaltenstreifen. Jede Zeile
+     * wird einmal in einen Ring aus 2 * r + 2 Zeilen gelesen, bevor sie
+     * überschrieben wird; so braucht der Streifen keine Kopie in voller Höhe.
+     */
+    private static void boxSpalten(final Farbbild bild, final int r) {
+        final int hoehe = bild.getHeight();
+        Kachelausfuehrer.ausfuehrenSpalten(bild.getWidth(), hoehe,
+                new Bereichsoperation() {
+            @Override
+            public void bearbeiten(int x, int y, int b, int h) {
+                int zeilen = 2 * r + 2;
+                int[] ring = new int[zeilen * b];
+                int[] summen = new int[4 * b];
+                int[] ergebnis = new int[b];
+                int gelesen = 0;
+                for (int j = 0; j < hoehe; j++) {
+                    for (; gelesen <= Math.min(hoehe - 1, j + r); gelesen++) {
+                        int basis = (gelesen % zeilen) * b;
+                        bild.leseBereich(x, gelesen, b, 1, ring, basis, b);
+                        for (int i = 0; i < b; i++) {
+                            addieren(summen, 4 * i, ring[basis + i], 1);
+                        }
+                    }
+                    if (j - r - 1 >= 0) {
+                        int basis = ((j - r - 1) % zeilen) * b;
+                        for (int i = 0; i < b; i++) {
+                            addieren(summen, 4 * i, ring[basis + i], -1);
+                        }
+                    }
+                    int anzahl = Math.min(hoehe - 1, j + r) - Math.max(0, j - r) + 1;
+                    for (int i = 0; i < b; i++) {
+                        ergebnis[i] = mitteln(summen, 4 * i, anzahl);
+                    }
+                    bild.schreibeBereich(x, j, b, 1, ergebnis, 0, b);
+                }
+            }
+        });
+    }
+
+    private static void addieren(int[] summen, int argb, int vorzeichen) {
+        addieren(summen, 0, argb, vorzeichen);
+    }
+
+    private static void addieren(int[] summen, int k, int argb, int vorzeichen) {
+        summen[k] += vorzeichen * (argb >>> 24);
+        summen[k + 1] += vorzeichen * ((argb >> 16) & 0xff);
+        summen[k + 2] += vorzeichen * ((argb >> 8) & 0xff);
+        summen[k + 3] += vorzeichen * (argb & 0xff);
+    }
+
+    private static int mitteln(int[] summen, int anzahl) {
+        return mitteln(summen, 0, anzahl);
+    }
+
+    /**
+     * @return die gerundeten Mittelwerte der vier Kanalsummen ab Index k als
+     * gepackter ARGB-Wert
+     */
+    private static int mitteln(int[] summen, int k, int anzahl) {
+        int argb = 0;
+        for (int c = 0; c < 4; c++) {
+            argb |= ((summen[k + c] + anzahl / 2) / anzahl) << (24 - 8 * c);
+        }
+        return argb;
+    }
+
+    @Override
+    public Parallelitaet gibParallelitaet() {
+        return Parallelitaet.KACHEL;
+    }
+}
@@ -7,9 +7,16 @@ import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
 import javax.swing.*;
 import javax.swing.border.EtchedBorder;
 
@@ -29,8 +36,10 @@ public class Bildbetrachter {
     private JLabel statusLabel;
     private Farbbild bild;
     private int lastSavedIndex;
+    private Verlauf verlauf;
     private JMenuItem menuItemSpeichern;
     private JMenuItem menuItemSchliessen;
+    private JMenuItem menuItemRueckgaengig, menuItemWiederholen;
     private JMenu filterMenu, bearbeitenMenu;
     private JPopupMenu popupMenu;
     private JButton speichernButton, rueckgaengigButton, vorwaertsButton;
@@ -39,9 +48,32 @@ public class Bildbetrachter {
     private JButton vorheriges;
     private JButton nachfolgendes;
     private ArrayList<Filter> filterListe;
+    // Filter, die seit dem Öffnen auf das Bild angewendet wurden, samt den
+    // rückgängig gemachten; davon gelten die ersten bearbeitungsstand
+    private Filterkette bearbeitung = new Filterkette("Bearbeitung");
+    private int bearbeitungsstand;
+    // Bearbeitung des vorigen Bildes, die auf das aktuelle übertragen werden
+    // kann, oder null
+    private Filterkette letzteBearbeitung;
+    private JMenuItem menuItemUebertragen;
+    private Diashow diashow;
+    // prüft im Hintergrund die Miniaturen des Diashow-Ordners, oder null
+    private SwingWorker<Void, String> miniaturvorgang;
+    private JLabel miniaturLabel;
+    // Bild, das gerade im Hintergrund geöffnet wird, oder null
+    private SwingWorker<Farbbild, Integer> ladevorgang;
+    private JProgressBar ladefortschritt;
+    private JButton ladenAbbrechen;
+    // Bild, das gerade im Hintergrund gespeichert wird, oder null
+    private Future<Integer> speichervorgang;
+    private Schreibbeobachter speicherbeobachter;
     private Hilfe hilfe;
     private static final int SHORTCUT_MASK = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
     private static final String VERSION = "Version 0.9";
+    // Speicher für den Verlauf in Bytes, einstellbar mit
+    // -Dbildbetrachter.verlauf.budget=<Bytes>
+    private static final long VERLAUF_BUDGET
+            = Long.getLong("bildbetrachter.verlauf.budget", 256L << 20);
 
     /**
      * Main-Methode zum Start
@@ -57,6 +89,7 @@ public class Bildbetrachter {
      */
     private void fensterErzeugen() {
         fenster = new JFrame("Bildbetrachter");
+        verlauf = new Verlauf(VERLAUF_BUDGET);
         menuezeileErzeugen();
         Container contentPane = fenster.getContentPane();
         // DO_NOTHING_ON_CLOSE, da das Terminieren des Programmes und daher
@@ -65,9 +98,12 @@ public class Bildbetrachter {
         // der besseren Lesbarkeit angegeben, BorderLayout ist Standard
         contentPane.setLayout(new BorderLayout());
 
+        JPanel north = new JPanel(new BorderLayout());
+        north.add(werkzeugleisteErzeugen(), BorderLayout.NORTH);
         dateinameLabel = new JLabel();
         dateinameAnzeigen(null);
-        contentPane.add(dateinameLabel, BorderLayout.NORTH);
+        north.add(dateinameLabel, BorderLayout.SOUTH);
+        contentPane.add(north, BorderLayout.NORTH);
         bildflaeche = new Bildflaeche();
         bildflaeche.setBorder(new EtchedBorder());
         scrollPane = new JScrollPane();
@@ -77,8 +113,35 @@ public class Bildbetrachter {
         south.setLayout(new BoxLayout(south, BoxLayout.Y_AXIS));
         statusLabel = new JLabel("kein Bild geladen");
         south.add(statusLabel);
+        miniaturLabel = new JLabel();
+        miniaturLabel.setVisible(false);
+        south.add(miniaturLabel);
+        JPanel laden = new JPanel(new BorderLayout());
+        laden.setAlignmentX(Component.LEFT_ALIGNMENT);
+        ladefortschritt = new JProgressBar(0, 100);
+        laden.add(ladefortschritt, BorderLayout.CENTER);
+        ladenAbbrechen = new JButton("Abbrechen");
+        ladenAbbrechen.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                ladenAbbrechen();
+                speichernAbbrechen();
+            }
+        });
+        laden.add(ladenAbbrechen, BorderLayout.EAST);
+        laden.setVisible(false);
+        south.add(laden);
+        // Escape bricht das Öffnen und Speichern ebenfalls ab
+        fenster.getRootPane().registerKeyboardAction(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                ladenAbbrechen();
+                speichernAbbrechen();
+            }
+        }, KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
         contentPane.add(south, BorderLayout.SOUTH);
         buttonsSchalten(false);
+        diashowBeenden();
 
         // Aufbau abgeschlossen - Komponenten arrangieren lassen
         fenster.pack();
@@ -104,6 +167,43 @@ public class Bildbetrachter {
         fenster.setVisible(true);
     }
 
+    /**
+     * Erzeugt die Werkzeugleiste mit Speichern, Rückgängig und Wiederholen.
+     *
+     * @return die Werkzeugleiste
+     */
+    private JToolBar werkzeugleisteErzeugen() {
+        JToolBar werkzeugleiste = new JToolBar();
+        werkzeugleiste.setFloatable(false);
+        speichernButton = MenuHelper.createButton("/bildbetrachter/images/save.png", werkzeugleiste, "Speichern", new Runnable() {
+            public void run() {
+                dateiSpeichern();
+            }
+        });
+        rueckgaengigButton = MenuHelper.createButton("/bildbetrachter/images/undo.png", werkzeugleiste, "Rückgängig", new Runnable() {
+            public void run() {
+                rueckgaengig();
+            }
+        });
+        vorwaertsButton = MenuHelper.createButton("/bildbetrachter/images/redo.png", werkzeugleiste, "Wiederholen", new Runnable() {
+            public void run() {
+                wiederholen();
+            }
+        });
+        werkzeugleiste.addSeparator();
+        vorheriges = MenuHelper.createButton("/bildbetrachter/images/Pfeil_links.png", werkzeugleiste, "Voriges Bild der Diashow", new Runnable() {
+            public void run() {
+                diashowZeigen(-1);
+            }
+        });
+        nachfolgendes = MenuHelper.createButton("/bildbetrachter/images/Pfeil_rechts.png", werkzeugleiste, "Nächstes Bild der Diashow", new Runnable() {
+            public void run() {
+                diashowZeigen(1);
+            }
+        });
+        return werkzeugleiste;
+    }
+
     /**
      * befüllt die Liste, mit allen implementierten Filtern.
      */
@@ -111,16 +211,16 @@ public class Bildbetrachter {
         filterListe = new ArrayList<>();
         filterListe.add(new RGBFilter("Farbfilter"));
         filterListe.add(new HelligkeitsFilter("Helligkeit"));
-//        filterListe.add(new FischaugenFilter("Fischaugenfilter"));
-//        filterListe.add(new Graustufenfilter("Graustufenfilter"));
-//        filterListe.add(new GrobrasterFilter("Grobraster"));
-//        filterListe.add(new KantenerkennungsFilter("Kanten"));
-//        filterListe.add(new NegativFilter("Negativfilter"));
-//        filterListe.add(new PuzzleFilter("Puzzlefilter"));
-//        filterListe.add(new SchwellenwertFilter("Schwellenwert"));
-//        filterListe.add(new Spiegelfilter("Spiegelfilter"));
-//        filterListe.add(new SolarisationsFilter("Solarisationsfilter"));
-//        filterListe.add(new WeichzeichnerFilter("Weichzeichner"));
+        filterListe.add(new FischaugenFilter("Fischaugenfilter"));
+        filterListe.add(new Graustufenfilter("Graustufenfilter"));
+        filterListe.add(new GrobrasterFilter("Grobraster"));
+        filterListe.add(new KantenerkennungsFilter("Kanten"));
+        filterListe.add(new NegativFilter("Negativfilter"));
+        filterListe.add(new PuzzleFilter("Puzzlefilter"));
+        filterListe.add(new SchwellenwertFilter("Schwellenwert"));
+        filterListe.add(new Spiegelfilter("Spiegelfilter"));
+        filterListe.add(new SolarisationsFilter("Solarisationsfilter"));
+        filterListe.add(new WeichzeichnerFilter("Weichzeichner"));
     }
 
     /**
@@ -141,6 +241,12 @@ public class Bildbetrachter {
                 verlaufSchalten();
             }
         });
+        MenuHelper.createMenuItem("Diashow...", null, dateiMenu, new Runnable() {
+            public void run() {
+                diashowStarten();
+                verlaufSchalten();
+            }
+        });
         menuItemSpeichern = MenuHelper.createMenuItem("Speichern", KeyStroke.getKeyStroke(KeyEvent.VK_S, SHORTCUT_MASK), dateiMenu, new Runnable() {
             public void run() {
                 dateiSpeichern();
@@ -163,9 +269,20 @@ public class Bildbetrachter {
         //Das Bearbeiten-Menü
         bearbeitenMenu = new JMenu("Bearbeiten");
         menuezeile.add(bearbeitenMenu);
+        menuItemRueckgaengig = MenuHelper.createMenuItem("Rückgängig", KeyStroke.getKeyStroke(KeyEvent.VK_Z, SHORTCUT_MASK), bearbeitenMenu, new Runnable() {
+            public void run() {
+                rueckgaengig();
+            }
+        });
+        menuItemWiederholen = MenuHelper.createMenuItem("Wiederholen", KeyStroke.getKeyStroke(KeyEvent.VK_Y, SHORTCUT_MASK), bearbeitenMenu, new Runnable() {
+            public void run() {
+                wiederholen();
+            }
+        });
+        bearbeitenMenu.addSeparator();
         MenuHelper.createMenuItem("Zoom", null, bearbeitenMenu, new Runnable() {
             public void run() {
-//                zoomen();
+                zoomen();
             }
         });
 
@@ -175,29 +292,43 @@ public class Bildbetrachter {
         menuezeile.add(filterMenu);
         JMenuItem item;
         for (final Filter f : filterListe) {
+            // einmal je Filter anmelden, sonst würde jede Anwendung mehrfach
+            // gemeldet und aufgezeichnet
+            f.addPropertyChangeListener(new PropertyChangeListener() {
+
+                @Override
+                public void propertyChange(PropertyChangeEvent evt) {
+                    filterAngewendet(f, f.gibWert());
+                }
+            });
             item = new JMenuItem(f.getName());
             item.setAccelerator(f.getKey());
             item.addActionListener(new ActionListener() {
 
                 @Override
                 public void actionPerformed(ActionEvent e) {
-                    f.addPropertyChangeListener(new PropertyChangeListener() {
-
+                    Runnable anwenden = new Runnable() {
                         @Override
-                        public void propertyChange(PropertyChangeEvent evt) {
-                            statusAnzeigen(f.getName() + " angewendet.");
-                            bildflaeche.setzeBild(bild);
+                        public void run() {
+                            f.anwenden(bild);
                             verlaufSchalten();
-
+                            //System.out.println("Bild Filter hinzugefügt");
                         }
-                    });
-                    f.anwenden(bild);
-                    verlaufSchalten();
-                    //System.out.println("Bild Filter hinzugefügt");
+                    };
+                    if (vollAufloesen(anwenden)) {
+                        anwenden.run();
+                    }
                 }
             });
             filterMenu.add(item);
         }
+        filterMenu.addSeparator();
+        menuItemUebertragen = MenuHelper.createMenuItem("Letzte Bearbeitung übertragen", null, filterMenu, new Runnable() {
+            public void run() {
+                bearbeitungUebertragen();
+            }
+        });
+        menuItemUebertragen.setEnabled(false);
 
         // Das Hilfe-Menü
         JMenu hilfeMenu = new JMenu("Hilfe");
@@ -223,11 +354,9 @@ public class Bildbetrachter {
      */
     private void fenstergroesseAnpassen() {
         fenster.pack();
-        // Bildschirmabmessungen holen
-        Toolkit kit = Toolkit.getDefaultToolkit();
-        Dimension screenSize = kit.getScreenSize();
-        int bildschirmBreite = screenSize.width;
-        int bildschirmHoehe = screenSize.height - 34; // Windows-Taskleiste
+        Dimension anzeige = anzeigegroesse();
+        int bildschirmBreite = anzeige.width;
+        int bildschirmHoehe = anzeige.height;
 
         if ((fenster.getWidth() > bildschirmBreite)
                 || (fenster.getHeight() > bildschirmHoehe)) {
@@ -236,39 +365,384 @@ public class Bildbetrachter {
         fenster.repaint();
     }
 
+    /**
+     * @return die nutzbare Bildschirmgröße, ohne die Windows-Taskleiste (Höhe
+     * 34 px)
+     */
+    private Dimension anzeigegroesse() {
+        Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
+        return new Dimension(screenSize.width, screenSize.height - 34);
+    }
+
     /**
      * 'Datei oeffnen'-Funktion: Öffnet einen Dateiauswahldialog zur Auswahl
-     * einer Bilddatei und zeigt das selektierte Bild an.
+     * einer Bilddatei und zeigt das selektierte Bild an. Große Bilder werden
+     * zunächst nur in Bildschirmgröße dekodiert; die volle Auflösung wird
+     * erst beim Zoomen, Bearbeiten oder Speichern geladen.
+     *
+     * Das Bild wird im Hintergrund geladen, die Oberfläche bleibt bedienbar.
+     * Der Fortschritt erscheint unter der Statuszeile, wo das Laden auch
+     * abgebrochen werden kann; das bisherige Bild bleibt bis zum Ende
+     * angezeigt.
      */
     private void dateiOeffnen() {
-        Farbbild tempBild = BilddateiManager.gibBild(fenster);
+        final File datei = BilddateiManager.waehleBilddatei(fenster);
+        if (datei == null) {
+            statusAnzeigen("Öffnen abgebrochen.");
+            return;
+        }
+        ladenAbbrechen();
+        final Dimension anzeige = anzeigegroesse();
+        ladevorgang = new SwingWorker<Farbbild, Integer>() {
+            @Override
+            protected Farbbild doInBackground() {
+                final SwingWorker<Farbbild, Integer> vorgang = this;
+                Lesebeobachter beobachter = new Lesebeobachter() {
+                    @Override
+                    public void imageProgress(ImageReader source, float prozent) {
+                        if (isCancelled()) {
+                            source.abort();
+                        } else {
+                            publish((int) prozent);
+                        }
+                    }
+
+                    @Override
+                    public void passStarted(ImageReader source, BufferedImage theImage,
+                            int pass, int minPass, int maxPass, int minX, int minY,
+                            int periodX, int periodY, int[] bands) {
+                        bildflaeche.teilbildAktualisieren(vorgang, theImage, new Rectangle());
+                    }
+
+                    @Override
+                    public void imageUpdate(ImageReader source, BufferedImage theImage,
+                            int minX, int minY, int width, int height, int periodX,
+                            int periodY, int[] bands) {
+                        // bei Zeilensprung steht eine Zeile für periodY Zeilen
+                        bildflaeche.teilbildAktualisieren(vorgang, theImage, new Rectangle(
+                                minX, minY, (width - 1) * periodX + 1, height * periodY));
+                    }
+                };
+                return BilddateiManager.laden(datei, anzeige, beobachter, beobachter);
+            }
+
+            @Override
+            protected void process(List<Integer> prozente) {
+                if (ladevorgang == this) {
+                    ladefortschritt.setValue(prozente.get(prozente.size() - 1));
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (ladevorgang != this) {
+                    // durch ein neueres Öffnen ersetzt
+                    return;
+                }
+                ladevorgang = null;
+                fortschrittAusblenden();
+                geladen(this);
+            }
+        };
+        bildflaeche.teilbildZulassen(ladevorgang);
+        ladefortschritt.setValue(0);
+        ladefortschritt.getParent().setVisible(true);
+        statusAnzeigen("Lade " + datei.getName() + " ...");
+        ladevorgang.execute();
+    }
+
+    /**
+     * zeigt das Ergebnis eines abgeschlossenen Ladevorgangs an
+     */
+    private void geladen(SwingWorker<Farbbild, Integer> vorgang) {
+        Farbbild tempBild = null;
+        if (!vorgang.isCancelled()) {
+            try {
+                tempBild = vorgang.get();
+            } catch (InterruptedException | ExecutionException e) {
+                // wie eine nicht lesbare Datei behandeln
+            }
+        }
         if (tempBild != null) {
-            bild = tempBild;
-            bildflaeche.setzeBild(bild);
-            fenstergroesseAnpassen();
-            buttonsSchalten(true);
-            fenstergroesseAnpassen();
-            dateinameAnzeigen(bild.getDateiname());
-            statusAnzeigen("Datei geladen.");
-            verlaufSchalten();
-            lastSavedIndex = 0;
+            diashowBeenden();
+            bildUebernehmen(tempBild);
+            statusAnzeigen(bild.istVorschau()
+                    ? "Vorschau geladen (1:" + bild.gibUnterabtastung()
+                    + "), volle Auflösung mit Zoom oder beim Bearbeiten."
+                    : "Datei geladen.");
         } else {
-            if (bild != null) {
-                dateinameAnzeigen(bild.getDateiname());
+            bisherigesAnzeigen();
+            statusAnzeigen(vorgang.isCancelled() ? "Öffnen abgebrochen."
+                    : "Öffnen gescheitert.");
+        }
+    }
+
+    /**
+     * bricht das Öffnen einer Datei im Hintergrund ab
+     */
+    private void ladenAbbrechen() {
+        if (ladevorgang != null) {
+            SwingWorker<Farbbild, Integer> vorgang = ladevorgang;
+            ladevorgang = null;
+            vorgang.cancel(false);
+            fortschrittAusblenden();
+            bisherigesAnzeigen();
+            statusAnzeigen("Öffnen abgebrochen.");
+        }
+    }
+
+    /**
+     * zeigt nach einem abgebrochenen oder gescheiterten Öffnen wieder das
+     * bisherige Bild an
+     */
+    private void bisherigesAnzeigen() {
+        bildflaeche.teilbildVerwerfen();
+        if (bild != null) {
+            dateinameAnzeigen(bild.getDateiname());
+        }
+    }
+
+    /**
+     * zeigt ein neu geladenes Bild an und beginnt seinen Verlauf
+     */
+    private void bildUebernehmen(Farbbild neu) {
+        kachelquelleSchliessen();
+        bild = neu;
+        bildflaeche.setzeBild(bild);
+        fenstergroesseAnpassen();
+        buttonsSchalten(true);
+        fenstergroesseAnpassen();
+        dateinameAnzeigen(bild.getDateiname());
+        bearbeitungAbschliessen();
+        verlauf.beginnen(bild);
+        lastSavedIndex = verlauf.gibStand();
+        verlaufSchalten();
+    }
+
+    /**
+     * 'Diashow'-Funktion: Lässt einen Ordner auswählen und zeigt dessen
+     * Bilder nacheinander an. Die benachbarten Bilder werden im Hintergrund
+     * geladen.
+     */
+    private void diashowStarten() {
+        if (!saveCloseDialog(new Runnable() {
+            @Override
+            public void run() {
+                diashowStarten();
+            }
+        })) {
+            return;
+        }
+        List<String> pfade = BilddateiManager.diashowOrdnerWählen(fenster);
+        if (pfade.isEmpty()) {
+            statusAnzeigen("Keine Bilder für die Diashow ausgewählt.");
+            return;
+        }
+        ladenAbbrechen();
+        diashowBeenden();
+        miniaturenVorbereiten(pfade);
+        diashow = new Diashow(pfade, anzeigegroesse());
+        diashowZeigen(0);
+    }
+
+    /**
+     * prüft die Miniaturen der Diashow-Bilder im Hintergrund, lässt fehlende
+     * erzeugen und zeigt an, wie viele davon schon fertig sind
+     */
+    private void miniaturenVorbereiten(final List<String> pfade) {
+        miniaturvorgang = new SwingWorker<Void, String>() {
+            @Override
+            protected Void doInBackground() {
+                List<Future<BufferedImage>> auftraege
+                        = Miniaturspeicher.gibStandard().vorbereiten(pfade);
+                int fertig = 0;
+                for (Future<BufferedImage> auftrag : auftraege) {
+                    publish("Miniaturen: " + fertig + " von " + auftraege.size() + " erzeugt");
+                    try {
+                        auftrag.get();
+                    } catch (InterruptedException e) {
+                        return null;
+                    } catch (ExecutionException | CancellationException e) {
+                        // nicht lesbar oder verworfen, zählt trotzdem
+                    }
+                    fertig++;
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(List<String> meldungen) {
+                if (!isCancelled()) {
+                    miniaturLabel.setText(meldungen.get(meldungen.size() - 1));
+                    miniaturLabel.setVisible(true);
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (miniaturvorgang == this) {
+                    miniaturvorgang = null;
+                    miniaturLabel.setVisible(false);
+                }
+            }
+        };
+        miniaturvorgang.execute();
+    }
+
+    /**
+     * zeigt in der Diashow das Bild im gegebenen Abstand zum aktuellen an
+     */
+    private void diashowZeigen(final int schritt) {
+        if (diashow == null || (schritt != 0 && !saveCloseDialog(new Runnable() {
+            @Override
+            public void run() {
+                diashowZeigen(schritt);
+            }
+        }))) {
+            return;
+        }
+        int position = diashow.gibPosition();
+        statusAnzeigen("Diashow: lade Bild ...");
+        diashow.gibBild(position < 0 ? 0 : position + schritt, new Diashow.Empfaenger() {
+            @Override
+            public void empfangen(Farbbild neu, int nummer) {
+                diashowAnzeigen(neu, nummer);
+            }
+        });
+    }
+
+    /**
+     * zeigt ein von der Diashow geliefertes Bild an
+     */
+    private void diashowAnzeigen(Farbbild neu, int position) {
+        String nummer = (position + 1) + " von " + diashow.gibAnzahl();
+        if (neu == null) {
+            statusAnzeigen("Diashow: Bild " + nummer + " ist nicht lesbar.");
+            return;
+        }
+        bildUebernehmen(neu);
+        statusAnzeigen("Diashow: Bild " + nummer + ".");
+        vorheriges.setEnabled(true);
+        nachfolgendes.setEnabled(true);
+    }
+
+    /**
+     * beendet eine laufende Diashow, gibt ihre Bilder frei und verwirft die
+     * noch ausstehenden Miniaturen ihres Ordners, damit sie nicht mit dem
+     * Laden anderer Bilder um die Festplatte konkurrieren
+     */
+    private void diashowBeenden() {
+        if (diashow != null) {
+            diashow.beenden();
+            diashow = null;
+            if (miniaturvorgang != null) {
+                // unterbricht auch das Prüfen des Ordners
+                miniaturvorgang.cancel(true);
+                miniaturvorgang = null;
+                miniaturLabel.setVisible(false);
             }
-            statusAnzeigen("Öffnen abgebrochen oder gescheitert.");
+            Miniaturspeicher.gibStandard().abbrechen();
         }
+        vorheriges.setEnabled(false);
+        nachfolgendes.setEnabled(false);
     }
 
     /**
      * 'Datei speichern'-Funktion
      */
-    private int dateiSpeichern() {
-        int retval = BilddateiManager.speichereBild(bild, fenster);
-        switch (retval) {
+    private void dateiSpeichern() {
+        dateiSpeichern(null);
+    }
+
+    /**
+     * 'Datei speichern'-Funktion: Das Bild wird im Hintergrund gespeichert,
+     * die Oberfläche bleibt bedienbar. Der Fortschritt erscheint unter der
+     * Statuszeile, wo das Speichern auch abgebrochen werden kann. Gespeichert
+     * wird eine Kopie, das Bild darf währenddessen weiter bearbeitet werden.
+     *
+     * @param danach wird nach erfolgreichem Speichern ausgeführt, kann null
+     * sein
+     */
+    private void dateiSpeichern(final Runnable danach) {
+        if (!vollAufloesen(new Runnable() {
+            @Override
+            public void run() {
+                dateiSpeichern(danach);
+            }
+        })) {
+            return;
+        }
+        final File datei = BilddateiManager.waehleSpeicherziel(bild, fenster);
+        if (datei == null) {
+            statusAnzeigen("Speichern abgebrochen.");
+            return;
+        }
+        speichernAbbrechen();
+        final Farbbild gespeichert = bild;
+        final int stand = verlauf.gibStand();
+        Schreibbeobachter beobachter = new Schreibbeobachter() {
+            private int prozent = -1;
+
+            @Override
+            public void imageProgress(ImageWriter source, float percentageDone) {
+                // höchstens einmal je Prozent an die Oberfläche melden
+                final int neu = (int) percentageDone;
+                if (neu != prozent) {
+                    prozent = neu;
+                    final Schreibbeobachter beobachter = this;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (speicherbeobachter == beobachter) {
+                                ladefortschritt.setValue(neu);
+                            }
+                        }
+                    });
+                }
+            }
+
+            @Override
+            void beendet(final int ergebnis) {
+                final Schreibbeobachter beobachter = this;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (speicherbeobachter != beobachter) {
+                            // abgebrochen oder durch ein neueres Speichern ersetzt
+                            return;
+                        }
+                        speichervorgang = null;
+                        speicherbeobachter = null;
+                        fortschrittAusblenden();
+                        gespeichert(ergebnis, datei, gespeichert, stand, danach);
+                    }
+                });
+            }
+        };
+        speicherbeobachter = beobachter;
+        speichervorgang = Speicherdienst.gibStandard().speichern((Farbbild) bild.clone(),
+                datei, BilddateiManager.gibFormat(datei), beobachter);
+        ladefortschritt.setValue(0);
+        ladefortschritt.getParent().setVisible(true);
+        statusAnzeigen("Speichere " + datei.getName() + " ...");
+    }
+
+    /**
+     * zeigt das Ergebnis eines abgeschlossenen Speicherns an
+     */
+    private void gespeichert(int ergebnis, File datei, Farbbild gespeichert, int stand,
+            Runnable danach) {
+        switch (ergebnis) {
             case 0:
-                dateinameAnzeigen(bild.getDateiname());
+                if (bild == gespeichert) {
+                    bild.setDateiname(datei.getPath());
+                    lastSavedIndex = stand;
+                    dateinameAnzeigen(bild.getDateiname());
+                }
                 statusAnzeigen("Datei gespeichert.");
+                if (danach != null) {
+                    danach.run();
+                }
                 break;
             case 1:
                 statusAnzeigen("Speichern abgebrochen.");
@@ -282,7 +756,31 @@ public class Bildbetrachter {
             default:
                 break;
         }
-        return retval;
+    }
+
+    /**
+     * bricht das Speichern im Hintergrund ab; die Zieldatei bleibt
+     * unverändert
+     */
+    private void speichernAbbrechen() {
+        if (speichervorgang != null) {
+            Future<Integer> vorgang = speichervorgang;
+            speichervorgang = null;
+            speicherbeobachter = null;
+            vorgang.cancel(false);
+            fortschrittAusblenden();
+            statusAnzeigen("Speichern abgebrochen.");
+        }
+    }
+
+    /**
+     * blendet die Fortschrittsanzeige aus, wenn weder geladen noch
+     * gespeichert wird
+     */
+    private void fortschrittAusblenden() {
+        if (ladevorgang == null && speichervorgang == null) {
+            ladefortschritt.getParent().setVisible(false);
+        }
     }
 
     /**
@@ -290,10 +788,22 @@ public class Bildbetrachter {
      * gespeichert' schließen-Dialog.
      */
     private boolean dateiSchliessen() {
-        if (!saveCloseDialog()) {
+        if (!saveCloseDialog(new Runnable() {
+            @Override
+            public void run() {
+                if (dateiSchliessen()) {
+                    verlaufSchalten();
+                }
+            }
+        })) {
             return false;
         }
         bild = null;
+        bearbeitungAbschliessen();
+        verlauf.beginnen(null);
+        ladenAbbrechen();
+        diashowBeenden();
+        kachelquelleSchliessen();
         bildflaeche.loeschen();
         dateinameAnzeigen(null);
         statusAnzeigen("Bild geschlossen.");
@@ -303,21 +813,39 @@ public class Bildbetrachter {
     }
 
     /**
-     * Funktion steuert den internen Speichern-Schließen-Dialog.
+     * Funktion steuert den internen Speichern-Schließen-Dialog. Will der
+     * Benutzer speichern, wird im Hintergrund gespeichert und die
+     * unterbrochene Funktion danach erneut aufgerufen.
      *
-     * @return wahr, wenn eine Option erfolgreich durchgeführt wurde, ansonsten
+     * @param danach die unterbrochene Funktion, wird nach erfolgreichem
+     * Speichern ausgeführt
+     * @return wahr, wenn die Funktion sofort fortfahren darf, ansonsten
      * unwahr.
      */
-    private boolean saveCloseDialog() {
-        //TODO
-        return true;
+    private boolean saveCloseDialog(Runnable danach) {
+        if (bild == null || verlauf.gibStand() == lastSavedIndex) {
+            return true;
+        }
+        int antwort = JOptionPane.showConfirmDialog(fenster,
+                "Das Bild wurde geändert. Änderungen speichern?",
+                "Bild schließen", JOptionPane.YES_NO_CANCEL_OPTION);
+        if (antwort == JOptionPane.YES_OPTION) {
+            dateiSpeichern(danach);
+            return false;
+        }
+        return antwort == JOptionPane.NO_OPTION;
     }
 
     /**
      * 'Beenden'-Funktion: Beendet die Anwendung.
      */
     private void beenden() {
-        if (bild == null || (bild != null && saveCloseDialog())) {
+        if (bild == null || (bild != null && saveCloseDialog(new Runnable() {
+            @Override
+            public void run() {
+                beenden();
+            }
+        }))) {
             System.exit(0);
         }
     }
@@ -357,33 +885,262 @@ public class Bildbetrachter {
         bildflaeche.setComponentPopupMenu(status ? popupMenu : null);
     }
 
+    /**
+     * macht den letzten Bearbeitungsschritt rückgängig
+     */
+    private void rueckgaengig() {
+        String name = verlauf.gibRueckgaengigName();
+        if (bild != null && verlauf.rueckgaengig(bild)) {
+            bearbeitungsstand--;
+            bildflaeche.setzeBild(bild);
+            statusAnzeigen(name + " rückgängig gemacht.");
+        }
+        verlaufSchalten();
+    }
+
+    /**
+     * wiederholt den zuletzt rückgängig gemachten Bearbeitungsschritt
+     */
+    private void wiederholen() {
+        String name = verlauf.gibWiederholenName();
+        if (bild != null && verlauf.wiederholen(bild)) {
+            bearbeitungsstand++;
+            bildflaeche.setzeBild(bild);
+            statusAnzeigen(name + " wiederholt.");
+        }
+        verlaufSchalten();
+    }
+
+    /**
+     * zeichnet einen angewendeten Filter im Verlauf und in der Bearbeitung
+     * des Bildes auf und zeigt das Ergebnis an
+     *
+     * @param f der Filter
+     * @param wert der Wert, mit dem er angewendet wurde
+     */
+    private void filterAngewendet(Filter f, int wert) {
+        if (verlauf.aufzeichnen(f.getName(), bild)) {
+            // rückgängig gemachte Filter gelten nicht mehr
+            bearbeitung.kuerzen(bearbeitungsstand);
+            bearbeitung.hinzufuegen(f, wert);
+            bearbeitungsstand++;
+        }
+        statusAnzeigen(f.getName() + " angewendet.");
+        bildflaeche.setzeBild(bild);
+        verlaufSchalten();
+    }
+
+    /**
+     * merkt sich die gültige Bearbeitung des bisherigen Bildes, damit sie auf
+     * das nächste übertragen werden kann, und beginnt eine neue
+     */
+    private void bearbeitungAbschliessen() {
+        if (bearbeitungsstand > 0) {
+            letzteBearbeitung = bearbeitung.anfang("Letzte Bearbeitung", bearbeitungsstand);
+            menuItemUebertragen.setEnabled(true);
+        }
+        bearbeitung = new Filterkette("Bearbeitung");
+        bearbeitungsstand = 0;
+    }
+
+    /**
+     * wendet die Filter der letzten Bearbeitung auf das aktuelle Bild an.
+     * Aufeinanderfolgende Punktfilter laufen dabei in einem einzigen
+     * Durchlauf über das Bild.
+     */
+    private void bearbeitungUebertragen() {
+        final Filterkette kette = letzteBearbeitung;
+        if (bild == null || kette == null) {
+            return;
+        }
+        Runnable uebertragen = new Runnable() {
+            @Override
+            public void run() {
+                kette.ausfuehren(bild, 0);
+                filterAngewendet(kette, 0);
+            }
+        };
+        if (vollAufloesen(uebertragen)) {
+            uebertragen.run();
+        }
+    }
+
     /**
      * schaltet die vorwärts-/rückwärts-Buttons und Einträge
      */
     public void verlaufSchalten() {
-        //TODO
-    }
-
-//    /**
-//     * Vergrößern Funktion
-//     */
-//    private void zoomen() {
-//        Zoom z = new Zoom();
-//        z.anwenden(bild);
-//        z.addPropertyChangeListener(new PropertyChangeListener() {
-//            //reagiere darauf, wenn sich Bild geändert hat
-//
-//            @Override
-//            public void propertyChange(PropertyChangeEvent event) {
-//                bild = (Farbbild) event.getNewValue();
-//                bildflaeche.setzeBild(bild);
-//                verlaufSchalten();
-//                statusAnzeigen("Bild auf " + event.getOldValue() + "% gezoomt.");
-//                bildflaeche.repaint();
-//                fenster.repaint();
-//                fenstergroesseAnpassen();
-//            }
-//        });
-//        verlaufSchalten();
-//    }
+        if (menuItemRueckgaengig == null || verlauf == null) {
+            return;
+        }
+        boolean zurueck = bild != null && verlauf.kannRueckgaengig();
+        boolean vor = bild != null && verlauf.kannWiederholen();
+        menuItemRueckgaengig.setEnabled(zurueck);
+        menuItemWiederholen.setEnabled(vor);
+        menuItemRueckgaengig.setText(zurueck
+                ? "Rückgängig: " + verlauf.gibRueckgaengigName() : "Rückgängig");
+        menuItemWiederholen.setText(vor
+                ? "Wiederholen: " + verlauf.gibWiederholenName() : "Wiederholen");
+        if (rueckgaengigButton != null) {
+            rueckgaengigButton.setEnabled(zurueck);
+            vorwaertsButton.setEnabled(vor);
+            speichernButton.setEnabled(bild != null);
+        }
+    }
+
+    /**
+     * Zoom-Funktion: schaltet bei einem als Vorschau geöffneten Bild zwischen
+     * der Vorschau und der vollen Auflösung um. Die volle Auflösung wird aus
+     * einer Kachelquelle gezeigt, die nur die sichtbaren Ausschnitte liest;
+     * der betrachtete Bildausschnitt bleibt in der Mitte.
+     */
+    private void zoomen() {
+        if (bild == null) {
+            return;
+        }
+        if (!bild.istVorschau()) {
+            statusAnzeigen("Das Bild wird bereits in voller Auflösung angezeigt.");
+            return;
+        }
+        JViewport viewport = scrollPane.getViewport();
+        Rectangle sicht = viewport.getViewRect();
+        double faktor;
+        if (bildflaeche.gibKachelquelle() != null) {
+            kachelquelleSchliessen();
+            bildflaeche.setzeBild(bild);
+            bildflaeche.revalidate();
+            faktor = 1.0 / bild.gibUnterabtastung();
+            statusAnzeigen("Vorschau (1:" + bild.gibUnterabtastung() + ").");
+        } else {
+            Kachelquelle quelle;
+            try {
+                quelle = new Kachelquelle(new File(bild.getDateiname()), new Runnable() {
+                    @Override
+                    public void run() {
+                        bildflaeche.repaint();
+                    }
+                });
+            } catch (IOException e) {
+                Runnable geladen = new Runnable() {
+                    @Override
+                    public void run() {
+                        statusAnzeigen("Bild in voller Auflösung geladen.");
+                    }
+                };
+                if (vollAufloesen(geladen)) {
+                    geladen.run();
+                }
+                return;
+            }
+            bildflaeche.setzeKachelquelle(quelle, bild);
+            faktor = (double) quelle.gibBreite() / bild.getWidth();
+            statusAnzeigen("Volle Auflösung (100 %), Ausschnitte werden bei Bedarf gelesen.");
+        }
+        scrollPane.validate();
+        int mitteX = (int) ((sicht.x + sicht.width / 2) * faktor);
+        int mitteY = (int) ((sicht.y + sicht.height / 2) * faktor);
+        Dimension flaeche = bildflaeche.getPreferredSize();
+        viewport.setViewPosition(new Point(
+                Math.max(0, Math.min(flaeche.width - sicht.width, mitteX - sicht.width / 2)),
+                Math.max(0, Math.min(flaeche.height - sicht.height, mitteY - sicht.height / 2))));
+    }
+
+    /**
+     * beendet das Lesen von Kacheln, falls die volle Auflösung gerade aus
+     * einer Kachelquelle angezeigt wird
+     */
+    private void kachelquelleSchliessen() {
+        Kachelquelle quelle = bildflaeche.gibKachelquelle();
+        if (quelle != null) {
+            quelle.schliessen();
+        }
+    }
+
+    /**
+     * lädt ein als Vorschau geöffnetes Bild in voller Auflösung nach, bevor
+     * es bearbeitet oder gespeichert wird. Wie beim Öffnen geschieht das im
+     * Hintergrund mit Fortschrittsanzeige und kann abgebrochen werden; die
+     * unterbrochene Funktion wird danach erneut aufgerufen.
+     *
+     * @param danach die unterbrochene Funktion, wird ausgeführt, sobald die
+     * volle Auflösung geladen ist
+     * @return wahr, wenn das Bild schon in voller Auflösung vorliegt und die
+     * Funktion sofort fortfahren darf, ansonsten unwahr.
+     */
+    private boolean vollAufloesen(final Runnable danach) {
+        if (bild == null || !bild.istVorschau()) {
+            return true;
+        }
+        ladenAbbrechen();
+        final Farbbild vorschau = bild;
+        final File datei = new File(bild.getDateiname());
+        ladevorgang = new SwingWorker<Farbbild, Integer>() {
+            @Override
+            protected Farbbild doInBackground() {
+                Lesebeobachter beobachter = new Lesebeobachter() {
+                    @Override
+                    public void imageProgress(ImageReader source, float prozent) {
+                        if (isCancelled()) {
+                            source.abort();
+                        } else {
+                            publish((int) prozent);
+                        }
+                    }
+                };
+                return BilddateiManager.laden(datei, null, beobachter);
+            }
+
+            @Override
+            protected void process(List<Integer> prozente) {
+                if (ladevorgang == this) {
+                    ladefortschritt.setValue(prozente.get(prozente.size() - 1));
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (ladevorgang != this) {
+                    // abgebrochen oder durch ein neueres Laden ersetzt
+                    return;
+                }
+                ladevorgang = null;
+                fortschrittAusblenden();
+                vollAufgeloest(this, vorschau, danach);
+            }
+        };
+        ladefortschritt.setValue(0);
+        ladefortschritt.getParent().setVisible(true);
+        statusAnzeigen("Lade " + datei.getName() + " in voller Auflösung ...");
+        ladevorgang.execute();
+        return false;
+    }
+
+    /**
+     * ersetzt die Vorschau durch das in voller Auflösung geladene Bild und
+     * setzt die unterbrochene Funktion fort
+     */
+    private void vollAufgeloest(SwingWorker<Farbbild, Integer> vorgang, Farbbild vorschau,
+            Runnable danach) {
+        Farbbild voll = null;
+        try {
+            voll = vorgang.get();
+        } catch (InterruptedException | ExecutionException e) {
+            // wie eine nicht lesbare Datei behandeln
+        }
+        if (voll == null) {
+            statusAnzeigen("Volle Auflösung konnte nicht geladen werden.");
+            return;
+        }
+        if (bild != vorschau) {
+            // inzwischen geschlossen oder durch ein anderes Bild ersetzt
+            return;
+        }
+        bild = voll;
+        kachelquelleSchliessen();
+        bildflaeche.setzeBild(bild);
+        bildflaeche.revalidate();
+        verlauf.beginnen(bild);
+        lastSavedIndex = verlauf.gibStand();
+        verlaufSchalten();
+        danach.run();
+    }
 }
@@ -1,18 +1,21 @@
 package bildbetrachter.gui;
 
 import bildbetrachter.bild.Farbbild;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.*;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.*;
 import java.net.URL;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.imageio.*;
-import javax.imageio.plugins.bmp.BMPImageWriteParam;
-import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.*;
 
 /**
@@ -38,6 +41,26 @@ public class BilddateiManager {
         new DateiFilter("PNG", BILDFORMATE[1]), new DateiFilter("BMP", BILDFORMATE[2])};
 
     // Attribut zum Auswählen von Dateien, Start im Heimatverzeichnis des Anwenders
+    // Bilder gekachelt mit copy-on-write laden, einschalten mit
+    // -Dbildbetrachter.gekachelt=true
+    private static final boolean GEKACHELT = Boolean.getBoolean("bildbetrachter.gekachelt");
+    // Bilder beim Laden in gepackte int-Bildpunkte (ARGB bzw. RGB) umwandeln,
+    // damit Filter und Anzeige nicht über das Farbmodell des Dekoders gehen;
+    // die Farbtiefe der Datei (z. B. 16 Bit oder indiziert) für verlustfreies
+    // Speichern behalten mit -Dbildbetrachter.quelltiefe=true
+    private static final boolean QUELLTIEFE = Boolean.getBoolean("bildbetrachter.quelltiefe");
+    // Bilder, deren Bildpunkte mehr Bytes belegen würden, werden außerhalb des
+    // Heaps in einer Datei gehalten; Vorgabe ist ein Viertel des Heaps,
+    // einstellbar mit -Dbildbetrachter.auslagerung.grenze=<Bytes>
+    private static final long AUSLAGERUNGSGRENZE = Long.getLong(
+            "bildbetrachter.auslagerung.grenze", Runtime.getRuntime().maxMemory() / 4);
+    // Bildpunkte je Streifen, wenn ein ausgelagertes Bild streifenweise
+    // gelesen werden muss
+    private static final int STREIFENGROESSE = 1 << 24;
+    // große Bilder zunächst nur in Anzeigegröße laden, abschalten mit
+    // -Dbildbetrachter.vorschau=false
+    private static final boolean VORSCHAU = !"false".equals(
+            System.getProperty("bildbetrachter.vorschau"));
     private static JFileChooser dateiauswahldialog = new JFileChooser(System.getProperty("%userdir%"));
     private static JFileChooser ordnerauswahldialog = new JFileChooser(System.getProperty("%userdir%"));
 
@@ -54,6 +77,35 @@ public class BilddateiManager {
      * selektiert wurde.
      */
     public static Farbbild gibBild(JFrame fenster) {
+        return gibBild(fenster, null);
+    }
+
+    /**
+     * Wie {@link #gibBild(JFrame)}, lädt große Bilder aber zunächst nur als
+     * Vorschau in der angegebenen Anzeigegröße.
+     *
+     * @param fenster Das Quellfenster, uas der Dialog gestartet wird. Kann auch
+     * null sein.
+     * @param anzeige die Größe der Anzeige oder null für volle Auflösung
+     * @return Das Bild-Objekt oder null, falls keine gültige Bilddatei
+     * selektiert wurde.
+     * @see #ladeBild(File, Dimension)
+     */
+    public static Farbbild gibBild(JFrame fenster, Dimension anzeige) {
+        File datei = waehleBilddatei(fenster);
+        return datei == null ? null : ladeBild(datei, anzeige);
+    }
+
+    /**
+     * Öffne einen Dateiauswahldialog und lasse den Benutzer eine Bilddatei aus
+     * dem Dateisystem auswählen, ohne sie zu laden. So kann der Aufrufer das
+     * Bild z. B. im Hintergrund laden.
+     *
+     * @param fenster Das Quellfenster, uas der Dialog gestartet wird. Kann auch
+     * null sein.
+     * @return Die gewählte Datei oder null, falls abgebrochen wurde.
+     */
+    public static File waehleBilddatei(JFrame fenster) {
         dateiauswahldialog.resetChoosableFileFilters();
         dateiauswahldialog.setMultiSelectionEnabled(false);
         // Alle Bilddateien mit registrierten Erweiterungen akzeptieren (s.o.)
@@ -70,6 +122,12 @@ public class BilddateiManager {
         }
 
         //Dateiauswahldialoge anzeigen
+        if (dateiauswahldialog.getAccessory() == null) {
+            Vorschauanzeige vorschau = new Vorschauanzeige();
+            dateiauswahldialog.setAccessory(vorschau);
+            dateiauswahldialog.addPropertyChangeListener(
+                    JFileChooser.SELECTED_FILE_CHANGED_PROPERTY, vorschau);
+        }
         dateiauswahldialog.addChoosableFileFilter(filterAll);
         for (DateiFilter filter : FILTER) {
             dateiauswahldialog.addChoosableFileFilter(filter);
@@ -81,7 +139,24 @@ public class BilddateiManager {
             return null;  // abgebrochen
         }
 
-        return ladeBild(dateiauswahldialog.getSelectedFile());
+        return dateiauswahldialog.getSelectedFile();
+    }
+
+    /**
+     * Liest eine Bilddatei für die Anzeige ein. Ist das Bild mindestens
+     * doppelt so breit und hoch wie die Anzeige, wird beim Dekodieren nur
+     * jeder n-te Bildpunkt jeder n-ten Zeile übernommen, so dass das Ergebnis
+     * gerade noch die Anzeige füllt. Das spart Zeit und vor allem Speicher;
+     * das Bild ist dann eine Vorschau (siehe {@link Farbbild#istVorschau()})
+     * und muss vor dem Bearbeiten mit {@link #ladeBild(File)} in voller
+     * Auflösung geladen werden.
+     *
+     * @param bilddatei Die zu ladende Bilddatei.
+     * @param anzeige die Größe der Anzeige oder null für volle Auflösung
+     * @return Das Bild-Objekt oder null, falls die Datei nicht lesbar ist.
+     */
+    public static Farbbild ladeBild(File bilddatei, Dimension anzeige) {
+        return laden(bilddatei, anzeige, null);
     }
 
     /**
@@ -89,32 +164,305 @@ public class BilddateiManager {
      * Methode kann Dateien im JPG- und im GIF-Format lesen. Bei Problemen
      * (etwa, wenn die Datei nicht existiert oder ein nicht lesbares Format hat
      * oder es einen sonstigen Lesefehler gibt) liefert diese Methode null.
+     * Sehr große Bilder werden direkt in ein ausgelagertes Farbbild gelesen,
+     * ohne eine Kopie im Heap.
      *
      * @param bilddatei Die zu ladende Bilddatei.
      * @return Das Bild-Objekt oder null, falls die Datei nicht lesbar ist.
      */
     public static Farbbild ladeBild(File bilddatei) {
+        return laden(bilddatei, null, null);
+    }
+
+    /**
+     * Lädt ein Bild wie {@link #ladeBild(File, Dimension)} und meldet dabei
+     * den Fortschritt des Dekodierens. Der Beobachter kann das Lesen mit
+     * {@link ImageReader#abort()} abbrechen, dann wird null geliefert.
+     *
+     * @param bilddatei Die zu ladende Bilddatei.
+     * @param anzeige die Größe der Anzeige oder null für volle Auflösung
+     * @param beobachter erhält den Fortschritt, kann null sein
+     * @return Das Bild-Objekt oder null, falls die Datei nicht lesbar ist
+     * oder das Lesen abgebrochen wurde.
+     */
+    static Farbbild laden(File bilddatei, Dimension anzeige, IIOReadProgressListener beobachter) {
+        return laden(bilddatei, anzeige, beobachter, null);
+    }
+
+    /**
+     * Lädt ein Bild wie {@link #laden(File, Dimension, IIOReadProgressListener)}
+     * und liefert dabei die bereits dekodierten Teile, solange das Bild
+     * gelesen wird, z. B. die Durchgänge progressiver JPEGs. Beim
+     * streifenweisen Lesen ausgelagerter Bilder entfällt das.
+     *
+     * @param bilddatei Die zu ladende Bilddatei.
+     * @param anzeige die Größe der Anzeige oder null für volle Auflösung
+     * @param beobachter erhält den Fortschritt, kann null sein
+     * @param teilbilder erhält das entstehende Bild, kann null sein
+     * @return Das Bild-Objekt oder null, falls die Datei nicht lesbar ist
+     * oder das Lesen abgebrochen wurde.
+     */
+    static Farbbild laden(File bilddatei, Dimension anzeige, IIOReadProgressListener beobachter,
+            IIOReadUpdateListener teilbilder) {
         try {
-            BufferedImage bild = ImageIO.read(bilddatei);
-            if (bild == null || (bild.getWidth(null) < 0)) {
-                // Bild konnte nicht geladen werden - vermutlich falsches Format
-                return null;
+            Farbbild farbbild = null;
+            if (VORSCHAU && anzeige != null) {
+                farbbild = ladeVorschau(bilddatei, anzeige, beobachter, teilbilder);
+            }
+            if (farbbild == null) {
+                farbbild = ladeAusgelagert(bilddatei, beobachter, teilbilder);
             }
-            Farbbild farbbild = new Farbbild(bild);
-            farbbild.setDateiname(bilddatei.getPath());
-            // Dateiname wird beibehalten
-            farbbild.setDateityp(bilddatei.getName()
-                    .substring(bilddatei.getName().lastIndexOf('.') + 1).toLowerCase());
+            if (farbbild == null) {
+                BufferedImage bild;
+                try (ImageInputStream eingabe = ImageIO.createImageInputStream(bilddatei)) {
+                    ImageReader reader = leserOeffnen(eingabe);
+                    if (reader == null) {
+                        // Bild konnte nicht geladen werden - vermutlich falsches Format
+                        return null;
+                    }
+                    try {
+                        bild = lesen(reader, gepacktesZiel(reader, reader.getDefaultReadParam()),
+                                beobachter, teilbilder);
+                    } finally {
+                        reader.dispose();
+                    }
+                }
+                // das frisch dekodierte Raster übernehmen statt es zu kopieren
+                farbbild = GEKACHELT ? Farbbild.gekachelt(bild) : umwandeln(bild);
+            }
+            benennen(farbbild, bilddatei);
             return farbbild;
         } catch (IOException e) {
             return null;
         }
     }
 
+    private static void benennen(Farbbild farbbild, File bilddatei) {
+        farbbild.setDateiname(bilddatei.getPath());
+        // Dateiname wird beibehalten
+        farbbild.setDateityp(bilddatei.getName()
+                .substring(bilddatei.getName().lastIndexOf('.') + 1).toLowerCase());
+    }
+
+    /**
+     * Liest ein Bild unterabgetastet auf etwa Anzeigegröße.
+     *
+     * @return die Vorschau oder null, wenn sich die Unterabtastung nicht lohnt
+     * oder kein Leser gefunden wurde
+     */
+    private static Farbbild ladeVorschau(File bilddatei, Dimension anzeige,
+            IIOReadProgressListener beobachter, IIOReadUpdateListener teilbilder)
+            throws IOException {
+        try (ImageInputStream eingabe = ImageIO.createImageInputStream(bilddatei)) {
+            ImageReader reader = leserOeffnen(eingabe);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                int faktor = Math.min(reader.getWidth(0) / Math.max(1, anzeige.width),
+                        reader.getHeight(0) / Math.max(1, anzeige.height));
+                if (faktor < 2) {
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(faktor, faktor, 0, 0);
+                Farbbild vorschau = umwandeln(lesen(reader, gepacktesZiel(reader, param),
+                        beobachter, teilbilder));
+                vorschau.setzeUnterabtastung(faktor);
+                return vorschau;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * lässt den Leser direkt gepackte int-Bildpunkte liefern, wenn er das
+     * anbietet (z. B. PNG); sonst wandelt {@link #umwandeln(BufferedImage)}
+     * das Bild danach um
+     */
+    private static ImageReadParam gepacktesZiel(ImageReader reader, ImageReadParam param)
+            throws IOException {
+        if (QUELLTIEFE) {
+            return param;
+        }
+        Iterator<ImageTypeSpecifier> typen = reader.getImageTypes(0);
+        while (typen.hasNext()) {
+            ImageTypeSpecifier typ = typen.next();
+            int art = typ.getBufferedImageType();
+            if (art == BufferedImage.TYPE_INT_RGB || art == BufferedImage.TYPE_INT_ARGB) {
+                param.setDestinationType(typ);
+                break;
+            }
+        }
+        return param;
+    }
+
+    /**
+     * macht aus einem frisch gelesenen Bild ein Farbbild: indiziert, wenn es
+     * eine Palette hat, sonst gepackt oder in der Farbtiefe der Datei
+     */
+    private static Farbbild umwandeln(BufferedImage bild) {
+        if (QUELLTIEFE) {
+            return Farbbild.uebernehmen(bild);
+        }
+        Farbbild indiziert = Farbbild.indiziert(bild);
+        return indiziert != null ? indiziert : Farbbild.gepackt(bild);
+    }
+
+    /**
+     * Liest ein Bild, das größer als die Auslagerungsgrenze ist, in ein
+     * ausgelagertes Farbbild. Der Leser schreibt dabei möglichst direkt in das
+     * Zielbild; passt dessen Format nicht zum Bild (z. B. bei Graustufen),
+     * wird das Bild in Streifen gelesen und umgewandelt.
+     *
+     * @return das Bild oder null, wenn es klein genug für den Heap ist oder
+     * kein Leser gefunden wurde
+     */
+    private static Farbbild ladeAusgelagert(File bilddatei, IIOReadProgressListener beobachter,
+            IIOReadUpdateListener teilbilder) throws IOException {
+        Farbbild bild;
+        try (ImageInputStream eingabe = ImageIO.createImageInputStream(bilddatei)) {
+            ImageReader reader = leserOeffnen(eingabe);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                int breite = reader.getWidth(0);
+                int hoehe = reader.getHeight(0);
+                Iterator<ImageTypeSpecifier> typen = reader.getImageTypes(0);
+                ColorModel modell = typen.hasNext() ? typen.next().getColorModel() : null;
+                // Bilder mit Palette belegen indiziert nur ein Byte je Bildpunkt
+                int bytes = modell instanceof IndexColorModel
+                        && ((IndexColorModel) modell).getMapSize() <= 256 ? 1 : 4;
+                if ((long) bytes * breite * hoehe <= AUSLAGERUNGSGRENZE) {
+                    return null;
+                }
+                bild = Farbbild.ausgelagert(breite, hoehe, modell != null && modell.hasAlpha());
+                // nur sRGB-Bilder direkt lesen, andere Farbräume (z. B.
+                // Graustufen) würden sonst anders umgerechnet als von ImageIO.read
+                if (modell != null && modell.getColorSpace().isCS_sRGB()) {
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setDestination(bild);
+                    try {
+                        lesen(reader, param, beobachter, teilbilder);
+                        bild.inhaltGeaendert();
+                        return bild;
+                    } catch (IllegalArgumentException | ClassCastException e) {
+                        // Zielbild passt nicht zum Bildformat, oder der Leser
+                        // erwartet ein Raster auf einem int-Feld (z. B. BMP)
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+        streifenweiseLesen(bilddatei, bild, beobachter);
+        return bild;
+    }
+
+    /**
+     * Liest ein Bild in Streifen von höchstens STREIFENGROESSE Bildpunkten in
+     * ein gleich großes Farbbild. Der Leser wird dafür neu geöffnet, weil ein
+     * abgebrochener Lesevorgang ihn unbrauchbar hinterlassen kann.
+     */
+    private static void streifenweiseLesen(File bilddatei, Farbbild bild,
+            final IIOReadProgressListener beobachter) throws IOException {
+        try (ImageInputStream eingabe = ImageIO.createImageInputStream(bilddatei)) {
+            ImageReader reader = leserOeffnen(eingabe);
+            if (reader == null) {
+                throw new IIOException("Kein Leser für " + bilddatei);
+            }
+            try {
+                int breite = bild.getWidth();
+                int hoehe = bild.getHeight();
+                int zeilen = Math.max(1, STREIFENGROESSE / breite);
+                int[] puffer = new int[breite * zeilen];
+                ImageReadParam param = reader.getDefaultReadParam();
+                for (int y = 0; y < hoehe; y += zeilen) {
+                    int h = Math.min(zeilen, hoehe - y);
+                    param.setSourceRegion(new Rectangle(0, y, breite, h));
+                    // Fortschritt des Streifens auf das ganze Bild umrechnen
+                    final float anfang = 100f * y / hoehe;
+                    final float anteil = (float) h / hoehe;
+                    BufferedImage streifen = lesen(reader, param, beobachter == null ? null
+                            : new Lesebeobachter() {
+                        @Override
+                        public void imageProgress(ImageReader source, float prozent) {
+                            beobachter.imageProgress(source, anfang + anteil * prozent);
+                        }
+                    }, null);
+                    streifen.getRGB(0, 0, breite, h, puffer, 0, breite);
+                    bild.schreibeBereich(0, y, breite, h, puffer, 0, breite);
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * liest das erste Bild und meldet den Fortschritt an den Beobachter und
+     * die dekodierten Teile an teilbilder
+     *
+     * @throws IIOException wenn das Lesen abgebrochen wurde
+     */
+    private static BufferedImage lesen(ImageReader reader, ImageReadParam param,
+            IIOReadProgressListener beobachter, IIOReadUpdateListener teilbilder)
+            throws IOException {
+        if (teilbilder != null) {
+            reader.addIIOReadUpdateListener(teilbilder);
+        }
+        if (beobachter == null) {
+            try {
+                return reader.read(0, param);
+            } finally {
+                reader.removeAllIIOReadUpdateListeners();
+            }
+        }
+        final boolean[] abgebrochen = new boolean[1];
+        reader.addIIOReadProgressListener(beobachter);
+        reader.addIIOReadProgressListener(new Lesebeobachter() {
+            @Override
+            public void readAborted(ImageReader source) {
+                abgebrochen[0] = true;
+            }
+        });
+        try {
+            BufferedImage bild = reader.read(0, param);
+            if (abgebrochen[0]) {
+                // manche Leser liefern das bis dahin gelesene Teilbild
+                throw new IIOException("Lesen abgebrochen");
+            }
+            return bild;
+        } finally {
+            reader.removeAllIIOReadProgressListeners();
+            reader.removeAllIIOReadUpdateListeners();
+        }
+    }
+
+    /**
+     * @return ein Leser für den Strom, der wahlfrei lesen darf, oder null,
+     * wenn das Format unbekannt ist
+     */
+    private static ImageReader leserOeffnen(ImageInputStream eingabe) {
+        Iterator<ImageReader> leser = eingabe == null ? null
+                : ImageIO.getImageReaders(eingabe);
+        if (leser == null || !leser.hasNext()) {
+            return null;
+        }
+        ImageReader reader = leser.next();
+        reader.setInput(eingabe, false, true);
+        return reader;
+    }
+
     /**
      * Schreibe das gegebene Bild in eine Bilddatei im JPG-Format. Die
      * Speicherqualität kann gewählt werden. Bei etwaigen Problemen beendet sich
-     * diese Methode stillschweigend.
+     * diese Methode stillschweigend. Die Methode wartet, bis das Bild
+     * geschrieben ist; zum Speichern im Hintergrund dienen
+     * {@link #waehleSpeicherziel(Farbbild, JFrame)} und der
+     * {@link Speicherdienst}.
      *
      * @param bild Das zu speichernde Bild.
      * @param fenster Das Quellfenster, wodurch der Dialog gestartet wird. Kann
@@ -123,6 +471,24 @@ public class BilddateiManager {
      * Keine Schreibrechte im Zielpfad, 3: IO-Exception/Fehler
      */
     public static int speichereBild(Farbbild bild, JFrame fenster) {
+        File dateiName = waehleSpeicherziel(bild, fenster);
+        if (dateiName == null) {
+            return 1;  // abgebrochen
+        }
+        return speichern(dateiName, bild, gibFormat(dateiName));
+    }
+
+    /**
+     * Öffnet einen Dateiauswahldialog, in dem der Benutzer Name und Format
+     * der Zieldatei für ein Bild wählt. Das Format ergibt sich aus der
+     * Dateinamenserweiterung, siehe {@link #gibFormat(File)}.
+     *
+     * @param bild Das zu speichernde Bild, sein Dateityp ist vorgewählt.
+     * @param fenster Das Quellfenster, wodurch der Dialog gestartet wird. Kann
+     * auch null sein.
+     * @return die gewählte Datei oder null, wenn der Benutzer abgebrochen hat
+     */
+    public static File waehleSpeicherziel(Farbbild bild, JFrame fenster) {
         File dateiName;
 
         dateiauswahldialog.resetChoosableFileFilters();
@@ -141,7 +507,7 @@ public class BilddateiManager {
         do {
             int ergebnis = dateiauswahldialog.showSaveDialog(null);
             if (ergebnis != JFileChooser.APPROVE_OPTION) {
-                return 1;  // abgebrochen
+                return null;  // abgebrochen
             }
             dateiName = dateiauswahldialog.getSelectedFile();
             if (!dateiauswahldialog.accept(dateiName)) {
@@ -150,15 +516,27 @@ public class BilddateiManager {
                         "Bilddatei speichern", JOptionPane.ERROR_MESSAGE);
             }
         } while (!dateiauswahldialog.accept(dateiName));
+        return dateiName;
+    }
 
-        if (dateiauswahldialog.getFileFilter() == FILTER[0]) {
-            return speichereJPG(dateiName, bild);
-        } else if (dateiauswahldialog.getFileFilter() == FILTER[1]) {
-            return speicherePNG(dateiName, bild);
-        } else if (dateiauswahldialog.getFileFilter() == FILTER[2]) {
-            return speichereBMP(dateiName, bild);
+    /**
+     * Liefert das Format, in dem eine Datei gespeichert wird.
+     *
+     * @param datei die Datei
+     * @return "jpg", "png" oder "bmp", oder null, wenn die
+     * Dateinamenserweiterung keinem dieser Formate entspricht
+     */
+    public static String gibFormat(File datei) {
+        String name = datei.getName();
+        String endung = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+        for (String[] format : BILDFORMATE) {
+            for (String e : format) {
+                if (e.equals(endung)) {
+                    return format[0];
+                }
+            }
         }
-        return 3;
+        return null;
     }
 
     /**
@@ -169,36 +547,8 @@ public class BilddateiManager {
      * @return 0: ohne Fehler ausgeführt; 2: Keine Schreibrechte im Zielpfad, 3:
      * IO-Exception
      */
-    private static int speichereJPG(File dateiName, Farbbild bild) {
-        try {
-            Iterator iterator = ImageIO.getImageWritersBySuffix("jpg");
-            ImageWriter imageWriter = (ImageWriter) iterator.next();
-            JPEGImageWriteParam imageWriteParam = new JPEGImageWriteParam(Locale.getDefault());
-            imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-
-            // Standard-Modus für die Kompression der Bilddatei
-            imageWriteParam.setCompressionQuality(ImageWriteParam.MODE_DEFAULT);
-//					float compression = 0.75f;
-//          imageWriteParam.setCompressionQuality(compression);
-            IIOImage iioImage = new IIOImage(bild, null, null);
-            File f = new File(dateiName.getPath());
-            java.nio.file.FileSystem local = FileSystems.getDefault();
-            Path targetPath = local.getPath(f.getParent());
-            if (Files.isWritable(targetPath)) {
-                imageWriter.setOutput(ImageIO.createImageOutputStream(f));
-                imageWriter.write(null, iioImage, imageWriteParam);
-                bild.setDateiname(dateiName.getPath());
-                return 0;
-            } else {
-                System.err.println(f.getAbsolutePath() + ": Zugriff verweigert.");
-                throw new FileNotFoundException();
-            }
-        } catch (FileNotFoundException e) {
-            return 2;
-        } catch (IOException e) {
-            System.err.println(e.getLocalizedMessage());
-            return 3;
-        }
+    static int speichereJPG(File dateiName, Farbbild bild) {
+        return speichern(dateiName, bild, "jpg");
     }
 
     /**
@@ -209,29 +559,8 @@ public class BilddateiManager {
      * @return 0: ohne Fehler ausgeführt; 2: Keine Schreibrechte im Zielpfad, 3:
      * IO-Exception
      */
-    private static int speicherePNG(File dateiName, Farbbild bild) {
-        try {
-            Iterator iterator = ImageIO.getImageWritersBySuffix("png");
-            ImageWriter imageWriter = (ImageWriter) iterator.next();
-            IIOImage iioImage = new IIOImage(bild, null, null);
-            File f = new File(dateiName.getPath());
-            java.nio.file.FileSystem local = FileSystems.getDefault();
-            Path targetPath = local.getPath(f.getParent());
-            if (Files.isWritable(targetPath)) {
-                imageWriter.setOutput(ImageIO.createImageOutputStream(f));
-                imageWriter.write(null, iioImage, null);
-                bild.setDateiname(dateiName.getPath());
-                return 0;
-            } else {
-                System.err.println(f.getAbsolutePath() + ": Zugriff verweigert.");
-                throw new FileNotFoundException();
-            }
-        } catch (FileNotFoundException e) {
-            return 2;
-        } catch (IOException e) {
-            System.err.println(e.getLocalizedMessage());
-            return 3;
-        }
+    static int speicherePNG(File dateiName, Farbbild bild) {
+        return speichern(dateiName, bild, "png");
     }
 
     /**
@@ -242,31 +571,28 @@ public class BilddateiManager {
      * @return 0: ohne Fehler ausgeführt; 2: Keine Schreibrechte im Zielpfad, 3:
      * IO-Exception
      */
-    private static int speichereBMP(File dateiName, Farbbild bild) {
+    static int speichereBMP(File dateiName, Farbbild bild) {
+        return speichern(dateiName, bild, "bmp");
+    }
+
+    /**
+     * speichert über den Speicherdienst und wartet auf das Ergebnis
+     */
+    private static int speichern(File dateiName, Farbbild bild, String format) {
+        if (format == null) {
+            return 3;
+        }
         try {
-            Iterator iterator = ImageIO.getImageWritersBySuffix("bmp");
-            ImageWriter imageWriter = (ImageWriter) iterator.next();
-            BMPImageWriteParam imageWriteParam = new BMPImageWriteParam(Locale.getDefault());
-
-            // Standard-Modus für die Kompression der Bilddatei
-            imageWriteParam.setCompressionMode(ImageWriteParam.MODE_DEFAULT);
-            IIOImage iioImage = new IIOImage(bild, null, null);
-            File f = new File(dateiName.getPath());
-            java.nio.file.FileSystem local = FileSystems.getDefault();
-            Path targetPath = local.getPath(f.getParent());
-            if (Files.isWritable(targetPath)) {
-                imageWriter.setOutput(ImageIO.createImageOutputStream(f));
-                imageWriter.write(null, iioImage, imageWriteParam);
+            int ergebnis = Speicherdienst.gibStandard()
+                    .speichern(bild, dateiName, format, null).get();
+            if (ergebnis == 0) {
                 bild.setDateiname(dateiName.getPath());
-                return 0;
-            } else {
-                System.err.println(f.getAbsolutePath() + ": Zugriff verweigert.");
-                throw new FileNotFoundException();
             }
-        } catch (FileNotFoundException e) {
-            return 2;
-        } catch (IOException e) {
-            System.err.println(e.getLocalizedMessage());
+            return ergebnis;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } catch (ExecutionException e) {
             return 3;
         }
     }
@@ -280,7 +606,7 @@ public class BilddateiManager {
      * null sein.
      * @return Die Liste mit den absolute Pfaden der Bilddateien als String
      */
-    public static LinkedList diashowOrdnerWählen(JFrame fenster) {
+    public static LinkedList<String> diashowOrdnerWählen(JFrame fenster) {
         LinkedList<String> liste;
         liste = new LinkedList<>();
         ordnerauswahldialog.setMultiSelectionEnabled(false);
@@ -314,6 +640,19 @@ public class BilddateiManager {
         return liste;
     }
 
+    /**
+     * Liefert die Miniatur einer Bilddatei aus dem Miniaturspeicher. Fehlt sie
+     * dort, wird sie im Hintergrund erzeugt, ohne das Bild in voller
+     * Auflösung zu dekodieren.
+     *
+     * @param pfad Der Pfad der Bilddatei.
+     * @return Die Miniatur mit höchstens Miniaturspeicher.GROESSE Bildpunkten
+     * Kantenlänge; get() liefert null, falls die Datei nicht lesbar ist.
+     */
+    public static Future<BufferedImage> gibMiniatur(String pfad) {
+        return Miniaturspeicher.gibStandard().anfordern(new File(pfad));
+    }
+
     /**
      * Öffne zwecks Anzeige im Diashowmodus eine Datei aus einem angegebenen
      * Pfad. Lade dann dieses Bild und liefere es als ein Farbbild zurück. Diese
@@ -334,4 +673,48 @@ public class BilddateiManager {
         File file = new File(url.getPath());
         return ladeBild(file);
     }
+
+    /**
+     * Zeigt im Dateiauswahldialog die Miniatur der ausgewählten Datei an.
+     */
+    private static class Vorschauanzeige extends JLabel implements PropertyChangeListener {
+
+        private SwingWorker<BufferedImage, Void> laden;
+
+        Vorschauanzeige() {
+            setPreferredSize(new Dimension(Miniaturspeicher.GROESSE + 10,
+                    Miniaturspeicher.GROESSE + 10));
+            setHorizontalAlignment(CENTER);
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (laden != null) {
+                laden.cancel(false);
+            }
+            setIcon(null);
+            final File datei = (File) evt.getNewValue();
+            if (datei == null || !datei.isFile()) {
+                return;
+            }
+            laden = new SwingWorker<BufferedImage, Void>() {
+                @Override
+                protected BufferedImage doInBackground() throws Exception {
+                    return gibMiniatur(datei.getPath()).get();
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        if (!isCancelled() && get() != null) {
+                            setIcon(new ImageIcon(get()));
+                        }
+                    } catch (InterruptedException | ExecutionException e) {
+                        // keine Vorschau
+                    }
+                }
+            };
+            laden.execute();
+        }
+    }
 }
@@ -2,13 +2,34 @@ package bildbetrachter.gui;
 
 import bildbetrachter.bild.Farbbild;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import javax.swing.*;
+import javax.swing.Timer;
 
 /**
  * Bildflaeche ist eine Swing-Komponente, die ein Farbbild anzeigen kann. Sie ist konstruiert als
  * eine Subklasse von JComponent und bietet die zusätzliche Funktionalität, dass ein eingetragenes
  * Farbbild an der Oberfläche dieser Komponente angezeigt wird.
  *
+ * Alternativ zeigt sie ein Bild aus einer {@link Kachelquelle} in voller
+ * Auflösung an. Dann werden nur die sichtbaren Kacheln angefordert; bis eine
+ * Kachel gelesen ist, erscheint dort der vergrößerte Ausschnitt der Vorschau.
+ *
+ * Während ein Bild noch dekodiert wird, kann sie das entstehende Bild
+ * anzeigen (siehe {@link #teilbildAktualisieren}). Neu dekodierte Bereiche
+ * werden gesammelt und höchstens so oft gezeichnet, wie der Bildschirm
+ * aufgefrischt wird.
+ *
+ * Ein Farbbild wird nicht bei jedem Zeichnen aus dem Farbbild selbst
+ * kopiert, dessen Format Java2D dafür meist erst umwandeln muss, sondern aus
+ * einer Kopie im Format des Bildschirms ({@link VolatileImage}, meist im
+ * Grafikspeicher). Die Kopie wird nur erneuert, wenn ein neues Bild gesetzt
+ * oder eine Änderung gemeldet wird, oder wenn der Grafikspeicher sie
+ * verworfen hat. Gezeichnet wird nur der Clip-Bereich.
+ *
  * @version 1.1
  */
 public class Bildflaeche extends JComponent {
@@ -23,6 +44,26 @@ public class Bildflaeche extends JComponent {
     // Wenn die Fläche tatsächlich angezeigt werden soll, wird dieser
     // Puffer auf den Bildschirm kopiert.
     private Farbbild bild;
+    // Quelle der Kacheln in voller Auflösung oder null; bild ist dann die
+    // Vorschau
+    private Kachelquelle quelle;
+    // Bild, das gerade dekodiert wird, samt Ladevorgang, von dem Teilbilder
+    // angenommen werden, und dem noch nicht neu gezeichneten Bereich; alles
+    // geschützt durch teilbildSperre
+    private final Object teilbildSperre = new Object();
+    private BufferedImage teilbild;
+    private Object teilbildQuelle;
+    private Rectangle teilbildGeaendert;
+    private boolean teilbildNeu;
+    private final Timer auffrischen;
+    // Kopie von bild im Format des Bildschirms und ob sie dem Inhalt von
+    // bild entspricht
+    private VolatileImage anzeigebild;
+    private boolean anzeigebildAktuell;
+    // größere Bilder (in Byte) werden ohne Kopie gezeichnet, einstellbar mit
+    // -Dbildbetrachter.anzeigecache=<Bytes>
+    private static final long ANZEIGE_GRENZE
+            = Long.getLong("bildbetrachter.anzeigecache", 64L << 20);
 
     /**
      * Erzeuge eine neue, leere Bildfläche.
@@ -31,6 +72,128 @@ public class Bildflaeche extends JComponent {
         breite = BREITE;
         hoehe = HOEHE;
         bild = null;
+        auffrischen = new Timer(1000 / bildwiederholrate(), new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                teilbildZeichnen();
+            }
+        });
+        // paintComponent füllt den ganzen Clip-Bereich selbst
+        setOpaque(true);
+    }
+
+    /**
+     * @return die Bildwiederholrate des Bildschirms, 60 falls unbekannt
+     */
+    private static int bildwiederholrate() {
+        if (!GraphicsEnvironment.isHeadless()) {
+            int rate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+            if (rate > 0) {
+                return rate;
+            }
+        }
+        return 60;
+    }
+
+    /**
+     * Lasse Teilbilder eines Ladevorgangs zu. Bis ein anderes Bild gesetzt
+     * wird, zeigt die Bildfläche das Bild an, das dieser Ladevorgang mit
+     * {@link #teilbildAktualisieren} meldet; Meldungen anderer Ladevorgänge
+     * werden ignoriert.
+     *
+     * @param ladevorgang der Ladevorgang, z. B. ein SwingWorker
+     */
+    public void teilbildZulassen(Object ladevorgang) {
+        synchronized (teilbildSperre) {
+            teilbild = null;
+            teilbildQuelle = ladevorgang;
+            teilbildGeaendert = null;
+        }
+    }
+
+    /**
+     * Melde einen neu dekodierten Bereich des Bildes, das gerade gelesen
+     * wird. Darf aus jedem Thread aufgerufen werden, z. B. aus einem
+     * IIOReadUpdateListener; gezeichnet wird im Takt der Bildwiederholrate.
+     *
+     * @param ladevorgang der Ladevorgang, von dem die Meldung stammt
+     * @param teil das entstehende Bild
+     * @param bereich der neu dekodierte Bereich in Bildkoordinaten
+     */
+    public void teilbildAktualisieren(Object ladevorgang, BufferedImage teil, Rectangle bereich) {
+        synchronized (teilbildSperre) {
+            if (ladevorgang != teilbildQuelle || ladevorgang == null) {
+                return;
+            }
+            if (teil != teilbild) {
+                teilbild = teil;
+                teilbildNeu = true;
+                teilbildGeaendert = new Rectangle(0, 0, teil.getWidth(), teil.getHeight());
+            } else if (teilbildGeaendert == null) {
+                teilbildGeaendert = new Rectangle(bereich);
+            } else {
+                teilbildGeaendert.add(bereich);
+            }
+        }
+        if (!auffrischen.isRunning()) {
+            auffrischen.start();
+        }
+    }
+
+    /**
+     * zeichnet die seit dem letzten Takt dekodierten Bereiche neu; hält den
+     * Takt an, wenn nichts mehr kommt
+     */
+    private void teilbildZeichnen() {
+        Rectangle geaendert;
+        synchronized (teilbildSperre) {
+            geaendert = teilbildGeaendert;
+            teilbildGeaendert = null;
+            if (teilbildNeu && teilbild != null) {
+                teilbildNeu = false;
+                breite = teilbild.getWidth();
+                hoehe = teilbild.getHeight();
+                revalidate();
+            }
+        }
+        if (geaendert == null) {
+            auffrischen.stop();
+        } else {
+            repaint(geaendert);
+        }
+    }
+
+    /**
+     * Verwirf das Teilbild eines abgebrochenen Ladevorgangs und zeige wieder
+     * das bisherige Bild an.
+     */
+    public void teilbildVerwerfen() {
+        teilbildBeenden();
+        if (quelle != null) {
+            breite = quelle.gibBreite();
+            hoehe = quelle.gibHoehe();
+        } else if (bild != null) {
+            breite = bild.getWidth();
+            hoehe = bild.getHeight();
+        } else {
+            breite = BREITE;
+            hoehe = HOEHE;
+        }
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * beendet die Anzeige von Teilbildern
+     */
+    private void teilbildBeenden() {
+        synchronized (teilbildSperre) {
+            teilbild = null;
+            teilbildQuelle = null;
+            teilbildGeaendert = null;
+        }
+        auffrischen.stop();
     }
 
     /**
@@ -47,9 +210,48 @@ public class Bildflaeche extends JComponent {
             hoehe = HOEHE;
         }
         this.bild = bild;
+        this.quelle = null;
+        anzeigebildVerwerfen(bild);
+        teilbildBeenden();
+        repaint();
+    }
+
+    /**
+     * Melde, dass sich der Inhalt des angezeigten Bildes geändert hat, und
+     * zeige es neu an.
+     */
+    public void bildGeaendert() {
+        anzeigebildAktuell = false;
         repaint();
     }
 
+    /**
+     * Zeige ein Bild in voller Auflösung aus einer Kachelquelle an.
+     *
+     * @param quelle die Kachelquelle
+     * @param vorschau verkleinertes Bild derselben Datei, das gezeigt wird,
+     * bis die Kacheln gelesen sind; kann null sein
+     */
+    public void setzeKachelquelle(Kachelquelle quelle, Farbbild vorschau) {
+        breite = quelle.gibBreite();
+        hoehe = quelle.gibHoehe();
+        this.bild = vorschau;
+        this.quelle = quelle;
+        anzeigebildVerwerfen(null);
+        teilbildBeenden();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Gib die angezeigte Kachelquelle zurück.
+     *
+     * @return die Kachelquelle oder null, wenn ein Farbbild angezeigt wird.
+     */
+    public Kachelquelle gibKachelquelle() {
+        return quelle;
+    }
+
     /**
      * Lösche die Bildfläche.
      */
@@ -57,6 +259,9 @@ public class Bildflaeche extends JComponent {
         breite = BREITE;
         hoehe = HOEHE;
         bild = null;
+        quelle = null;
+        anzeigebildVerwerfen(null);
+        teilbildBeenden();
         repaint();
     }
 
@@ -91,10 +296,127 @@ public class Bildflaeche extends JComponent {
      */
     @Override
     public void paintComponent(Graphics g) {
-        Dimension size = getSize();
-        g.clearRect(0, 0, size.width, size.height);
-        if (bild != null) {
-            g.drawImage(bild, 0, 0, null);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(getSize());
+        }
+        BufferedImage teil;
+        synchronized (teilbildSperre) {
+            teil = teilbild;
+        }
+        if (teil != null) {
+            g.clearRect(clip.x, clip.y, clip.width, clip.height);
+            // wird noch beschrieben, zeigt den jeweils dekodierten Stand
+            g.drawImage(teil, 0, 0, null);
+        } else if (quelle != null) {
+            g.clearRect(clip.x, clip.y, clip.width, clip.height);
+            kachelnZeichnen(g);
+        } else if (bild != null) {
+            // unter einem deckenden Bild muss nicht gelöscht werden
+            if (bild.getColorModel().hasAlpha()
+                    || !new Rectangle(bild.getWidth(), bild.getHeight()).contains(clip)) {
+                g.clearRect(clip.x, clip.y, clip.width, clip.height);
+            }
+            bildZeichnen(g, clip.intersection(new Rectangle(bild.getWidth(), bild.getHeight())));
+        } else {
+            g.clearRect(clip.x, clip.y, clip.width, clip.height);
+        }
+    }
+
+    /**
+     * zeichnet den Ausschnitt des Bildes aus der Kopie im Format des
+     * Bildschirms; sie wird bei Bedarf neu erzeugt oder wiederhergestellt
+     */
+    private void bildZeichnen(Graphics g, Rectangle r) {
+        if (r.isEmpty()) {
+            return;
+        }
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == null || 4L * bild.getWidth() * bild.getHeight() > ANZEIGE_GRENZE) {
+            ausschnittZeichnen(g, bild, r);
+            return;
+        }
+        do {
+            if (anzeigebild == null) {
+                anzeigebild = gc.createCompatibleVolatileImage(bild.getWidth(), bild.getHeight(),
+                        bild.getColorModel().hasAlpha() ? Transparency.TRANSLUCENT : Transparency.OPAQUE);
+                anzeigebildAktuell = false;
+            }
+            int zustand = anzeigebild.validate(gc);
+            if (zustand == VolatileImage.IMAGE_INCOMPATIBLE) {
+                // z. B. auf einen anderen Bildschirm verschoben
+                anzeigebild.flush();
+                anzeigebild = null;
+                continue;
+            }
+            if (zustand == VolatileImage.IMAGE_RESTORED || !anzeigebildAktuell) {
+                Graphics2D kopie = anzeigebild.createGraphics();
+                kopie.setComposite(AlphaComposite.Src);
+                kopie.drawImage(bild, 0, 0, null);
+                kopie.dispose();
+                anzeigebildAktuell = true;
+            }
+            ausschnittZeichnen(g, anzeigebild, r);
+        } while (anzeigebild == null || anzeigebild.contentsLost());
+    }
+
+    /**
+     * zeichnet nur den Ausschnitt r eines Bildes an dieselbe Stelle
+     */
+    private static void ausschnittZeichnen(Graphics g, Image quelle, Rectangle r) {
+        g.drawImage(quelle, r.x, r.y, r.x + r.width, r.y + r.height,
+                r.x, r.y, r.x + r.width, r.y + r.height, null);
+    }
+
+    /**
+     * verwirft die Kopie im Format des Bildschirms; passt sie in der Größe zum
+     * neuen Bild, wird sie nur als veraltet markiert und wiederverwendet
+     */
+    private void anzeigebildVerwerfen(Farbbild neu) {
+        anzeigebildAktuell = false;
+        if (anzeigebild != null && (neu == null || anzeigebild.getWidth() != neu.getWidth()
+                || anzeigebild.getHeight() != neu.getHeight()
+                || (anzeigebild.getTransparency() == Transparency.OPAQUE)
+                == neu.getColorModel().hasAlpha())) {
+            anzeigebild.flush();
+            anzeigebild = null;
+        }
+    }
+
+    /**
+     * zeichnet die Kacheln im Clip-Bereich; noch fehlende werden angefordert
+     * und bis dahin aus der Vorschau vergrößert
+     */
+    private void kachelnZeichnen(Graphics g) {
+        Rectangle sichtbar = getVisibleRect();
+        quelle.sichtbarSetzen(sichtbar);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = sichtbar;
+        }
+        int k = Kachelquelle.KACHELGROESSE;
+        int x0 = Math.max(0, clip.x / k);
+        int y0 = Math.max(0, clip.y / k);
+        int x1 = Math.min((breite - 1) / k, (clip.x + clip.width - 1) / k);
+        int y1 = Math.min((hoehe - 1) / k, (clip.y + clip.height - 1) / k);
+        for (int zeile = y0; zeile <= y1; zeile++) {
+            for (int spalte = x0; spalte <= x1; spalte++) {
+                int x = spalte * k;
+                int y = zeile * k;
+                BufferedImage kachel = quelle.gibKachel(spalte, zeile);
+                if (kachel != null) {
+                    g.drawImage(kachel, x, y, null);
+                } else if (bild != null) {
+                    int kb = Math.min(k, breite - x);
+                    int kh = Math.min(k, hoehe - y);
+                    double fx = (double) bild.getWidth() / breite;
+                    double fy = (double) bild.getHeight() / hoehe;
+                    g.drawImage(bild, x, y, x + kb, y + kh,
+                            (int) (x * fx), (int) (y * fy),
+                            (int) Math.ceil((x + kb) * fx), (int) Math.ceil((y + kh) * fy),
+                            null);
+                }
+            }
         }
     }
 }
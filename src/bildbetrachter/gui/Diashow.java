@@ -0,0 +1,299 @@
+package bildbetrachter.gui;
+
+import bildbetrachter.bild.Farbbild;
+import java.awt.Dimension;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageReader;
+import javax.swing.SwingUtilities;
+
+/**
+ * Eine Diashow zeigt die Bilder einer Liste von Dateien nacheinander an. Die
+ * nächsten VORAUS und die vorigen ZURUECK Bilder werden im Hintergrund
+ * dekodiert, solange das aktuelle betrachtet wird, so dass das Weiterschalten
+ * meist sofort ein fertiges Bild findet.
+ *
+ * Dekodierte Bilder liegen in einem Zwischenspeicher, der nach der Größe der
+ * Bildpunkte begrenzt ist; die am längsten nicht gezeigten werden zuerst
+ * verdrängt. Aufträge für Bilder, die nach einem Sprung nicht mehr in der
+ * Nähe des aktuellen liegen, werden abgebrochen, auch wenn sie schon
+ * dekodiert werden.
+ */
+public class Diashow {
+
+    // Anzahl der Bilder, die nach und vor dem aktuellen vorab geladen werden
+    private static final int VORAUS = 3;
+    private static final int ZURUECK = 1;
+    // Obergrenze für die Bildpunkte aller zwischengespeicherten Bilder,
+    // einstellbar mit -Dbildbetrachter.diashow.cache=<Bytes>
+    private static final long CACHE_GROESSE = Long.getLong("bildbetrachter.diashow.cache",
+            Runtime.getRuntime().maxMemory() / 8);
+
+    private final List<String> pfade;
+    private final Dimension anzeige;
+    private final ThreadPoolExecutor dekodierer;
+    // Zugriffsreihenfolge, das am längsten nicht gezeigte Bild steht vorn
+    private final LinkedHashMap<Integer, Farbbild> bilder
+            = new LinkedHashMap<>(16, 0.75f, true);
+    private long belegt;
+    private final Map<Integer, Ladeauftrag> auftraege = new HashMap<>();
+    private int position = -1;
+    // wartet auf das Bild an der aktuellen Position, oder null
+    private Empfaenger wartend;
+    private boolean beendet;
+
+    /**
+     * Erhält ein Bild der Diashow, sobald es dekodiert ist.
+     */
+    public interface Empfaenger {
+
+        /**
+         * @param bild das Bild oder null, wenn es nicht lesbar ist
+         * @param position die Position des Bildes
+         */
+        void empfangen(Farbbild bild, int position);
+    }
+
+    /**
+     * Erzeugt eine Diashow.
+     *
+     * @param pfade die Pfade der Bilddateien in der Reihenfolge der Anzeige
+     * @param anzeige die Größe der Anzeige, größere Bilder werden nur als
+     * Vorschau in dieser Größe geladen; null für volle Auflösung
+     */
+    public Diashow(List<String> pfade, Dimension anzeige) {
+        this.pfade = new ArrayList<>(pfade);
+        this.anzeige = anzeige;
+        int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
+        dekodierer = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Diashow");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        dekodierer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return die Anzahl der Bilder
+     */
+    public int gibAnzahl() {
+        return pfade.size();
+    }
+
+    /**
+     * @return die Position des zuletzt gelieferten Bildes oder -1
+     */
+    public synchronized int gibPosition() {
+        return position;
+    }
+
+    /**
+     * Liefert das nächste Bild, nach dem letzten wieder das erste.
+     *
+     * @param empfaenger erhält das Bild, siehe {@link #gibBild(int, Empfaenger)}
+     */
+    public void weiter(Empfaenger empfaenger) {
+        gibBild(gibPosition() + 1, empfaenger);
+    }
+
+    /**
+     * Liefert das vorige Bild, vor dem ersten das letzte.
+     *
+     * @param empfaenger erhält das Bild, siehe {@link #gibBild(int, Empfaenger)}
+     */
+    public void zurueck(Empfaenger empfaenger) {
+        gibBild(gibPosition() - 1, empfaenger);
+    }
+
+    /**
+     * Macht ein Bild der Diashow zum aktuellen und liefert es an den
+     * Empfänger, ohne auf das Dekodieren zu warten. Liegt es schon vor,
+     * erhält der Empfänger es sofort, sonst auf dem Event-Dispatch-Thread,
+     * sobald es dekodiert ist; wird vorher ein anderes Bild angefordert oder
+     * die Diashow beendet, entfällt das. Danach werden die benachbarten
+     * Bilder im Hintergrund geladen. Das Bild ist eine Kopie und darf
+     * verändert werden.
+     *
+     * @param nummer die Position des Bildes, wird zyklisch auf die Liste
+     * abgebildet
+     * @param empfaenger erhält das Bild
+     */
+    public void gibBild(int nummer, Empfaenger empfaenger) {
+        if (pfade.isEmpty()) {
+            empfaenger.empfangen(null, -1);
+            return;
+        }
+        int n = pfade.size();
+        int aktuell = ((nummer % n) + n) % n;
+        Farbbild bild;
+        synchronized (this) {
+            position = aktuell;
+            bild = bilder.get(position);
+            if (bild == null) {
+                wartend = empfaenger;
+                anfordern(position);
+            } else {
+                wartend = null;
+            }
+            vorausladen();
+        }
+        if (bild != null) {
+            empfaenger.empfangen((Farbbild) bild.clone(), aktuell);
+        }
+    }
+
+    /**
+     * Bricht alle Aufträge ab und gibt die zwischengespeicherten Bilder frei.
+     */
+    public synchronized void beenden() {
+        beendet = true;
+        wartend = null;
+        for (Ladeauftrag auftrag : auftraege.values()) {
+            auftrag.ergebnis.cancel(false);
+        }
+        auftraege.clear();
+        bilder.clear();
+        belegt = 0;
+        dekodierer.shutdownNow();
+    }
+
+    /**
+     * bricht Aufträge außerhalb des Fensters um die aktuelle Position ab und
+     * fordert die fehlenden Bilder darin an, die nächsten zuerst
+     */
+    private void vorausladen() {
+        int n = pfade.size();
+        List<Integer> fenster = new ArrayList<>();
+        for (int i = 1; i <= VORAUS && i < n; i++) {
+            fenster.add((position + i) % n);
+        }
+        for (int i = 1; i <= ZURUECK && i < n; i++) {
+            fenster.add((position - i + n) % n);
+        }
+        fenster.add(position);
+        Iterator<Map.Entry<Integer, Ladeauftrag>> it = auftraege.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Ladeauftrag> eintrag = it.next();
+            if (!fenster.contains(eintrag.getKey())) {
+                eintrag.getValue().ergebnis.cancel(false);
+                dekodierer.remove(eintrag.getValue().ergebnis);
+                it.remove();
+            }
+        }
+        for (int nummer : fenster) {
+            if (!bilder.containsKey(nummer)) {
+                anfordern(nummer);
+            }
+        }
+    }
+
+    /**
+     * startet das Dekodieren eines Bildes, falls es nicht schon läuft
+     */
+    private Future<Farbbild> anfordern(int nummer) {
+        Ladeauftrag auftrag = auftraege.get(nummer);
+        if (auftrag == null) {
+            auftrag = new Ladeauftrag(nummer);
+            auftraege.put(nummer, auftrag);
+            dekodierer.execute(auftrag.ergebnis);
+        }
+        return auftrag.ergebnis;
+    }
+
+    /**
+     * legt ein fertiges Bild ab und verdrängt die am längsten nicht gezeigten,
+     * solange der Zwischenspeicher zu voll ist; das aktuelle bleibt immer
+     */
+    private synchronized void ablegen(int nummer, Farbbild bild, Ladeauftrag auftrag) {
+        if (auftraege.get(nummer) != auftrag || auftrag.ergebnis.isCancelled()) {
+            return;
+        }
+        auftraege.remove(nummer);
+        if (nummer == position && wartend != null) {
+            zustellen(wartend, bild == null ? null : (Farbbild) bild.clone(), nummer);
+            wartend = null;
+        }
+        if (bild == null) {
+            return;
+        }
+        bilder.put(nummer, bild);
+        belegt += groesse(bild);
+        Iterator<Map.Entry<Integer, Farbbild>> it = bilder.entrySet().iterator();
+        while (belegt > CACHE_GROESSE && it.hasNext()) {
+            Map.Entry<Integer, Farbbild> eintrag = it.next();
+            if (eintrag.getKey() != position) {
+                belegt -= groesse(eintrag.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * übergibt ein Bild auf dem Event-Dispatch-Thread, falls es dann noch
+     * das aktuelle ist
+     */
+    private void zustellen(final Empfaenger empfaenger, final Farbbild bild, final int nummer) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (Diashow.this) {
+                    if (beendet || position != nummer) {
+                        return;
+                    }
+                }
+                empfaenger.empfangen(bild, nummer);
+            }
+        });
+    }
+
+    /**
+     * Speicherbedarf der Bildpunkte eines Bildes in Byte
+     */
+    private static long groesse(Farbbild bild) {
+        return 4L * bild.getWidth() * bild.getHeight();
+    }
+
+    /**
+     * dekodiert ein Bild der Diashow; wird der Auftrag abgebrochen, bricht er
+     * beim nächsten gemeldeten Fortschritt auch das Lesen ab
+     */
+    private class Ladeauftrag extends Lesebeobachter implements Callable<Farbbild> {
+
+        final int nummer;
+        final FutureTask<Farbbild> ergebnis = new FutureTask<>(this);
+
+        Ladeauftrag(int nummer) {
+            this.nummer = nummer;
+        }
+
+        @Override
+        public Farbbild call() {
+            Farbbild bild = BilddateiManager.laden(new File(pfade.get(nummer)), anzeige, this);
+            ablegen(nummer, bild, this);
+            return bild;
+        }
+
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            if (ergebnis.isCancelled()) {
+                source.abort();
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package bildbetrachter.gui;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
+
+/**
+ * Eine Kachelquelle liefert Ausschnitte einer Bilddatei in voller Auflösung,
+ * ohne je das ganze Bild zu dekodieren. Die Anzeige fragt nur die gerade
+ * sichtbaren Kacheln ab; fehlende Kacheln werden im Hintergrund mit
+ * {@link ImageReadParam#setSourceRegion(Rectangle)} gelesen und in einem in
+ * der Größe begrenzten Zwischenspeicher abgelegt, aus dem die am längsten
+ * nicht gezeichneten Kacheln verdrängt werden.
+ *
+ * Formate wie JPEG und PNG lassen sich nur von oben nach unten dekodieren,
+ * ein Ausschnitt kostet also so viel wie alle Zeilen darüber. Deshalb wird je
+ * Kachelzeile nur einmal gelesen, und zwar alle darin angeforderten Kacheln
+ * in einem Ausschnitt. Kacheln, die beim Lesen schon nicht mehr sichtbar
+ * sind, werden übersprungen.
+ */
+public class Kachelquelle {
+
+    // Kantenlänge einer Kachel in Bildpunkten
+    public static final int KACHELGROESSE = 512;
+    // Obergrenze für alle zwischengespeicherten Kacheln zusammen, einstellbar
+    // mit -Dbildbetrachter.kachelcache=<Bytes>
+    private static final long CACHE_GROESSE
+            = Long.getLong("bildbetrachter.kachelcache", 64L << 20);
+
+    private final File datei;
+    private final int breite;
+    private final int hoehe;
+    private final Runnable geladen;
+    // liest alle Kacheln nacheinander mit demselben Leser
+    private final ExecutorService dekodierer;
+    private final ImageInputStream eingabe;
+    private final ImageReader reader;
+    // Zugriffsreihenfolge, die älteste Kachel steht vorn
+    private final LinkedHashMap<Long, BufferedImage> kacheln
+            = new LinkedHashMap<>(64, 0.75f, true);
+    private long belegt;
+    // angeforderte, noch nicht gelesene Kacheln je Kachelzeile
+    private final Map<Integer, Set<Integer>> angefordert = new LinkedHashMap<>();
+    // Kacheln, die sich nicht lesen ließen
+    private final Set<Long> fehlerhaft = new HashSet<>();
+    private volatile Rectangle sichtbar = new Rectangle();
+    private boolean geschlossen;
+
+    /**
+     * Öffnet eine Bilddatei als Kachelquelle.
+     *
+     * @param datei die Bilddatei
+     * @param geladen wird im Event-Dispatch-Thread aufgerufen, sobald neue
+     * Kacheln bereitliegen, z. B. um neu zu zeichnen
+     * @throws IOException wenn die Datei nicht gelesen werden kann
+     */
+    public Kachelquelle(File datei, Runnable geladen) throws IOException {
+        this.datei = datei;
+        this.geladen = geladen;
+        eingabe = ImageIO.createImageInputStream(datei);
+        Iterator<ImageReader> leser = eingabe == null ? null
+                : ImageIO.getImageReaders(eingabe);
+        if (leser == null || !leser.hasNext()) {
+            if (eingabe != null) {
+                eingabe.close();
+            }
+            throw new IIOException("Kein Leser für " + datei);
+        }
+        reader = leser.next();
+        reader.setInput(eingabe, false, true);
+        breite = reader.getWidth(0);
+        hoehe = reader.getHeight(0);
+        dekodierer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Kachelquelle " + datei.getName());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * @return die Datei, aus der die Kacheln gelesen werden
+     */
+    public File gibDatei() {
+        return datei;
+    }
+
+    /**
+     * @return die volle Breite des Bildes
+     */
+    public int gibBreite() {
+        return breite;
+    }
+
+    /**
+     * @return die volle Höhe des Bildes
+     */
+    public int gibHoehe() {
+        return hoehe;
+    }
+
+    /**
+     * Teilt der Quelle mit, welcher Bereich gerade sichtbar ist. Angeforderte
+     * Kacheln außerhalb davon werden nicht mehr gelesen.
+     *
+     * @param bereich der sichtbare Bereich in Bildkoordinaten
+     */
+    public void sichtbarSetzen(Rectangle bereich) {
+        sichtbar = new Rectangle(bereich);
+    }
+
+    /**
+     * Liefert eine Kachel, falls sie bereits gelesen wurde. Sonst wird sie
+     * zum Lesen im Hintergrund vorgemerkt und null geliefert.
+     *
+     * @param spalte die Kachelspalte
+     * @param zeile die Kachelzeile
+     * @return die Kachel mit höchstens KACHELGROESSE x KACHELGROESSE
+     * Bildpunkten oder null
+     */
+    public synchronized BufferedImage gibKachel(int spalte, int zeile) {
+        long schluessel = schluessel(spalte, zeile);
+        BufferedImage kachel = kacheln.get(schluessel);
+        if (kachel != null || fehlerhaft.contains(schluessel) || dekodierer.isShutdown()) {
+            return kachel;
+        }
+        Set<Integer> spalten = angefordert.get(zeile);
+        if (spalten == null) {
+            spalten = new TreeSet<>();
+            angefordert.put(zeile, spalten);
+            final int z = zeile;
+            dekodierer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    zeileLesen(z);
+                }
+            });
+        }
+        spalten.add(spalte);
+        return null;
+    }
+
+    /**
+     * Beendet das Lesen im Hintergrund, schließt die Datei und gibt alle
+     * Kacheln frei.
+     */
+    public void schliessen() {
+        synchronized (this) {
+            if (dekodierer.isShutdown()) {
+                return;
+            }
+            geschlossen = true;
+            angefordert.clear();
+            kacheln.clear();
+            belegt = 0;
+            // der Leser gehört dem Hintergrundthread, dort auch schließen
+            dekodierer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    reader.dispose();
+                    try {
+                        eingabe.close();
+                    } catch (IOException e) {
+                        // Datei war nur gelesen, nichts zu retten
+                    }
+                }
+            });
+            dekodierer.shutdown();
+        }
+    }
+
+    private static long schluessel(int spalte, int zeile) {
+        return (long) zeile << 32 | spalte;
+    }
+
+    /**
+     * liest die angeforderten Kacheln einer Kachelzeile, solange welche
+     * angefordert werden; der Eintrag in angefordert bleibt dabei bestehen,
+     * so dass währenddessen angeforderte Kacheln derselben Zeile keinen
+     * weiteren Auftrag erzeugen
+     */
+    private void zeileLesen(int zeile) {
+        while (true) {
+            int erste = Integer.MAX_VALUE;
+            int letzte = -1;
+            synchronized (this) {
+                Set<Integer> spalten = angefordert.get(zeile);
+                if (geschlossen || spalten == null) {
+                    return;
+                }
+                if (spalten.isEmpty()) {
+                    angefordert.remove(zeile);
+                    return;
+                }
+                Rectangle bereich = sichtbar;
+                for (int spalte : spalten) {
+                    Rectangle kachel = new Rectangle(spalte * KACHELGROESSE,
+                            zeile * KACHELGROESSE, KACHELGROESSE, KACHELGROESSE);
+                    if (kachel.intersects(bereich)
+                            && !kacheln.containsKey(schluessel(spalte, zeile))) {
+                        erste = Math.min(erste, spalte);
+                        letzte = Math.max(letzte, spalte);
+                    }
+                }
+                spalten.clear();
+            }
+            if (letzte >= 0) {
+                ausschnittLesen(zeile, erste, letzte);
+            }
+        }
+    }
+
+    /**
+     * liest die Kacheln erste bis letzte einer Kachelzeile in einem
+     * Ausschnitt und legt sie einzeln ab
+     */
+    private void ausschnittLesen(int zeile, int erste, int letzte) {
+        int x = erste * KACHELGROESSE;
+        int y = zeile * KACHELGROESSE;
+        int b = Math.min((letzte + 1) * KACHELGROESSE, breite) - x;
+        int h = Math.min(KACHELGROESSE, hoehe - y);
+        BufferedImage ausschnitt;
+        try {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(x, y, b, h));
+            ausschnitt = reader.read(0, param);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                for (int spalte = erste; spalte <= letzte; spalte++) {
+                    fehlerhaft.add(schluessel(spalte, zeile));
+                }
+            }
+            return;
+        }
+        int typ = ausschnitt.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int[] zeilen = null;
+        for (int spalte = erste; spalte <= letzte; spalte++) {
+            // eigene Kopie je Kachel, damit verdrängte Kacheln einzeln frei
+            // werden; getRGB rechnet Graustufen wie beim Laden ganzer Bilder
+            // um
+            int kx = spalte * KACHELGROESSE - x;
+            int kb = Math.min(KACHELGROESSE, b - kx);
+            BufferedImage kachel = new BufferedImage(kb, h, typ);
+            zeilen = ausschnitt.getRGB(kx, 0, kb, h, zeilen, 0, kb);
+            kachel.setRGB(0, 0, kb, h, zeilen, 0, kb);
+            synchronized (this) {
+                if (geschlossen) {
+                    return;
+                }
+                ablegen(schluessel(spalte, zeile), kachel);
+            }
+        }
+        SwingUtilities.invokeLater(geladen);
+    }
+
+    /**
+     * legt eine Kachel ab und verdrängt die am längsten nicht benutzten,
+     * solange der Zwischenspeicher zu voll ist
+     */
+    private void ablegen(long schluessel, BufferedImage kachel) {
+        BufferedImage alt = kacheln.put(schluessel, kachel);
+        if (alt != null) {
+            belegt -= groesse(alt);
+        }
+        belegt += groesse(kachel);
+        Iterator<BufferedImage> it = kacheln.values().iterator();
+        while (belegt > CACHE_GROESSE && kacheln.size() > 1 && it.hasNext()) {
+            belegt -= groesse(it.next());
+            it.remove();
+        }
+    }
+
+    /**
+     * Speicherbedarf einer Kachel in Byte
+     */
+    private static long groesse(BufferedImage kachel) {
+        return 4L * kachel.getWidth() * kachel.getHeight();
+    }
+}
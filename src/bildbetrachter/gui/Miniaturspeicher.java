@@ -0,0 +1,433 @@
+package bildbetrachter.gui;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Ein Miniaturspeicher hält Miniaturen von Bilddateien dauerhaft in einem
+ * Verzeichnis, damit ein schon einmal geöffneter Ordner sofort mit Miniaturen
+ * angezeigt werden kann, ohne jedes Bild wieder vollständig zu dekodieren.
+ *
+ * Der Schlüssel einer Miniatur ist ein Hash aus Pfad, Dateigröße,
+ * Änderungszeit und Kantenlänge. Eine geänderte Datei bekommt so einen neuen
+ * Schlüssel, und das Prüfen eines Ordners kostet je Datei nur das Abfragen
+ * der Dateiattribute. Miniaturen ohne Transparenz werden als JPEG, andere als
+ * PNG abgelegt.
+ *
+ * Die Dateien im Verzeichnis werden nach ihrer letzten Verwendung verdrängt,
+ * sobald sie zusammen mehr als die Grenze belegen; als Zeitpunkt dient die
+ * Änderungszeit der Miniatur, die bei jedem Treffer erneuert wird. Fehlende
+ * Miniaturen werden von einer begrenzten Zahl von Hintergrundthreads erzeugt,
+ * jede Datei höchstens einmal gleichzeitig.
+ *
+ * Das Verzeichnis legt die Systemeigenschaft bildbetrachter.miniaturen fest,
+ * sonst .bildbetrachter/miniaturen im Heimatverzeichnis.
+ */
+public class Miniaturspeicher {
+
+    // Kantenlänge der Miniaturen in Bildpunkten
+    public static final int GROESSE = 160;
+    // Obergrenze für alle Miniaturen zusammen, einstellbar mit
+    // -Dbildbetrachter.miniaturen.grenze=<Bytes>
+    private static final long GRENZE
+            = Long.getLong("bildbetrachter.miniaturen.grenze", 256L << 20);
+    // Zahl der Threads, die gleichzeitig Miniaturen erzeugen, einstellbar mit
+    // -Dbildbetrachter.miniaturen.threads=<Anzahl>
+    private static final int THREADS = Integer.getInteger("bildbetrachter.miniaturen.threads",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    // temporäre Dateien, die so lange nicht geändert wurden, stammen von
+    // abgebrochenen Schreibvorgängen und nicht von einem anderen laufenden
+    // Programm, das dasselbe Verzeichnis nutzt
+    private static final long TEMP_ALTER = TimeUnit.HOURS.toMillis(1);
+
+    private static Miniaturspeicher standard;
+
+    private final File verzeichnis;
+    private final int groesse;
+    private final long grenze;
+    private final ThreadPoolExecutor arbeiter;
+    // Miniaturen, die gerade erzeugt werden, nach Schlüssel
+    private final Map<String, Future<BufferedImage>> inArbeit = new ConcurrentHashMap<>();
+    // Dateien im Verzeichnis mit ihrer Größe, die am längsten nicht benutzte
+    // steht vorn; wird beim ersten Zugriff aus dem Verzeichnis gelesen
+    private LinkedHashMap<String, Long> index;
+    private long belegt;
+
+    /**
+     * Legt einen Miniaturspeicher an.
+     *
+     * @param verzeichnis das Verzeichnis für die Miniaturen, wird bei Bedarf
+     * angelegt
+     * @param groesse die Kantenlänge der Miniaturen
+     * @param grenze die Obergrenze aller Miniaturen zusammen in Byte
+     */
+    public Miniaturspeicher(File verzeichnis, int groesse, long grenze) {
+        this.verzeichnis = verzeichnis;
+        this.groesse = groesse;
+        this.grenze = grenze;
+        arbeiter = new ThreadPoolExecutor(THREADS, THREADS, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Miniaturen");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        arbeiter.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return der gemeinsame Miniaturspeicher mit Miniaturen der Größe
+     * GROESSE
+     */
+    public static synchronized Miniaturspeicher gibStandard() {
+        if (standard == null) {
+            String pfad = System.getProperty("bildbetrachter.miniaturen");
+            File verzeichnis = pfad != null ? new File(pfad)
+                    : new File(System.getProperty("user.home"),
+                            ".bildbetrachter" + File.separator + "miniaturen");
+            standard = new Miniaturspeicher(verzeichnis, GROESSE, GRENZE);
+        }
+        return standard;
+    }
+
+    /**
+     * Liefert die abgelegte Miniatur einer Datei, ohne eine neue zu erzeugen.
+     *
+     * @param datei die Bilddatei
+     * @return die Miniatur oder null, wenn es keine aktuelle gibt
+     */
+    public BufferedImage gibVorhandene(File datei) {
+        String schluessel = schluessel(datei);
+        return schluessel == null ? null : lesen(schluessel);
+    }
+
+    /**
+     * Liefert die Miniatur einer Datei. Ist keine aktuelle abgelegt, wird sie
+     * im Hintergrund erzeugt und abgelegt.
+     *
+     * @param datei die Bilddatei
+     * @return die Miniatur; get() liefert null, wenn die Datei nicht lesbar
+     * ist
+     */
+    public Future<BufferedImage> anfordern(final File datei) {
+        final String schluessel = schluessel(datei);
+        if (schluessel == null) {
+            return erledigt(null);
+        }
+        BufferedImage vorhanden = lesen(schluessel);
+        if (vorhanden != null) {
+            return erledigt(vorhanden);
+        }
+        return erzeugen(datei, schluessel);
+    }
+
+    /**
+     * Prüft die Miniaturen aller Dateien eines Ordners der Reihe nach und
+     * gibt fehlende oder veraltete sofort zum Erzeugen im Hintergrund ab.
+     * Vorhandene Miniaturen werden dabei nicht gelesen. Schon das Prüfen
+     * kostet je Datei einen Zugriff auf das Dateisystem; bei großen Ordnern
+     * gehört der Aufruf daher nicht auf den Event-Dispatch-Thread. Wird der
+     * aufrufende Thread unterbrochen, endet die Prüfung vorzeitig.
+     *
+     * @param pfade die Pfade der Bilddateien
+     * @return die Aufträge der Miniaturen, die erzeugt werden
+     */
+    public List<Future<BufferedImage>> vorbereiten(List<String> pfade) {
+        List<Future<BufferedImage>> neu = new ArrayList<>();
+        for (String pfad : pfade) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            File datei = new File(pfad);
+            String schluessel = schluessel(datei);
+            if (schluessel != null && !enthaelt(schluessel)) {
+                neu.add(erzeugen(datei, schluessel));
+            }
+        }
+        return neu;
+    }
+
+    /**
+     * Verwirft alle noch nicht begonnenen Aufträge.
+     */
+    public void abbrechen() {
+        for (Future<BufferedImage> auftrag : inArbeit.values()) {
+            auftrag.cancel(false);
+        }
+        arbeiter.getQueue().clear();
+        inArbeit.clear();
+    }
+
+    /**
+     * @return der Schlüssel einer Datei oder null, wenn sie nicht existiert
+     */
+    private String schluessel(File datei) {
+        long laenge = datei.length();
+        long geaendert = datei.lastModified();
+        if (geaendert == 0) {
+            return null;
+        }
+        String text = datei.getAbsolutePath() + '\0' + laenge + '\0' + geaendert + '\0' + groesse;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1")
+                    .digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(40);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 gehört zu jeder Java-Plattform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Future<BufferedImage> erledigt(BufferedImage miniatur) {
+        FutureTask<BufferedImage> auftrag = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, miniatur);
+        auftrag.run();
+        return auftrag;
+    }
+
+    /**
+     * startet das Erzeugen einer Miniatur, falls es nicht schon läuft
+     */
+    private Future<BufferedImage> erzeugen(final File datei, final String schluessel) {
+        FutureTask<BufferedImage> auftrag = new FutureTask<BufferedImage>(
+                new Callable<BufferedImage>() {
+            @Override
+            public BufferedImage call() {
+                try {
+                    return ablegen(schluessel, verkleinern(datei));
+                } catch (IOException | RuntimeException e) {
+                    return null;
+                }
+            }
+        }) {
+            @Override
+            protected void done() {
+                inArbeit.remove(schluessel, this);
+            }
+        };
+        Future<BufferedImage> laufend = inArbeit.putIfAbsent(schluessel, auftrag);
+        if (laufend != null) {
+            return laufend;
+        }
+        arbeiter.execute(auftrag);
+        return auftrag;
+    }
+
+    /**
+     * liest ein Bild unterabgetastet und verkleinert es auf höchstens
+     * groesse x groesse Bildpunkte
+     */
+    private BufferedImage verkleinern(File datei) throws IOException {
+        BufferedImage bild;
+        try (ImageInputStream eingabe = ImageIO.createImageInputStream(datei)) {
+            Iterator<ImageReader> leser = eingabe == null ? null
+                    : ImageIO.getImageReaders(eingabe);
+            if (leser == null || !leser.hasNext()) {
+                throw new IIOException("Kein Leser für " + datei);
+            }
+            ImageReader reader = leser.next();
+            try {
+                reader.setInput(eingabe, true, true);
+                // nur so grob abtasten, dass noch die doppelte Größe übrig
+                // bleibt; der Rest wird gefiltert verkleinert
+                int faktor = Math.max(reader.getWidth(0), reader.getHeight(0)) / (2 * groesse);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (faktor >= 2) {
+                    param.setSourceSubsampling(faktor, faktor, 0, 0);
+                }
+                bild = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        int typ = bild.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        if (bild.getType() != typ) {
+            // über getRGB, damit z. B. Graustufen wie beim Laden umgerechnet
+            // werden
+            BufferedImage umgewandelt = new BufferedImage(bild.getWidth(), bild.getHeight(), typ);
+            umgewandelt.setRGB(0, 0, bild.getWidth(), bild.getHeight(),
+                    bild.getRGB(0, 0, bild.getWidth(), bild.getHeight(), null, 0, bild.getWidth()),
+                    0, bild.getWidth());
+            bild = umgewandelt;
+        }
+        double massstab = Math.min(1.0, (double) groesse / Math.max(bild.getWidth(), bild.getHeight()));
+        int b = Math.max(1, (int) Math.round(bild.getWidth() * massstab));
+        int h = Math.max(1, (int) Math.round(bild.getHeight() * massstab));
+        BufferedImage miniatur = new BufferedImage(b, h, typ);
+        Graphics2D g = miniatur.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(bild, 0, 0, b, h, null);
+        g.dispose();
+        return miniatur;
+    }
+
+    /**
+     * schreibt eine Miniatur über eine temporäre Datei in das Verzeichnis,
+     * damit andere nie eine halb geschriebene Datei sehen
+     */
+    private BufferedImage ablegen(String schluessel, BufferedImage miniatur) throws IOException {
+        boolean alpha = miniatur.getColorModel().hasAlpha();
+        String name = schluessel + (alpha ? ".png" : ".jpg");
+        synchronized (this) {
+            indexLesen();
+        }
+        File temp = File.createTempFile(schluessel, ".tmp", verzeichnis);
+        try {
+            if (!ImageIO.write(miniatur, alpha ? "png" : "jpg", temp)) {
+                throw new IIOException("Kein Schreiber für Miniaturen");
+            }
+            Files.move(temp.toPath(), new File(verzeichnis, name).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        synchronized (this) {
+            eintragen(name, new File(verzeichnis, name).length());
+            verdraengen();
+        }
+        return miniatur;
+    }
+
+    private synchronized boolean enthaelt(String schluessel) {
+        indexLesen();
+        return index.containsKey(schluessel + ".jpg") || index.containsKey(schluessel + ".png");
+    }
+
+    /**
+     * liest eine abgelegte Miniatur und merkt sie als zuletzt benutzt vor
+     */
+    private BufferedImage lesen(String schluessel) {
+        File datei;
+        synchronized (this) {
+            indexLesen();
+            String name = index.containsKey(schluessel + ".jpg") ? schluessel + ".jpg"
+                    : index.containsKey(schluessel + ".png") ? schluessel + ".png" : null;
+            if (name == null) {
+                return null;
+            }
+            // Zugriff rückt den Eintrag ans Ende der Verdrängungsreihenfolge
+            index.get(name);
+            datei = new File(verzeichnis, name);
+        }
+        try {
+            BufferedImage miniatur = ImageIO.read(datei);
+            if (miniatur != null) {
+                datei.setLastModified(System.currentTimeMillis());
+                return miniatur;
+            }
+        } catch (IOException e) {
+            // beschädigt oder inzwischen verdrängt, dann neu erzeugen
+        }
+        synchronized (this) {
+            Long bytes = index.remove(datei.getName());
+            if (bytes != null) {
+                belegt -= bytes;
+            }
+        }
+        datei.delete();
+        return null;
+    }
+
+    /**
+     * baut den Index beim ersten Zugriff aus dem Verzeichnis auf, ältere
+     * Dateien zuerst
+     */
+    private void indexLesen() {
+        if (index != null) {
+            return;
+        }
+        index = new LinkedHashMap<>(256, 0.75f, true);
+        belegt = 0;
+        verzeichnis.mkdirs();
+        File[] dateien = verzeichnis.listFiles();
+        if (dateien == null) {
+            return;
+        }
+        final long[] zeiten = new long[dateien.length];
+        List<Integer> reihenfolge = new ArrayList<>(dateien.length);
+        for (int i = 0; i < dateien.length; i++) {
+            zeiten[i] = dateien[i].lastModified();
+            reihenfolge.add(i);
+        }
+        reihenfolge.sort(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(zeiten[a], zeiten[b]);
+            }
+        });
+        long veraltet = System.currentTimeMillis() - TEMP_ALTER;
+        for (int i : reihenfolge) {
+            String name = dateien[i].getName();
+            if (name.endsWith(".tmp")) {
+                if (zeiten[i] < veraltet) {
+                    // Rest eines abgebrochenen Schreibvorgangs
+                    dateien[i].delete();
+                }
+            } else if (name.endsWith(".jpg") || name.endsWith(".png")) {
+                eintragen(name, dateien[i].length());
+            }
+        }
+        verdraengen();
+    }
+
+    private void eintragen(String name, long bytes) {
+        Long alt = index.put(name, bytes);
+        if (alt != null) {
+            belegt -= alt;
+        }
+        belegt += bytes;
+    }
+
+    /**
+     * löscht die am längsten nicht benutzten Miniaturen, bis die Grenze
+     * eingehalten ist
+     */
+    private void verdraengen() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (belegt > grenze && it.hasNext()) {
+            Map.Entry<String, Long> eintrag = it.next();
+            new File(verzeichnis, eintrag.getKey()).delete();
+            belegt -= eintrag.getValue();
+            it.remove();
+        }
+    }
+}
@@ -38,7 +38,7 @@ public class Parameter extends JComponent {
     private final Filter filter;
     private JFrame frame;
     private Bildflaeche vorschauFlaeche;
-    private BufferedImage vorschauBild;
+    private Farbbild vorschauBild;
 
     /**
      * Generiert ein Frame zur Parametereingabe.
@@ -177,6 +177,9 @@ public class Parameter extends JComponent {
             public void actionPerformed(ActionEvent e) {
                 frame.setVisible(false);
                 frame.setEnabled(false);
+                if (filter != null) {
+                    filter.setzeWert(getValue());
+                }
                 firePropertyChangeEvent(new PropertyChangeEvent(this,
                         titel, standardWert, getValue()));
             }
@@ -214,7 +217,7 @@ public class Parameter extends JComponent {
             filter.ausfuehren(kopie, getValue());
         }
         if (bild != null) {
-            vorschauFlaeche.repaint();
+            vorschauFlaeche.bildGeaendert();
         }
     }
 
@@ -241,15 +244,18 @@ public class Parameter extends JComponent {
                 width = (int) (height * faktor);
             }
         }
-        //Bild auf Vorschaufläche skalieren
-        Image scaledImage = bild.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-        vorschauBild = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        Graphics g = vorschauBild.getGraphics();
+        //Bild auf Vorschaufläche skalieren; verkleinert liest das Original
+        //nur einmal zeilenweise, auch wenn es ausgelagert ist
+        Image scaledImage = bild.verkleinert(width, height);
+        BufferedImage skaliert = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics g = skaliert.getGraphics();
         g.drawImage(scaledImage, 0, 0, null);
         g.dispose();
         //Originalkopie aufheben, damit Vorschaubild immer vom Original aus
-        //erzeugt werden
-        kopie = new Farbbild(vorschauBild);
+        //erzeugt werden; gekachelt, damit die Kopien je Reglerschritt nur
+        //die vom Filter beschriebenen Kacheln kopieren
+        vorschauBild = Farbbild.gekachelt(skaliert);
+        kopie = (Farbbild) vorschauBild.clone();
         vorschauFlaeche.setzeBild(kopie);
     }
 
@@ -301,10 +307,10 @@ public class Parameter extends JComponent {
     //aktualisiert die Vorschau
     private void changePreview() {
         if (kopie != null && filter != null) {
-            kopie = new Farbbild(vorschauBild);
+            kopie = (Farbbild) vorschauBild.clone();
             vorschauFlaeche.setzeBild(kopie);
             filter.ausfuehren(kopie, getValue());
-            vorschauFlaeche.repaint();
+            vorschauFlaeche.bildGeaendert();
         }
     }
 
@@ -0,0 +1,457 @@
+package bildbetrachter.gui;
+
+import bildbetrachter.bild.Bereichsoperation;
+import bildbetrachter.bild.Farbbild;
+import bildbetrachter.bild.Kachelausfuehrer;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Ein PngKodierer schreibt Farbbilder als PNG mit 8 Bit je Kanal, RGB oder
+ * mit Alphakanal RGBA. Anders als der PNG-Writer von ImageIO lassen sich die
+ * Kompressionsstufe und der Zeilenfilter wählen, und das Bild wird parallel
+ * kodiert.
+ *
+ * Dazu wird das Bild in Streifen ganzer Zeilen zerlegt, die unabhängig
+ * voneinander gefiltert und komprimiert werden. Jeder Streifen endet mit
+ * einem Sync-Flush auf einer Bytegrenze, nur der letzte schließt den
+ * Datenstrom ab; aneinandergehängt ergeben sie einen einzigen gültigen
+ * zlib-Strom. Als Wörterbuch bekommt jeder Streifen die letzten 32 KB
+ * gefilterter Daten vor ihm, so dass die Kompression an den Streifengrenzen
+ * kaum schlechter wird. Die Adler-32-Prüfsumme des ganzen Stroms wird aus
+ * denen der Streifen zusammengesetzt.
+ *
+ * Die Streifen werden abschnittweise auf dem {@link Kachelausfuehrer}
+ * kodiert und in der Reihenfolge der Zeilen geschrieben, so dass nur die
+ * komprimierten Daten eines Abschnitts gleichzeitig im Speicher liegen. Ein
+ * Abschnitt wird auf die Prozessorkerne verteilt, ein Streifen umfasst aber
+ * mindestens STREIFEN Bytes. Das Filtern des Wörterbuchs, der Sync-Flush
+ * und der eigene IDAT-Abschnitt je Streifen fallen so kaum ins Gewicht.
+ */
+public class PngKodierer {
+
+    /**
+     * Die Filter, mit denen jede Zeile vor dem Komprimieren aus ihren
+     * Vorgängern vorhergesagt wird. ADAPTIV wählt für jede Zeile den Filter
+     * mit der kleinsten Summe der Beträge, wie es die PNG-Spezifikation
+     * empfiehlt; das kostet etwas Zeit und ergibt meist die kleinsten
+     * Dateien. KEINER ist am schnellsten.
+     */
+    public enum Zeilenfilter {
+        KEINER, SUB, UP, AVERAGE, PAETH, ADAPTIV
+    }
+
+    /**
+     * Erhält den Fortschritt des Schreibens und kann es abbrechen.
+     */
+    public interface Fortschritt {
+
+        /**
+         * @param prozent der Anteil der bereits geschriebenen Zeilen
+         * @return falsch, wenn das Schreiben abgebrochen werden soll
+         */
+        boolean melden(float prozent);
+    }
+
+    private static final byte[] SIGNATUR = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    // Größe des Fensters von Deflate, so viel Vorgeschichte nützt einem
+    // Streifen als Wörterbuch
+    private static final int WOERTERBUCH = 32768;
+    // unkomprimierte Bytes, die höchstens zugleich als Abschnitt kodiert
+    // werden
+    private static final int ABSCHNITT = 16 << 20;
+    // ungefilterte Bytes, die ein Streifen mindestens umfasst
+    private static final int STREIFEN = 1 << 20;
+    private static final int ADLER_BASIS = 65521;
+
+    private final int stufe;
+    private final Zeilenfilter filter;
+
+    /**
+     * Erzeugt einen Kodierer.
+     *
+     * @param stufe die Kompressionsstufe von 0 (nur speichern) über 1 (am
+     * schnellsten) bis 9 (am kleinsten), oder -1 für die Vorgabe von zlib
+     * @param filter der Zeilenfilter
+     */
+    public PngKodierer(int stufe, Zeilenfilter filter) {
+        if (stufe < -1 || stufe > 9) {
+            throw new IllegalArgumentException("Kompressionsstufe außerhalb von -1 bis 9: " + stufe);
+        }
+        this.stufe = stufe;
+        this.filter = filter;
+    }
+
+    /**
+     * Schreibt ein Bild als PNG in einen Strom. Der Strom wird nicht
+     * geschlossen.
+     *
+     * @param bild das Bild
+     * @param aus der Strom
+     * @throws IOException wenn das Schreiben scheitert
+     */
+    public void schreiben(Farbbild bild, OutputStream aus) throws IOException {
+        schreiben(bild, aus, null);
+    }
+
+    /**
+     * Schreibt ein Bild als PNG in einen Strom und meldet nach jedem
+     * Abschnitt den Fortschritt. Der Strom wird nicht geschlossen; nach
+     * einem Abbruch enthält er eine unvollständige Datei.
+     *
+     * @param bild das Bild
+     * @param aus der Strom
+     * @param fortschritt erhält den Fortschritt, kann null sein
+     * @return falsch, wenn das Schreiben abgebrochen wurde
+     * @throws IOException wenn das Schreiben scheitert
+     */
+    public boolean schreiben(final Farbbild bild, OutputStream aus, Fortschritt fortschritt)
+            throws IOException {
+        final int breite = bild.getWidth();
+        final int hoehe = bild.getHeight();
+        final boolean alpha = bild.getColorModel().hasAlpha();
+        DataOutputStream daten = new DataOutputStream(aus);
+        daten.write(SIGNATUR);
+        ByteArrayOutputStream kopf = new ByteArrayOutputStream(13);
+        DataOutputStream k = new DataOutputStream(kopf);
+        k.writeInt(breite);
+        k.writeInt(hoehe);
+        k.writeByte(8);
+        k.writeByte(alpha ? 6 : 2);
+        k.writeByte(0);
+        k.writeByte(0);
+        k.writeByte(0);
+        abschnittSchreiben(daten, "IHDR", kopf.toByteArray());
+
+        long zeilenbytes = 1 + (long) breite * (alpha ? 4 : 3);
+        int zeilen = (int) Math.max(1, Math.min(hoehe, ABSCHNITT / zeilenbytes));
+        int kerne = Runtime.getRuntime().availableProcessors();
+        int streifenzeilen = (int) Math.max((zeilen + kerne - 1) / kerne,
+                (STREIFEN + zeilenbytes - 1) / zeilenbytes);
+        long adler = 1;
+        boolean erster = true;
+        for (int y0 = 0; y0 < hoehe; y0 += zeilen) {
+            final int oben = y0;
+            // kodierte Streifen des Abschnitts nach ihrer ersten Zeile
+            final Map<Integer, Streifen> streifen = new ConcurrentSkipListMap<>();
+            Kachelausfuehrer.ausfuehrenStreifen(breite, Math.min(zeilen, hoehe - y0),
+                    streifenzeilen, new Bereichsoperation() {
+                @Override
+                public void bearbeiten(int x, int y, int b, int h) {
+                    streifen.put(oben + y, kodieren(bild, alpha, oben + y, h));
+                }
+            });
+            for (Streifen s : streifen.values()) {
+                adler = adlerVerbinden(adler, s.adler, s.laenge);
+                byte[] inhalt = s.daten;
+                if (erster) {
+                    inhalt = verbinden(zlibKopf(), inhalt);
+                    erster = false;
+                }
+                if (s.letzter) {
+                    inhalt = verbinden(inhalt, new byte[]{(byte) (adler >>> 24),
+                        (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler});
+                }
+                abschnittSchreiben(daten, "IDAT", inhalt);
+            }
+            if (fortschritt != null
+                    && !fortschritt.melden(100f * Math.min(hoehe, y0 + zeilen) / hoehe)) {
+                daten.flush();
+                return false;
+            }
+        }
+        abschnittSchreiben(daten, "IEND", new byte[0]);
+        daten.flush();
+        return true;
+    }
+
+    /**
+     * filtert und komprimiert die Zeilen y0 bis y0 + h - 1 zu einem Streifen
+     * des zlib-Stroms
+     */
+    private Streifen kodieren(Farbbild bild, boolean alpha, int y0, int h) {
+        int breite = bild.getWidth();
+        int bpp = alpha ? 4 : 3;
+        int laenge = 1 + breite * bpp;
+        boolean letzter = y0 + h == bild.getHeight();
+        int[] argb = new int[breite];
+        byte[] vorher = new byte[breite * bpp];
+        byte[] aktuell = new byte[breite * bpp];
+        byte[][] kandidaten = new byte[Zeilenfilter.ADAPTIV.ordinal()][laenge];
+        Deflater deflater = new Deflater(stufe, true);
+        if (filter != Zeilenfilter.KEINER) {
+            deflater.setStrategy(Deflater.FILTERED);
+        }
+        Adler32 pruefsumme = new Adler32();
+        ByteArrayOutputStream ergebnis = new ByteArrayOutputStream(laenge * h / 2 + 64);
+        byte[] puffer = new byte[65536];
+        try {
+            // die Zeilen davor nur filtern, als Wörterbuch
+            int davor = Math.min(y0, (WOERTERBUCH + laenge - 1) / laenge);
+            if (davor > 0) {
+                byte[] woerterbuch = new byte[davor * laenge];
+                if (y0 - davor > 0) {
+                    zeileLesen(bild, y0 - davor - 1, alpha, argb, vorher);
+                }
+                for (int j = 0; j < davor; j++) {
+                    zeileLesen(bild, y0 - davor + j, alpha, argb, aktuell);
+                    byte[] zeile = filtern(aktuell, y0 - davor + j > 0 ? vorher : null,
+                            bpp, kandidaten);
+                    System.arraycopy(zeile, 0, woerterbuch, j * laenge, laenge);
+                    byte[] tausch = vorher;
+                    vorher = aktuell;
+                    aktuell = tausch;
+                }
+                int anfang = Math.max(0, woerterbuch.length - WOERTERBUCH);
+                deflater.setDictionary(woerterbuch, anfang, woerterbuch.length - anfang);
+            }
+            for (int y = y0; y < y0 + h; y++) {
+                zeileLesen(bild, y, alpha, argb, aktuell);
+                byte[] zeile = filtern(aktuell, y > 0 ? vorher : null, bpp, kandidaten);
+                pruefsumme.update(zeile, 0, laenge);
+                deflater.setInput(zeile, 0, laenge);
+                while (!deflater.needsInput()) {
+                    ergebnis.write(puffer, 0, deflater.deflate(puffer));
+                }
+                byte[] tausch = vorher;
+                vorher = aktuell;
+                aktuell = tausch;
+            }
+            if (letzter) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    ergebnis.write(puffer, 0, deflater.deflate(puffer));
+                }
+            } else {
+                // auf eine Bytegrenze bringen, ohne den Strom abzuschließen
+                int n;
+                do {
+                    n = deflater.deflate(puffer, 0, puffer.length, Deflater.SYNC_FLUSH);
+                    ergebnis.write(puffer, 0, n);
+                } while (n == puffer.length);
+            }
+        } finally {
+            deflater.end();
+        }
+        return new Streifen(ergebnis.toByteArray(), pruefsumme.getValue(),
+                (long) h * laenge, letzter);
+    }
+
+    /**
+     * liest eine Zeile als RGB- bzw. RGBA-Bytes
+     */
+    private static void zeileLesen(Farbbild bild, int y, boolean alpha, int[] argb, byte[] ziel) {
+        bild.leseZeile(y, argb);
+        int i = 0;
+        for (int wert : argb) {
+            ziel[i++] = (byte) (wert >> 16);
+            ziel[i++] = (byte) (wert >> 8);
+            ziel[i++] = (byte) wert;
+            if (alpha) {
+                ziel[i++] = (byte) (wert >>> 24);
+            }
+        }
+    }
+
+    /**
+     * filtert eine Zeile mit dem eingestellten Filter
+     *
+     * @param vorher die ungefilterte Zeile darüber oder null in der ersten
+     * Zeile
+     * @param kandidaten je ein Puffer für die Filter außer ADAPTIV
+     * @return der Puffer mit der gefilterten Zeile samt Filterbyte
+     */
+    private byte[] filtern(byte[] zeile, byte[] vorher, int bpp, byte[][] kandidaten) {
+        if (filter != Zeilenfilter.ADAPTIV) {
+            byte[] ziel = kandidaten[filter.ordinal()];
+            filtern(filter, zeile, vorher, bpp, ziel);
+            return ziel;
+        }
+        byte[] bester = null;
+        long kleinste = Long.MAX_VALUE;
+        for (Zeilenfilter f : Zeilenfilter.values()) {
+            if (f == Zeilenfilter.ADAPTIV) {
+                continue;
+            }
+            byte[] ziel = kandidaten[f.ordinal()];
+            filtern(f, zeile, vorher, bpp, ziel);
+            long summe = summe(ziel);
+            if (summe < kleinste) {
+                kleinste = summe;
+                bester = ziel;
+            }
+        }
+        return bester;
+    }
+
+    /**
+     * filtert eine Zeile mit einem festen Filter; fehlt die Zeile darüber,
+     * zählt sie als Nullen
+     */
+    private static void filtern(Zeilenfilter f, byte[] zeile, byte[] vorher, int bpp,
+            byte[] ziel) {
+        int n = zeile.length;
+        ziel[0] = (byte) f.ordinal();
+        switch (f) {
+            case SUB:
+                System.arraycopy(zeile, 0, ziel, 1, Math.min(bpp, n));
+                for (int i = bpp; i < n; i++) {
+                    ziel[i + 1] = (byte) (zeile[i] - zeile[i - bpp]);
+                }
+                break;
+            case UP:
+                if (vorher == null) {
+                    System.arraycopy(zeile, 0, ziel, 1, n);
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    ziel[i + 1] = (byte) (zeile[i] - vorher[i]);
+                }
+                break;
+            case AVERAGE:
+                for (int i = 0; i < n; i++) {
+                    int a = i >= bpp ? zeile[i - bpp] & 0xff : 0;
+                    int b = vorher != null ? vorher[i] & 0xff : 0;
+                    ziel[i + 1] = (byte) (zeile[i] - ((a + b) >>> 1));
+                }
+                break;
+            case PAETH:
+                if (vorher == null) {
+                    // ohne Zeile darüber sagt Paeth wie SUB den linken Nachbarn voraus
+                    filtern(Zeilenfilter.SUB, zeile, null, bpp, ziel);
+                    ziel[0] = (byte) f.ordinal();
+                    break;
+                }
+                for (int i = 0; i < bpp && i < n; i++) {
+                    ziel[i + 1] = (byte) (zeile[i] - vorher[i]);
+                }
+                for (int i = bpp; i < n; i++) {
+                    int a = zeile[i - bpp] & 0xff;
+                    int b = vorher[i] & 0xff;
+                    int c = vorher[i - bpp] & 0xff;
+                    ziel[i + 1] = (byte) (zeile[i] - paeth(a, b, c));
+                }
+                break;
+            default:
+                System.arraycopy(zeile, 0, ziel, 1, n);
+                break;
+        }
+    }
+
+    /**
+     * @return die Summe der Beträge einer gefilterten Zeile, die Bytes als
+     * Zahlen mit Vorzeichen gelesen
+     */
+    private static long summe(byte[] gefiltert) {
+        long summe = 0;
+        for (int i = 1; i < gefiltert.length; i++) {
+            int wert = gefiltert[i];
+            summe += wert < 0 ? -wert : wert;
+        }
+        return summe;
+    }
+
+    /**
+     * der Paeth-Prädiktor aus der PNG-Spezifikation
+     */
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * der zweibytige zlib-Kopf für Deflate mit 32 KB Fenster und der
+     * Kompressionsstufe
+     */
+    private byte[] zlibKopf() {
+        int cmf = 0x78;
+        int flevel = stufe < 0 ? 2 : stufe < 2 ? 0 : stufe < 6 ? 1 : stufe == 6 ? 2 : 3;
+        int flg = flevel << 6;
+        flg += 31 - (cmf * 256 + flg) % 31;
+        return new byte[]{(byte) cmf, (byte) flg};
+    }
+
+    /**
+     * verbindet die Adler-32-Prüfsummen zweier aufeinanderfolgender
+     * Abschnitte zu der des ganzen, wie adler32_combine in zlib
+     *
+     * @param adler1 die Prüfsumme des ersten Abschnitts
+     * @param adler2 die Prüfsumme des zweiten Abschnitts
+     * @param laenge2 die Länge des zweiten Abschnitts in Byte
+     */
+    static long adlerVerbinden(long adler1, long adler2, long laenge2) {
+        long rest = laenge2 % ADLER_BASIS;
+        long summe1 = adler1 & 0xffff;
+        long summe2 = (rest * summe1) % ADLER_BASIS;
+        summe1 += (adler2 & 0xffff) + ADLER_BASIS - 1;
+        summe2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASIS - rest;
+        if (summe1 >= ADLER_BASIS) {
+            summe1 -= ADLER_BASIS;
+        }
+        if (summe1 >= ADLER_BASIS) {
+            summe1 -= ADLER_BASIS;
+        }
+        if (summe2 >= 2L * ADLER_BASIS) {
+            summe2 -= 2L * ADLER_BASIS;
+        }
+        if (summe2 >= ADLER_BASIS) {
+            summe2 -= ADLER_BASIS;
+        }
+        return summe1 | (summe2 << 16);
+    }
+
+    private static byte[] verbinden(byte[] a, byte[] b) {
+        byte[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    /**
+     * schreibt einen PNG-Abschnitt mit Länge, Typ, Inhalt und CRC
+     */
+    private static void abschnittSchreiben(DataOutputStream aus, String typ, byte[] inhalt)
+            throws IOException {
+        byte[] name = typ.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(inhalt);
+        aus.writeInt(inhalt.length);
+        aus.write(name);
+        aus.write(inhalt);
+        aus.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * ein kodierter Streifen: seine komprimierten Daten und die Prüfsumme
+     * und Länge seiner unkomprimierten Daten
+     */
+    private static class Streifen {
+
+        final byte[] daten;
+        final long adler;
+        final long laenge;
+        final boolean letzter;
+
+        Streifen(byte[] daten, long adler, long laenge, boolean letzter) {
+            this.daten = daten;
+            this.adler = adler;
+            this.laenge = laenge;
+            this.letzter = letzter;
+        }
+    }
+}
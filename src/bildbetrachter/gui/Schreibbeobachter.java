@@ -0,0 +1,52 @@
+package bildbetrachter.gui;
+
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOWriteProgressListener;
+
+/**
+ * Ein Schreibbeobachter ist ein {@link IIOWriteProgressListener} mit leeren
+ * Methoden, der zusätzlich das Ergebnis eines Auftrags des
+ * {@link Speicherdienst}es erfährt. Wie bei einem WindowAdapter werden nur
+ * die benötigten Methoden überschrieben. Schreibt der Speicherdienst ohne
+ * ImageWriter, etwa PNG, wird nur imageProgress mit source null aufgerufen.
+ */
+abstract class Schreibbeobachter implements IIOWriteProgressListener {
+
+    /**
+     * wird auf dem Thread des Speicherdienstes aufgerufen, wenn ein Auftrag
+     * fertig ist, aber nicht, wenn er vor dem Beginn abgebrochen wurde
+     *
+     * @param ergebnis 0: gespeichert; 1: abgebrochen; 2: keine Schreibrechte
+     * im Zielpfad; 3: IO-Exception/Fehler
+     */
+    void beendet(int ergebnis) {
+    }
+
+    @Override
+    public void imageStarted(ImageWriter source, int imageIndex) {
+    }
+
+    @Override
+    public void imageProgress(ImageWriter source, float percentageDone) {
+    }
+
+    @Override
+    public void imageComplete(ImageWriter source) {
+    }
+
+    @Override
+    public void thumbnailStarted(ImageWriter source, int imageIndex, int thumbnailIndex) {
+    }
+
+    @Override
+    public void thumbnailProgress(ImageWriter source, float percentageDone) {
+    }
+
+    @Override
+    public void thumbnailComplete(ImageWriter source) {
+    }
+
+    @Override
+    public void writeAborted(ImageWriter source) {
+    }
+}
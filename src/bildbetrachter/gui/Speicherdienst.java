@@ -0,0 +1,354 @@
+package bildbetrachter.gui;
+
+import bildbetrachter.bild.Farbbild;
+import java.awt.image.RenderedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Der Speicherdienst schreibt Bilder im Hintergrund in Dateien, damit die
+ * Oberfläche beim Kodieren großer Bilder bedienbar bleibt. Die Aufträge
+ * laufen nacheinander auf einem eigenen Thread.
+ *
+ * Jedes Bild wird zuerst in eine temporäre Datei im Zielordner geschrieben
+ * und erst nach dem erfolgreichen Schreiben an die Stelle der Zieldatei
+ * verschoben, möglichst atomar. Ein Fehler oder Abbruch hinterlässt so nie
+ * eine halb geschriebene Datei, und eine vorhandene Datei bleibt bis dahin
+ * unverändert; ihre Zugriffsrechte gehen auf die neue Datei über, eine neue
+ * Datei bekommt die üblichen Rechte. Die ImageWriter werden je Format aufbewahrt und
+ * wiederverwendet, statt für jedes Speichern neu gesucht zu werden.
+ *
+ * PNG schreibt statt ImageIO ein {@link PngKodierer}, der parallel kodiert,
+ * solange das Bild gepackt mit 8 Bit je Kanal vorliegt; Bilder in ihrer
+ * ursprünglichen Tiefe und indizierte Bilder schreibt weiter ImageIO, damit
+ * 16 Bit je Kanal und die Palette erhalten bleiben.
+ * Kompressionsstufe und Zeilenfilter werden mit den Systemeigenschaften
+ * bildbetrachter.png.stufe (0 bis 9, Vorgabe 4 wie bei ImageIO) und
+ * bildbetrachter.png.filter (z. B. KEINER oder ADAPTIV, Vorgabe ADAPTIV)
+ * eingestellt.
+ */
+public class Speicherdienst {
+
+    // Zahl der aufbewahrten Writer je Format
+    private static final int VORRAT = 2;
+
+    private static Speicherdienst standard;
+
+    private static final PngKodierer PNG = new PngKodierer(
+            Integer.getInteger("bildbetrachter.png.stufe", 4), pngFilter());
+
+    private final ThreadPoolExecutor schreiber;
+    // unbenutzte Writer nach Format
+    private final Map<String, Deque<ImageWriter>> writer = new HashMap<>();
+
+    /**
+     * Legt einen Speicherdienst an.
+     */
+    public Speicherdienst() {
+        schreiber = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Speichern");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        schreiber.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return der gemeinsame Speicherdienst
+     */
+    public static synchronized Speicherdienst gibStandard() {
+        if (standard == null) {
+            standard = new Speicherdienst();
+        }
+        return standard;
+    }
+
+    /**
+     * Schreibt ein Bild im Hintergrund in eine Datei. Das Bild darf bis zum
+     * Ende des Auftrags nicht verändert werden; wer weiter daran arbeitet,
+     * übergibt eine Kopie.
+     *
+     * Ein Abbruch über {@link Future#cancel(boolean)} wird beim nächsten
+     * gemeldeten Fortschritt an den Writer weitergegeben; die Zieldatei bleibt
+     * dann unverändert.
+     *
+     * @param bild das zu speichernde Bild
+     * @param ziel die Zieldatei, wird ersetzt, falls vorhanden
+     * @param format das Format, z. B. "jpg", "png" oder "bmp"
+     * @param beobachter erhält Fortschritt und Ergebnis, kann null sein
+     * @return das Ergebnis, 0: gespeichert; 1: abgebrochen; 2: keine
+     * Schreibrechte im Zielpfad; 3: IO-Exception/Fehler
+     */
+    public Future<Integer> speichern(Farbbild bild, File ziel, String format,
+            Schreibbeobachter beobachter) {
+        Speicherauftrag auftrag = new Speicherauftrag(bild, ziel, format, beobachter);
+        schreiber.execute(auftrag.ergebnis);
+        return auftrag.ergebnis;
+    }
+
+    /**
+     * leiht einen Writer für das Format aus dem Vorrat oder sucht einen neuen
+     *
+     * @return der Writer oder null, wenn es keinen für das Format gibt
+     */
+    private ImageWriter leihen(String format) {
+        synchronized (writer) {
+            Deque<ImageWriter> frei = writer.get(format);
+            if (frei != null && !frei.isEmpty()) {
+                return frei.pop();
+            }
+        }
+        Iterator<ImageWriter> gefunden = ImageIO.getImageWritersBySuffix(format);
+        return gefunden.hasNext() ? gefunden.next() : null;
+    }
+
+    /**
+     * setzt einen Writer zurück und legt ihn in den Vorrat, solange dort
+     * Platz ist
+     */
+    private void zurueckgeben(String format, ImageWriter w) {
+        w.removeAllIIOWriteProgressListeners();
+        w.reset();
+        synchronized (writer) {
+            Deque<ImageWriter> frei = writer.get(format);
+            if (frei == null) {
+                frei = new ArrayDeque<>();
+                writer.put(format, frei);
+            }
+            if (frei.size() < VORRAT) {
+                frei.push(w);
+                return;
+            }
+        }
+        w.dispose();
+    }
+
+    /**
+     * die Parameter, mit denen bisher in jedem Format gespeichert wurde
+     */
+    private static ImageWriteParam parameter(ImageWriter w, String format) {
+        ImageWriteParam param = w.getDefaultWriteParam();
+        if ("jpg".equals(format)) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            // Standard-Modus für die Kompression der Bilddatei
+            param.setCompressionQuality(ImageWriteParam.MODE_DEFAULT);
+        } else if ("bmp".equals(format)) {
+            param.setCompressionMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        return param;
+    }
+
+    /**
+     * der Zeilenfilter aus der Systemeigenschaft, ADAPTIV, wenn sie fehlt
+     * oder keinen Filter nennt
+     */
+    private static PngKodierer.Zeilenfilter pngFilter() {
+        String name = System.getProperty("bildbetrachter.png.filter", "");
+        for (PngKodierer.Zeilenfilter f : PngKodierer.Zeilenfilter.values()) {
+            if (f.name().equalsIgnoreCase(name)) {
+                return f;
+            }
+        }
+        return PngKodierer.Zeilenfilter.ADAPTIV;
+    }
+
+    /**
+     * legt neben der Zieldatei eine leere temporäre Datei an; anders als mit
+     * Files.createTempFile, das nur dem Besitzer Rechte gibt, gilt dabei die
+     * umask wie für jede neu angelegte Datei
+     */
+    private static Path tempAnlegen(Path ziel) throws IOException {
+        while (true) {
+            Path temp = ziel.resolveSibling("." + ziel.getFileName()
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // anderen Namen versuchen
+            }
+        }
+    }
+
+    /**
+     * ersetzt die Zieldatei durch die fertig geschriebene temporäre Datei,
+     * atomar, wenn das Dateisystem es kann; die Zugriffsrechte einer
+     * vorhandenen Zieldatei bleiben erhalten
+     */
+    private static void verschieben(Path temp, Path ziel) throws IOException {
+        if (Files.exists(ziel)) {
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(ziel));
+            } catch (UnsupportedOperationException e) {
+                // kein POSIX-Dateisystem, die Rechte bestimmt der Ordner
+            }
+        }
+        try {
+            Files.move(temp, ziel, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, ziel, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * schreibt ein Bild; wird der Auftrag abgebrochen, bricht er beim
+     * nächsten gemeldeten Fortschritt auch das Schreiben ab
+     */
+    private class Speicherauftrag extends Schreibbeobachter
+            implements Callable<Integer>, PngKodierer.Fortschritt {
+
+        final FutureTask<Integer> ergebnis = new FutureTask<>(this);
+        private final Farbbild bild;
+        private final File ziel;
+        private final String format;
+        private final Schreibbeobachter beobachter;
+        private volatile boolean abgebrochen;
+
+        Speicherauftrag(Farbbild bild, File ziel, String format, Schreibbeobachter beobachter) {
+            this.bild = bild;
+            this.ziel = ziel;
+            this.format = format;
+            this.beobachter = beobachter;
+        }
+
+        @Override
+        public Integer call() {
+            int wert = schreiben();
+            if (beobachter != null) {
+                beobachter.beendet(wert);
+            }
+            return wert;
+        }
+
+        private int schreiben() {
+            Path zielpfad = ziel.getAbsoluteFile().toPath();
+            Path ordner = zielpfad.getParent();
+            if (ordner == null || !Files.isWritable(ordner)) {
+                System.err.println(zielpfad + ": Zugriff verweigert.");
+                return 2;
+            }
+            if ("png".equals(format) && bild.istAchtBitGepackt()) {
+                return schreiben(null);
+            }
+            ImageWriter w = leihen(format);
+            if (w == null) {
+                return 3;
+            }
+            try {
+                return schreiben(w);
+            } finally {
+                zurueckgeben(format, w);
+            }
+        }
+
+        /**
+         * schreibt in eine temporäre Datei und ersetzt damit die Zieldatei
+         *
+         * @param w der Writer oder null für den {@link PngKodierer}
+         */
+        private int schreiben(ImageWriter w) {
+            Path zielpfad = ziel.getAbsoluteFile().toPath();
+            Path temp = null;
+            try {
+                temp = tempAnlegen(zielpfad);
+                if (w == null) {
+                    try (OutputStream ausgabe = new BufferedOutputStream(
+                            Files.newOutputStream(temp), 1 << 16)) {
+                        abgebrochen = !PNG.schreiben(bild, ausgabe, this);
+                    }
+                } else {
+                    // direkt auf die Datei, ohne Zwischenspeicher für das ganze
+                    // Bild; der Writer darf darin auch zurückspringen
+                    try (ImageOutputStream ausgabe = new FileImageOutputStream(temp.toFile())) {
+                        w.setOutput(ausgabe);
+                        w.addIIOWriteProgressListener(this);
+                        if (beobachter != null) {
+                            w.addIIOWriteProgressListener(beobachter);
+                        }
+                        w.write(null, new IIOImage(quelle(), null, null), parameter(w, format));
+                    }
+                }
+                if (abgebrochen || ergebnis.isCancelled()) {
+                    return 1;
+                }
+                verschieben(temp, zielpfad);
+                temp = null;
+                return 0;
+            } catch (IOException | RuntimeException e) {
+                System.err.println(e.getLocalizedMessage());
+                return 3;
+            } finally {
+                if (temp != null) {
+                    try {
+                        Files.deleteIfExists(temp);
+                    } catch (IOException e) {
+                        System.err.println(e.getLocalizedMessage());
+                    }
+                }
+            }
+        }
+
+        /**
+         * das Bild für den Writer; indizierte Bilder werden als PNG mit ihrer
+         * Palette geschrieben
+         */
+        private RenderedImage quelle() {
+            RenderedImage palettenbild = "png".equals(format) ? bild.gibPalettenbild() : null;
+            return palettenbild != null ? palettenbild : bild;
+        }
+
+        /**
+         * gibt den Fortschritt des {@link PngKodierer}s ohne Writer an den
+         * Beobachter weiter
+         */
+        @Override
+        public boolean melden(float prozent) {
+            if (beobachter != null) {
+                beobachter.imageProgress(null, prozent);
+            }
+            return !ergebnis.isCancelled();
+        }
+
+        @Override
+        public void imageProgress(ImageWriter source, float percentageDone) {
+            if (ergebnis.isCancelled()) {
+                source.abort();
+            }
+        }
+
+        @Override
+        public void writeAborted(ImageWriter source) {
+            abgebrochen = true;
+        }
+    }
+}